@@ -0,0 +1,236 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package utils;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import weka.core.Instance;
+import weka.core.Instances;
+
+/**
+ * Counts of the values of the attributes given the class value, kept in a single array
+ * instead of one estimator per attribute and value (or per attribute and class value).
+ * Each value of each attribute is a row of the table, which starts at the offset of the
+ * attribute plus the value, and holds a count for each class value. So the count of the
+ * value v of the attribute i given the class value c is in the position
+ * (offset_i + v) * num_classes + c, and the counts of all the class values for a value of
+ * an attribute are contiguous.
+ *
+ * Besides the counts, the table keeps the sum of the counts of each row, as the estimators
+ * of the values of an attribute, and the sum of the counts of each attribute given each
+ * class value, as the estimators of an attribute given a class value. Both sums start with
+ * a prior count, as the s or m parameter of the estimators.
+ */
+public class ConditionalCountTable implements Serializable{
+
+    /** for serialization */
+    static final long serialVersionUID = -3265387524310318527L;
+
+    /** The number of class values */
+    private int num_classes;
+
+    /** The index of the class attribute */
+    private int class_index;
+
+    /** The row of the first value of each attribute */
+    private int[] offsets;
+
+    /** The number of values of each attribute, 0 for the class attribute */
+    private int[] num_values;
+
+    /** The number of rows, that is, of values of all the attributes */
+    private int num_rows;
+
+    /** The counts, num_classes for each row */
+    private double[] counts;
+
+    /** The sum of the counts of each row, plus the prior count */
+    private double[] value_sums;
+
+    /** The sum of the counts of each attribute given each class value, plus the prior count */
+    private double[] attribute_sums;
+
+    /** The prior count the sums start with */
+    private double prior_count;
+
+    /**
+     * Creates a table without counts for the nominal attributes of some instances
+     * @param header the instances, only their attributes are used
+     * @param prior_count the prior count the sums start with
+     */
+
+    public ConditionalCountTable(Instances header, double prior_count){
+        int num_attributes = header.numAttributes();
+
+        num_classes = header.numClasses();
+        class_index = header.classIndex();
+        offsets = new int[num_attributes];
+        num_values = new int[num_attributes];
+        num_rows = 0;
+
+        for(int i = 0; i < num_attributes; i++){
+            offsets[i] = num_rows;
+
+            if(i != class_index){
+                num_values[i] = header.attribute(i).numValues();
+                num_rows+= num_values[i];
+            }
+        }
+
+        counts = new double[num_rows*num_classes];
+        value_sums = new double[num_rows];
+        attribute_sums = new double[num_attributes*num_classes];
+        this.prior_count = prior_count;
+
+        Arrays.fill(value_sums, prior_count);
+
+        for(int i = 0; i < num_attributes; i++){
+            if(i != class_index){
+                for(int j = 0; j < num_classes; j++)
+                    attribute_sums[i*num_classes + j] = prior_count;
+            }
+        }
+    }
+
+    /**
+     * Adds the values of an instance to the counts of its class value.
+     * A missing value is counted as the first value of the attribute.
+     * @param instance the instance, whose class value is not missing
+     * @param weight the weight of the instance
+     */
+
+    public void addInstance(Instance instance, double weight){
+        int class_value = (int)instance.classValue();
+        int num_attributes = offsets.length;
+        int row;
+
+        for(int i = 0; i < num_attributes; i++){
+            if(i != class_index){
+                row = offsets[i] + (int)instance.value(i);
+                counts[row*num_classes + class_value]+= weight;
+                value_sums[row]+= weight;
+                attribute_sums[i*num_classes + class_value]+= weight;
+            }
+        }
+    }
+
+    /**
+     * Multiplies the counts of a class value by a factor, for instance when the
+     * weight its instances have been added with changes
+     * @param class_value the class value
+     * @param factor the factor
+     */
+
+    public void scaleClass(int class_value, double factor){
+        int num_attributes = offsets.length;
+        double sum;
+
+        for(int r = 0; r < num_rows; r++)
+            counts[r*num_classes + class_value]*= factor;
+
+        for(int i = 0; i < num_attributes; i++){
+            if(i != class_index)
+                attribute_sums[i*num_classes + class_value]*= factor;
+        }
+
+        for(int r = 0; r < num_rows; r++){
+            sum = prior_count;
+
+            for(int j = 0; j < num_classes; j++)
+                sum+= counts[r*num_classes + j];
+
+            value_sums[r] = sum;
+        }
+    }
+
+    /**
+     * @return the number of class values
+     */
+
+    public int getNumClasses(){
+        return num_classes;
+    }
+
+    /**
+     * @return the number of attributes, the class attribute included
+     */
+
+    public int getNumAttributes(){
+        return offsets.length;
+    }
+
+    /**
+     * @return the index of the class attribute
+     */
+
+    public int getClassIndex(){
+        return class_index;
+    }
+
+    /**
+     * @return the number of rows, that is, of values of all the attributes
+     */
+
+    public int getNumRows(){
+        return num_rows;
+    }
+
+    /**
+     * @param attribute the index of the attribute
+     * @return the number of values of the attribute, 0 for the class attribute
+     */
+
+    public int getNumValues(int attribute){
+        return num_values[attribute];
+    }
+
+    /**
+     * @param attribute the index of the attribute
+     * @param value the value of the attribute
+     * @return the row of the value of the attribute
+     */
+
+    public int getRow(int attribute, int value){
+        return offsets[attribute] + value;
+    }
+
+    /**
+     * @param row the row of a value of an attribute
+     * @param class_value the class value
+     * @return the count of the value of the attribute given the class value
+     */
+
+    public double getCount(int row, int class_value){
+        return counts[row*num_classes + class_value];
+    }
+
+    /**
+     * @param row the row of a value of an attribute
+     * @return the sum of the counts of the value of the attribute, plus the prior count
+     */
+
+    public double getValueSum(int row){
+        return value_sums[row];
+    }
+
+    /**
+     * @param attribute the index of the attribute
+     * @param class_value the class value
+     * @return the sum of the counts of the attribute given the class value, plus the prior count
+     */
+
+    public double getAttributeSum(int attribute, int class_value){
+        return attribute_sums[attribute*num_classes + class_value];
+    }
+
+    /**
+     * @return the prior count the sums start with
+     */
+
+    public double getPriorCount(){
+        return prior_count;
+    }
+}
@@ -49,7 +49,21 @@ public class DiscreteEstimatorCostSensitiveNPI implements Serializable{
         counts[component]+=value;
         sum_of_counts+=value;
     }
-    
+
+    /**
+    * Multiplies the count of a given component by a factor, for instance when
+    * the weight of the class value it has been incremented with changes
+    * @param component Component to scale
+     * @param factor the factor
+    */
+
+    public void scaleComponent(int component, double factor){
+        double count = counts[component];
+
+        counts[component] = count*factor;
+        sum_of_counts+= counts[component] - count;
+    }
+
       
     /**
     * Obtains the inferior probability of a given component accoding to the A-NPI-M
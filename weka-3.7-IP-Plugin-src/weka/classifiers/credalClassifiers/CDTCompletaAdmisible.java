@@ -10,6 +10,8 @@ import java.util.Vector;
 import weka.classifiers.Evaluation;
 import static weka.classifiers.credalClassifiers.CDTCompletaAdmisible.IMPRECISE_ENTROPY;
 import weka.classifiers.trees.NodeTree;
+import weka.classifiers.trees.NodeTreeClassifier;
+import weka.classifiers.trees.ParallelScoring;
 import weka.core.AdditionalMeasureProducer;
 import weka.core.Attribute;
 import weka.core.Capabilities;
@@ -27,7 +29,7 @@ import weka.core.Utils;
  *
  * @author Serafin
  */
-public class CDTCompletaAdmisible extends CredalClassifier implements OptionHandler, AdditionalMeasureProducer{
+public class CDTCompletaAdmisible extends CredalClassifier implements OptionHandler, AdditionalMeasureProducer, NodeTreeClassifier{
     /* Field that contains the tree structure*/
   NodeTree m_RootNode;
   
@@ -220,14 +222,32 @@ public class CDTCompletaAdmisible extends CredalClassifier implements OptionHand
   }
 
   
+  /**
+   * The nodes of the tree can score their attributes in parallel.
+   * @return true
+   */
+  protected boolean supportsParallelScoring() {
+    return true;
+  }
+
   protected Attribute getAttributeToRamify(Instances data, int level) throws Exception{
     
     // Compute attribute with maximum information gain.
     infoGains = new double[data.numAttributes()];
-    Enumeration attEnum = data.enumerateAttributes();
-    while (attEnum.hasMoreElements()) {
-      Attribute att = (Attribute) attEnum.nextElement();
-      infoGains[att.index()] = computeInfoGain(data, att);
+    if (m_ParallelScoring) {
+      final Instances node_data = data;
+      ParallelScoring.scoreAttributes(ParallelScoring.candidateAttributes(data.numAttributes(), data.classIndex()), infoGains,
+          new ParallelScoring.AttributeScore() {
+            public double score(int index) throws Exception {
+              return computeInfoGain(node_data, node_data.attribute(index));
+            }
+          });
+    } else {
+      Enumeration attEnum = data.enumerateAttributes();
+      while (attEnum.hasMoreElements()) {
+        Attribute att = (Attribute) attEnum.nextElement();
+        infoGains[att.index()] = computeInfoGain(data, att);
+      }
     }
     infoGains[data.classIndex()]=-Double.MAX_VALUE;
     
@@ -518,11 +538,14 @@ private double[] frequencyForInstance(NodeTree node, Instance instance){
       m_KThRootAttribute = root_index;
   }
 
-  /* 
-   * This function computes a utility measure of an IP model
-   * 
+  /**
+   * Computes the indices of the non-dominated class values for an instance,
+   * without updating the statistics.
+   * @param instance the instance
+   * @return the indices of the non-dominated class values
+   * @throws NoSupportForMissingValuesException 
    */
-  private void updateCredalStatistics(Instance instance) throws NoSupportForMissingValuesException{
+  public int[] nonDominatedIndexSet(Instance instance) throws NoSupportForMissingValuesException{
       boolean[] nonDominatedSet= computeNonDominatedStatesSet(instance);
 
       int cont=0;
@@ -539,9 +562,17 @@ private double[] frequencyForInstance(NodeTree node, Instance instance){
             nonDominatedIndexSet[cont++]=i;
       }
 
-      this.updateStatistics(nonDominatedIndexSet, instance);
+      return nonDominatedIndexSet;
+
 
+  }
 
+  /* 
+   * This function computes a utility measure of an IP model
+   * 
+   */
+  private void updateCredalStatistics(Instance instance) throws NoSupportForMissingValuesException{
+      this.updateStatistics(this.nonDominatedIndexSet(instance), instance);
   }
   
   
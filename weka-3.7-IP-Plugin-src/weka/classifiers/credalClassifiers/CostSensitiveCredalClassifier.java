@@ -46,19 +46,20 @@ public abstract class CostSensitiveCredalClassifier extends CredalClassifier{
      */
     
     protected void computeMatrixCostErrors(Instances data){
-        int num_class_values = data.numClasses();
+        computeMatrixCostErrors(computeClassFrequencies(data));
+    }
+    
+    /**
+     * computes the matrix of cost errors 
+     * depending on the frequencies of the class values
+     * @param relative_frequencies the frequencies of the class values
+     */
+    
+    protected void computeMatrixCostErrors(double[] relative_frequencies){
+        int num_class_values = relative_frequencies.length;
         matrix_cost_errors = new double[num_class_values][num_class_values];
-        double[] relative_frequencies = new double[num_class_values];
-        Instance instance;
-        int class_value, class_value_highest_frequency;
+        int class_value_highest_frequency;
         int[] index_ordered_relative_frequencies;
-        int num_instances = data.numInstances();
-        
-        for(int i = 0; i < num_instances; i++){
-            instance = data.instance(i);
-            class_value = (int) instance.classValue();
-            relative_frequencies[class_value]++;
-        }
         
         index_ordered_relative_frequencies = Utils.sort(relative_frequencies);
         
@@ -325,11 +326,19 @@ public abstract class CostSensitiveCredalClassifier extends CredalClassifier{
    */
     
     protected void computeClassWeightsFromCosts(Instances data, double[] misclassification_costs){
-        int num_classes = data.numClasses();
-        double num_instances = data.numInstances();
-        double[] class_frequencies = new double[num_classes];
-        Instance instance;
-        int class_value;
+        computeClassWeightsFromCosts(computeClassFrequencies(data), misclassification_costs);
+    }
+    
+     /**
+   * Computes the weights corresponding to the class values given de misclassification mosts
+   * from the frequencies of the class values (n_1,...,n_K), with N = n_1+...+n_K
+   * @param class_frequencies the frequencies of the class values (n_1,...,n_K)
+   * @param misclassification_costs the misclassification costs {C_1,C_2,...,C_K}
+   */
+    
+    protected void computeClassWeightsFromCosts(double[] class_frequencies, double[] misclassification_costs){
+        int num_classes = class_frequencies.length;
+        double num_instances = Utils.sum(class_frequencies);
         double[] NPI_transformation;
         double class_frequency, weighted_frequency;
         double sum_weighted_frequencies;
@@ -339,15 +348,6 @@ public abstract class CostSensitiveCredalClassifier extends CredalClassifier{
                 
         class_weights = new double[num_classes];
         
-        Enumeration instEnum = data.enumerateInstances();
-       
-        
-        while (instEnum.hasMoreElements()) {
-            instance = (Instance) instEnum.nextElement();
-            class_value = (int) instance.classValue();
-            class_frequencies[class_value]++;
-        }
-        
         /* Compute('n_1,...,n'_K) the arrangement associated with the probability distribution 
         * that reaches the maximom of entropy with the A-NPI-M */
         
@@ -378,6 +378,28 @@ public abstract class CostSensitiveCredalClassifier extends CredalClassifier{
 
     }
     
+    /**
+     * Counts the instances of each class value
+     * @param data the training instances
+     * @return the frequencies of the class values
+     */
+    
+    protected double[] computeClassFrequencies(Instances data){
+        double[] class_frequencies = new double[data.numClasses()];
+        Instance instance;
+        int class_value;
+        
+        Enumeration instEnum = data.enumerateInstances();
+        
+        while (instEnum.hasMoreElements()) {
+            instance = (Instance) instEnum.nextElement();
+            class_value = (int) instance.classValue();
+            class_frequencies[class_value]++;
+        }
+        
+        return class_frequencies;
+    }
+    
         /**
    * Computes the weights corresponding to the class values
    * 
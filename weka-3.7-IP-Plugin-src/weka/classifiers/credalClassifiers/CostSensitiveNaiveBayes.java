@@ -5,8 +5,11 @@
  */
 package weka.classifiers.credalClassifiers;
 
+import java.util.Arrays;
+import utils.ConditionalCountTable;
 import utils.DiscreteEstimatorCostSensitiveNPI;
-import weka.core.Attribute;
+import weka.classifiers.UpdateableClassifier;
+import weka.core.Capabilities;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.NoSupportForMissingValuesException;
@@ -16,13 +19,51 @@ import weka.core.TechnicalInformation;
  *
  * @author Serafin
  */
-public class CostSensitiveNaiveBayes extends CostSensitiveCredalClassifier{
-      /** The attribute estimators. */
-    protected DiscreteEstimatorCostSensitiveNPI [][] distributions;
+public class CostSensitiveNaiveBayes extends CostSensitiveCredalClassifier implements UpdateableClassifier{
+      /** The weighted counts of the attribute values given the class values. */
+    protected ConditionalCountTable counts;
+    
+    /** The factors of the inferior and superior probabilities of each attribute value
+     * given each class value, in the same positions as their counts. They are not
+     * serialized, but computed again from the counts when they are needed. */
+    protected transient volatile double[] inferior_factors, superior_factors;
+    
+    /** Whether the counts have changed since the factors were computed. */
+    private volatile boolean factors_outdated;
 
     /** The class estimator. */
     protected DiscreteEstimatorCostSensitiveNPI class_distribution;
+    
+    /** Frequencies of the class values of the instances added with updateClassifier,
+     * from which the class weights are computed when the classifier is built with zero
+     * instances. null if the class weights are fixed when the classifier is built. */
+    protected double[] updated_class_frequencies;
+    
+    /** Whether the matrix of cost errors is also computed from updated_class_frequencies */
+    protected boolean update_matrix_cost_errors;
+    
+    /** Weights the counts of each class value have been added with, when the class
+     * weights are computed from updated_class_frequencies */
+    private double[] applied_class_weights;
+    
+    /** Whether instances have been added since the class weights were computed */
+    private volatile boolean class_weights_outdated;
             
+    /* Returns default capabilities of the classifier.
+    *
+    * @return      the capabilities of this classifier
+    */
+    
+    @Override
+    public Capabilities getCapabilities() {
+        Capabilities result = super.getCapabilities();
+
+        // instances
+        result.setMinimumNumberInstances(0);
+    
+        return result;
+    }
+    
     
       /**
    * Returns a string describing this classifier
@@ -32,6 +73,10 @@ public class CostSensitiveNaiveBayes extends CostSensitiveCredalClassifier{
     public String globalInfo() {
         return "Class for an imprecise Naive Bayes classifier using estimator classes. Numeric"
         +" It considers the error costs.\n\n"
+        +"It is an UpdateableClassifier: when it is built with zero training instances,"
+        +" the matrix of cost errors and the class weights are computed from the"
+        +" instances added one by one, for example while reading an ARFF file"
+        +" incrementally.\n\n"
         +"For more information on Naive Bayes classifiers, see\n\n"
         + getTechnicalInformation().toString();
     }
@@ -65,10 +110,6 @@ public class CostSensitiveNaiveBayes extends CostSensitiveCredalClassifier{
     @Override
     public void buildClassifier(Instances data) throws Exception{
         int num_classes = data.numClasses();
-        int num_attributes = data.numAttributes() - 1;
-        int class_index = data.classIndex();
-        Attribute attribute;
-        int num_values;
         int num_instances = data.numInstances();
         Instance instance;
       
@@ -76,6 +117,23 @@ public class CostSensitiveNaiveBayes extends CostSensitiveCredalClassifier{
         // can classifier handle the data?
         getCapabilities().testWithFail(data);
         
+        if(num_instances == 0 && (class_weights == null || updated_class_frequencies != null)){
+            /* The class frequencies are not known yet: the counts are added with weight 1
+               and rescaled when the weights are computed from the instances added */
+            update_matrix_cost_errors = matrix_cost_errors == null || update_matrix_cost_errors;
+            updated_class_frequencies = new double[num_classes];
+            applied_class_weights = new double[num_classes];
+            Arrays.fill(applied_class_weights, 1);
+            class_weights = applied_class_weights.clone();
+            
+            if(update_matrix_cost_errors)
+                computeMatrixCostErrors(data);
+        }
+        else
+            updated_class_frequencies = null;
+        
+        class_weights_outdated = false;
+        
         if(matrix_cost_errors == null)
             computeMatrixCostErrors(data);
         
@@ -83,23 +141,15 @@ public class CostSensitiveNaiveBayes extends CostSensitiveCredalClassifier{
             computeClassWeights(data);
    
         class_distribution = new DiscreteEstimatorCostSensitiveNPI(num_classes);
-        distributions = new DiscreteEstimatorCostSensitiveNPI[num_attributes][num_classes];
-    
-        for(int i = 0; i<=num_attributes; i++){
-            if(i!= class_index){
-                attribute = data.attribute(i);
-                num_values = attribute.numValues();
-            
-                for(int j = 0; j < num_classes; j++){
-                    distributions[i][j] = new DiscreteEstimatorCostSensitiveNPI(num_values);
-                }
-            }
-        }
+        counts = new ConditionalCountTable(data, 0);
     
         for(int i = 0; i < num_instances; i++){
             instance = data.instance(i);
             updateClassifier(instance);
         }
+        
+        factors_outdated = true;
+        computeFactors();
     
     }
     
@@ -121,23 +171,75 @@ public class CostSensitiveNaiveBayes extends CostSensitiveCredalClassifier{
       /**
    * Updates the classifier with the given instance.
    *
+   * Instances whose class value is missing are ignored.
+   *
    * @param instance the new training instance to include in the model 
    */
-    protected void updateClassifier(Instance instance){
-        int num_attributes = instance.numAttributes();
-        int class_index = instance.classIndex();
-        int class_value = (int)instance.classValue();
-        double weight = class_weights[class_value];
-        int attribute_value;
+    public void updateClassifier(Instance instance){
+        int class_value;
+        double weight;
+        
+        if(instance.classIsMissing())
+            return;
+        
+        class_value = (int)instance.classValue();
+        
+        if(updated_class_frequencies != null){
+            updated_class_frequencies[class_value]++;
+            weight = applied_class_weights[class_value];
+            class_weights_outdated = true;
+        }
+        else
+            weight = class_weights[class_value];
         
         class_distribution.addComponent(class_value, weight);
+        counts.addInstance(instance, weight);
+        factors_outdated = true;
+    }
+    
+    /**
+     * Computes the factors of the inferior and superior probabilities of each attribute value
+     * given each class value from the weighted counts, according to the A-NPI-M.
+     */
+    private synchronized void computeFactors(){
+        int num_classes = counts.getNumClasses();
+        int num_attributes = counts.getNumAttributes();
+        double[] inferior, superior;
+        int row;
+        double count, sum_of_counts;
+        double inferior_probability, superior_probability;
+        
+        if(!factors_outdated && inferior_factors != null)
+            return;
+        
+        inferior = new double[counts.getNumRows()*num_classes];
+        superior = new double[counts.getNumRows()*num_classes];
         
         for(int i = 0; i < num_attributes; i++){
-            if(i!=class_index){
-                attribute_value = (int)instance.value(i);
-                distributions[i][class_value].addComponent(attribute_value, weight);
+            for(int v = 0; v < counts.getNumValues(i); v++){
+                row = counts.getRow(i, v);
+                
+                for(int j = 0; j < num_classes; j++){
+                    count = counts.getCount(row, j);
+                    sum_of_counts = counts.getAttributeSum(i, j);
+                    inferior_probability = (count - 1)/sum_of_counts;
+                    superior_probability = (count + 1)/sum_of_counts;
+                    
+                    if(inferior_probability < 0)
+                        inferior_probability = 0;
+                    
+                    if(superior_probability > 1)
+                        superior_probability = 1;
+                    
+                    inferior[row*num_classes + j] = inferior_probability;
+                    superior[row*num_classes + j] = superior_probability;
+                }
             }
         }
+        
+        superior_factors = superior;
+        inferior_factors = inferior;
+        factors_outdated = false;
     }
     
      /* Classifies a given test instance using the Naive Bayes.
@@ -182,52 +284,58 @@ public class CostSensitiveNaiveBayes extends CostSensitiveCredalClassifier{
         return probs;
     }
     
-     /**
-    * Compute Non-Dominate Index set for an instance to update credal statistics 
-    * @param instance, the instance from which update statistics
-    * @throws NoSupportForMissingValuesException 
-    */
-   
-    private void updateCredalStatistics(Instance instance) throws NoSupportForMissingValuesException{
+    /**
+     * Computes the indices of the non-dominated class values for an instance,
+     * without updating the statistics.
+     * @param instance the instance
+     * @return the indices of the non-dominated class values
+     * @throws NoSupportForMissingValuesException 
+     */
+    public int[] nonDominatedIndexSet(Instance instance) throws NoSupportForMissingValuesException{
         boolean[] non_dominated_set;
         int num_classes = instance.numClasses();
         double[] inferior_probabilities = new double[num_classes];
         double[] superior_probabilities = new double[num_classes];
-        double class_inferior_probability, class_superior_probability;
-        double inferior_probability, superior_probability;
-        double partial_inferior_probability, partial_superior_probability;
+        double[] inferior, superior;
         int class_index = instance.classIndex();
         int num_attributes = instance.numAttributes();
-        int attribute_value;
+        int row;
         double max_inferior = 0;
         double max_superior = 0;
         int[] non_dominated_index_set;
         
-      
+        if(class_weights_outdated)
+            updateClassWeights();
+        
+        if(factors_outdated || inferior_factors == null)
+            computeFactors();
+        
+        inferior = inferior_factors;
+        superior = superior_factors;
+        
         for(int j = 0; j < num_classes; j++){
-            class_inferior_probability = class_distribution.getInferiorProbability(j);
-            class_superior_probability = class_distribution.getSuperiorProbability(j);
-            inferior_probability = class_inferior_probability;
-            superior_probability = class_superior_probability;
-          
-            for(int i = 0; i < num_attributes; i++){
-                if(i!=class_index){
-                    attribute_value = (int)instance.value(i);
-                    partial_inferior_probability = distributions[i][j].getInferiorProbability(attribute_value);
-                    partial_superior_probability = distributions[i][j].getSuperiorProbability(attribute_value);
-                    inferior_probability*=partial_inferior_probability;
-                    superior_probability*=partial_superior_probability;
+            inferior_probabilities[j] = class_distribution.getInferiorProbability(j);
+            superior_probabilities[j] = class_distribution.getSuperiorProbability(j);
+        }
+        
+        // The factors of each attribute value are contiguous, so the classes are the inner loop
+        for(int i = 0; i < num_attributes; i++){
+            if(i!=class_index){
+                row = counts.getRow(i, (int)instance.value(i))*num_classes;
+                
+                for(int j = 0; j < num_classes; j++){
+                    inferior_probabilities[j]*=inferior[row + j];
+                    superior_probabilities[j]*=superior[row + j];
                 }
             }
-          
-            if(inferior_probability > max_inferior)
-                max_inferior = inferior_probability;
-          
-            if(superior_probability > max_superior)
-                max_superior = superior_probability;
-          
-            inferior_probabilities[j] = inferior_probability;
-            superior_probabilities[j] = superior_probability;
+        }
+        
+        for(int j = 0; j < num_classes; j++){
+            if(inferior_probabilities[j] > max_inferior)
+                max_inferior = inferior_probabilities[j];
+            
+            if(superior_probabilities[j] > max_superior)
+                max_superior = superior_probabilities[j];
         }
             
         if ((max_inferior > 0) && (max_inferior < 1e-75)) { // Danger of probability underflow
@@ -245,23 +353,66 @@ public class CostSensitiveNaiveBayes extends CostSensitiveCredalClassifier{
       
         non_dominated_index_set=getNonDominatedIndexSet(non_dominated_set); 
       
-        this.updateStatistics(non_dominated_index_set, instance);
+        return non_dominated_index_set;
 
 
+    }
+
+     /**
+    * Compute Non-Dominate Index set for an instance to update credal statistics 
+    * @param instance, the instance from which update statistics
+    * @throws NoSupportForMissingValuesException 
+    */
+   
+    private void updateCredalStatistics(Instance instance) throws NoSupportForMissingValuesException{
+        this.updateStatistics(this.nonDominatedIndexSet(instance), instance);
+    }
+  
+    /**
+     * Computes the matrix of cost errors and the class weights from the frequencies of the
+     * class values of the instances added with updateClassifier, and rescales the counts
+     * of the estimators from the weights they were added with to the new ones.
+     */
+    
+    private synchronized void updateClassWeights(){
+        int num_classes = updated_class_frequencies.length;
+        double factor;
+        
+        if(!class_weights_outdated)
+            return;
+        
+        if(update_matrix_cost_errors)
+            computeMatrixCostErrors(updated_class_frequencies);
+        
+        computeClassWeightsFromCosts(updated_class_frequencies, computeClassCosts());
+        
+        for(int j = 0; j < num_classes; j++){
+            factor = class_weights[j]/applied_class_weights[j];
+            class_distribution.scaleComponent(j, factor);
+            counts.scaleClass(j, factor);
+            applied_class_weights[j] = class_weights[j];
+        }
+        
+        factors_outdated = true;
+        class_weights_outdated = false;
     }
   
     public DiscreteEstimatorCostSensitiveNPI getClassDistribution(){
+        if(class_weights_outdated)
+            updateClassWeights();
+        
         return class_distribution;
     }
     
     /**
-     * It return the distribution corresponding to an attribute value and a class value
-     * @param attribute_index the index of the attribute
-     * @param class_index the class index
-     * @return the distribution
+     * It returns the weighted counts of the attribute values given the class values
+     * @return the counts
      */
-    public DiscreteEstimatorCostSensitiveNPI getConditionedDistribution(int attribute_index, int class_index){
-        return distributions[attribute_index][class_index];
+    public ConditionalCountTable getConditionalCounts(){
+        if(class_weights_outdated)
+            updateClassWeights();
+        
+        return counts;
     }
     
 }
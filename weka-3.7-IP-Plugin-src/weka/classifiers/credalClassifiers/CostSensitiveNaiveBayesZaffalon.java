@@ -5,9 +5,9 @@
  */
 package weka.classifiers.credalClassifiers;
 
+import utils.ConditionalCountTable;
 import utils.DiscreteEstimatorZaffalon;
 import weka.core.AdditionalMeasureProducer;
-import weka.core.Attribute;
 import weka.core.Capabilities;
 import weka.core.Instance;
 import weka.core.Instances;
@@ -21,8 +21,16 @@ import weka.core.TechnicalInformation;
  */
 public class CostSensitiveNaiveBayesZaffalon extends CostSensitiveCredalClassifier implements OptionHandler, AdditionalMeasureProducer{
     
-    /** The attribute estimators. */
-    protected DiscreteEstimatorZaffalon [][] distributions;
+    /** The counts of the attribute values given the class values. */
+    protected ConditionalCountTable counts;
+
+    /** The factors of the inferior and superior probabilities of each attribute value
+     * given each class value, in the same positions as their counts. They are not
+     * serialized, but computed again from the counts when they are needed. */
+    protected transient volatile double[] inferior_factors, superior_factors;
+
+    /** Whether the counts have changed since the factors were computed. */
+    private volatile boolean factors_outdated;
 
     /** The class estimator. */
     protected DiscreteEstimatorZaffalon class_distribution;
@@ -91,11 +99,7 @@ public class CostSensitiveNaiveBayesZaffalon extends CostSensitiveCredalClassifi
     @Override
     public void buildClassifier(Instances data) throws Exception{
         int num_classes = data.numClasses();
-        int num_attributes = data.numAttributes() - 1;
-        int class_index = data.classIndex();
         double s_value = this.getSValue();
-        Attribute attribute;
-        int num_values;
         int num_instances = data.numInstances();
         Instance instance;
       
@@ -107,22 +111,15 @@ public class CostSensitiveNaiveBayesZaffalon extends CostSensitiveCredalClassifi
 
     
         class_distribution = new DiscreteEstimatorZaffalon(num_classes, s_value);
-        distributions = new DiscreteEstimatorZaffalon[num_attributes][num_classes];
-    
-        for(int i = 0; i<=num_attributes; i++){
-            if(i!= class_index){
-                attribute = data.attribute(i);
-                num_values = attribute.numValues();
-            
-                for(int j = 0; j < num_classes; j++)
-                    distributions[i][j] = new DiscreteEstimatorZaffalon(num_values,s_value);
-            }
-        }
+        counts = new ConditionalCountTable(data, s_value);
     
         for(int i = 0; i < num_instances; i++){
             instance = data.instance(i);
             updateClassifier(instance);
         }
+        
+        factors_outdated = true;
+        computeFactors();
     
     }
   
@@ -132,19 +129,48 @@ public class CostSensitiveNaiveBayesZaffalon extends CostSensitiveCredalClassifi
    * @param instance the new training instance to include in the model 
    */
     protected void updateClassifier(Instance instance){
-        int num_attributes = instance.numAttributes();
-        int class_index = instance.classIndex();
         int class_value = (int)instance.classValue();
-        int attribute_value;
         
         class_distribution.addComponent(class_value);
+        counts.addInstance(instance, 1.0);
+        factors_outdated = true;
+    }
+    
+    /**
+     * Computes the factors of the inferior and superior probabilities of each attribute value
+     * given each class value from the counts, as the estimators of the attribute given the
+     * class value.
+     */
+    private synchronized void computeFactors(){
+        int num_classes = counts.getNumClasses();
+        int num_attributes = counts.getNumAttributes();
+        double s_value = counts.getPriorCount();
+        double[] inferior, superior;
+        int row;
+        double count, sum_of_counts;
+        
+        if(!factors_outdated && inferior_factors != null)
+            return;
+        
+        inferior = new double[counts.getNumRows()*num_classes];
+        superior = new double[counts.getNumRows()*num_classes];
         
         for(int i = 0; i < num_attributes; i++){
-            if(i!=class_index){
-                attribute_value = (int)instance.value(i);
-                distributions[i][class_value].addComponent(attribute_value);
+            for(int v = 0; v < counts.getNumValues(i); v++){
+                row = counts.getRow(i, v);
+                
+                for(int j = 0; j < num_classes; j++){
+                    count = counts.getCount(row, j);
+                    sum_of_counts = counts.getAttributeSum(i, j);
+                    inferior[row*num_classes + j] = count/sum_of_counts;
+                    superior[row*num_classes + j] = (count + s_value)/sum_of_counts;
+                }
             }
         }
+        
+        superior_factors = superior;
+        inferior_factors = inferior;
+        factors_outdated = false;
     }
     
     /* Classifies a given test instance using the Naive Bayes.
@@ -190,51 +216,55 @@ public class CostSensitiveNaiveBayesZaffalon extends CostSensitiveCredalClassifi
     }
     
     /**
-    * Compute Non-Dominate Index set for an instance to update credal statistics 
-    * @param instance, the instance from which update statistics
-    * @throws NoSupportForMissingValuesException 
-    */
-   
-    private void updateCredalStatistics(Instance instance) throws NoSupportForMissingValuesException{
+     * Computes the indices of the non-dominated class values for an instance,
+     * without updating the statistics.
+     * @param instance the instance
+     * @return the indices of the non-dominated class values
+     * @throws NoSupportForMissingValuesException 
+     */
+    public int[] nonDominatedIndexSet(Instance instance) throws NoSupportForMissingValuesException{
         boolean[] non_dominated_set;
         int num_classes = instance.numClasses();
         double[] inferior_probabilities = new double[num_classes];
         double[] superior_probabilities = new double[num_classes];
-        double class_inferior_probability, class_superior_probability;
-        double inferior_probability, superior_probability;
-        double partial_inferior_probability, partial_superior_probability;
+        double[] inferior, superior;
         int class_index = instance.classIndex();
         int num_attributes = instance.numAttributes();
-        int attribute_value;
+        int row;
         double max_inferior = 0;
         double max_superior = 0;
         int[] non_dominated_index_set;
         double[] lower_risks, upper_risks;
-      
+        
+        if(factors_outdated || inferior_factors == null)
+            computeFactors();
+        
+        inferior = inferior_factors;
+        superior = superior_factors;
+        
         for(int j = 0; j < num_classes; j++){
-            class_inferior_probability = class_distribution.getInferiorProbability(j);
-            class_superior_probability = class_distribution.getSuperiorProbability(j);
-            inferior_probability = class_inferior_probability;
-            superior_probability = class_superior_probability;
-          
-            for(int i = 0; i < num_attributes; i++){
-                if(i!=class_index){
-                    attribute_value = (int)instance.value(i);
-                    partial_inferior_probability = distributions[i][j].getInferiorProbability(attribute_value);
-                    partial_superior_probability = distributions[i][j].getSuperiorProbability(attribute_value);
-                    inferior_probability*=partial_inferior_probability;
-                    superior_probability*=partial_superior_probability;
+            inferior_probabilities[j] = class_distribution.getInferiorProbability(j);
+            superior_probabilities[j] = class_distribution.getSuperiorProbability(j);
+        }
+        
+        // The factors of each attribute value are contiguous, so the classes are the inner loop
+        for(int i = 0; i < num_attributes; i++){
+            if(i!=class_index){
+                row = counts.getRow(i, (int)instance.value(i))*num_classes;
+                
+                for(int j = 0; j < num_classes; j++){
+                    inferior_probabilities[j]*=inferior[row + j];
+                    superior_probabilities[j]*=superior[row + j];
                 }
             }
-          
-            if(inferior_probability > max_inferior)
-                max_inferior = inferior_probability;
-          
-            if(superior_probability > max_superior)
-                max_superior = superior_probability;
-          
-            inferior_probabilities[j] = inferior_probability;
-            superior_probabilities[j] = superior_probability;
+        }
+        
+        for(int j = 0; j < num_classes; j++){
+            if(inferior_probabilities[j] > max_inferior)
+                max_inferior = inferior_probabilities[j];
+            
+            if(superior_probabilities[j] > max_superior)
+                max_superior = superior_probabilities[j];
         }
             
         if ((max_inferior > 0) && (max_inferior < 1e-75)) { // Danger of probability underflow
@@ -254,8 +284,18 @@ public class CostSensitiveNaiveBayesZaffalon extends CostSensitiveCredalClassifi
       
         non_dominated_index_set=getNonDominatedIndexSet(non_dominated_set); 
       
-        this.updateStatistics(non_dominated_index_set, instance);
+        return non_dominated_index_set;
+
 
+    }
 
+    /**
+    * Compute Non-Dominate Index set for an instance to update credal statistics 
+    * @param instance, the instance from which update statistics
+    * @throws NoSupportForMissingValuesException 
+    */
+   
+    private void updateCredalStatistics(Instance instance) throws NoSupportForMissingValuesException{
+        this.updateStatistics(this.nonDominatedIndexSet(instance), instance);
     }
 }
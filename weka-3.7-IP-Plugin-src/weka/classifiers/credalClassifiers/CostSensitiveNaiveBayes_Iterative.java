@@ -8,6 +8,7 @@ package weka.classifiers.credalClassifiers;
 import java.util.Enumeration;
 import java.util.Vector;
 import utils.DiscreteEstimatorCostSensitiveNPI;
+import weka.core.Capabilities;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.Option;
@@ -39,6 +40,23 @@ public class CostSensitiveNaiveBayes_Iterative extends CostSensitiveNaiveBayes{
         + getTechnicalInformation().toString();
     }
     
+    /* Returns default capabilities of the classifier.
+    * The class weights are computed by cross validation, so the classifier
+    * can't be built with zero instances and updated afterwards.
+    *
+    * @return      the capabilities of this classifier
+    */
+    
+    @Override
+    public Capabilities getCapabilities() {
+        Capabilities result = super.getCapabilities();
+
+        // instances
+        result.setMinimumNumberInstances(num_folds);
+    
+        return result;
+    }
+    
     /**
    * Returns the tip text for this property
    * @return tip text for this property suitable for
@@ -93,78 +111,6 @@ public class CostSensitiveNaiveBayes_Iterative extends CostSensitiveNaiveBayes{
         return num_folds;
     }
     
-    /**
-     * It makes a prediction of a given mode for a given test instance
-     * It considers the maximum entropy probability distributions
-     * @param model the given model
-     * @param test_instance the test instance
-     * @return the predicted non-dominated states set by the model for the instance
-     */
-    
-    private int[] makePrediction(CostSensitiveNaiveBayes model, Instance test_instance){
-        int num_classes = test_instance.numClasses();
-        int class_index = test_instance.classIndex();
-        int num_attributes = test_instance.numAttributes();
-        int attribute_value;
-        DiscreteEstimatorCostSensitiveNPI model_class_distribution = model.getClassDistribution();
-        DiscreteEstimatorCostSensitiveNPI model_conditioned_distribution;
-        double[] inferior_probabilities = new double[num_classes];
-        double[] superior_probabilities = new double[num_classes];
-        double class_inferior_probability, class_superior_probability;
-        double inferior_probability, superior_probability;
-        double partial_inferior_probability, partial_superior_probability;
-        double max_inferior = -Double.MAX_VALUE;
-        double max_superior = -Double.MAX_VALUE;
-        boolean[] non_dominated_set;
-        int[] non_dominated_index_set;
-        
-        for(int j = 0; j < num_classes; j++){
-            class_inferior_probability = model_class_distribution.getInferiorProbability(j);
-            class_superior_probability = model_class_distribution.getSuperiorProbability(j);
-            inferior_probability = class_inferior_probability;
-            superior_probability = class_superior_probability;
-            
-            for(int i = 0; i < num_attributes; i++){
-                if(i!=class_index){
-                    attribute_value = (int)test_instance.value(i);
-                    model_conditioned_distribution = model.getConditionedDistribution(i, j);
-                    partial_inferior_probability = model_conditioned_distribution.getInferiorProbability(attribute_value);
-                    partial_superior_probability = model_conditioned_distribution.getSuperiorProbability(attribute_value);
-                    inferior_probability*=partial_inferior_probability;
-                    superior_probability*=partial_superior_probability;
-                }
-            }
-            
-            if(inferior_probability > max_inferior)
-                max_inferior = inferior_probability;
-          
-            if(superior_probability > max_superior)
-                max_superior = superior_probability;
-          
-            inferior_probabilities[j] = inferior_probability;
-            superior_probabilities[j] = superior_probability;
-            
-                
-        }
-        
-        if ((max_inferior > 0) && (max_inferior < 1e-75)) { // Danger of probability underflow
-            for (int j = 0; j < num_classes; j++) 
-                inferior_probabilities[j] *= 1e75;
-        }
-      
-        if ((max_superior > 0) && (max_superior < 1e-75)) { // Danger of probability underflow
-            for (int j = 0; j < num_classes; j++) 
-                superior_probabilities[j] *= 1e75;
-        }
-
-      
-        non_dominated_set = computeNonDominatedSetFromProbabilities(inferior_probabilities,superior_probabilities);
-      
-        non_dominated_index_set=getNonDominatedIndexSet(non_dominated_set); 
-        
-        return non_dominated_index_set;
-    }
-    
        /* Builds Cost sensitive Naive Bayes Credal classifier.
     *
     * @param data the training data
@@ -209,7 +155,7 @@ public class CostSensitiveNaiveBayes_Iterative extends CostSensitiveNaiveBayes{
                 for(int k = 0; k < num_test_instances; k++){
                     test_instance = test.instance(k);
                     real_class_value = (int)test_instance.classValue();
-                    non_dominated_index_set = makePrediction(current_model, test_instance);
+                    non_dominated_index_set = current_model.nonDominatedIndexSet(test_instance);
                     num_non_dominated_states = non_dominated_index_set.length;
                     
                     for(int l = 0; l < num_non_dominated_states; l++){                     
@@ -195,15 +195,15 @@ public class CredalAveraging
     }
 
     /**
-     * Calculates the class membership probabilities for the given test instance.
+     * Returns the indices of the non-dominated class values for an instance, without
+     * updating the statistics. Missing values are passed to the credal classifier as -9999.
+     * The credal classifier keeps intermediate results in its fields, so the method is
+     * synchronized to be safe when called by several threads.
      *
      * @param instance the instance to be classified
-     * @return predicted class probability distribution
-     * @exception Exception if distribution can't be computed
+     * @return the indices of the non-dominated class values
      */
-    public double[] distributionForInstance(Instance instance) throws Exception {
-
-
+    public synchronized int[] nonDominatedIndexSet(Instance instance) {
 
         int[] values = new int[instance.numAttributes()];
         for (int i = 0; i < instance.numAttributes(); i++) {
@@ -214,7 +214,19 @@ public class CredalAveraging
             }
         }
 
-        int[] predictions = this.credalNB.classifyInstance(values);
+        return this.credalNB.classifyInstance(values);
+    }
+
+    /**
+     * Calculates the class membership probabilities for the given test instance.
+     *
+     * @param instance the instance to be classified
+     * @return predicted class probability distribution
+     * @exception Exception if distribution can't be computed
+     */
+    public double[] distributionForInstance(Instance instance) throws Exception {
+
+        int[] predictions = this.nonDominatedIndexSet(instance);
 
         this.stats.updateStatistics(predictions, instance);
 
@@ -0,0 +1,634 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package weka.classifiers.credalClassifiers;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Random;
+import java.util.Vector;
+
+import utils.CredalClassificationStatistics;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.trees.ColumnStore;
+import weka.classifiers.trees.ColumnStoreClassifier;
+import weka.classifiers.trees.NodeTreeClassifier;
+import weka.classifiers.trees.NodeTreeCompactor;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Randomizable;
+
+/**
+ * Builds the members of a credal ensemble by bagging.
+ *
+ * Each member is built from its own bootstrap sample of the training data. The
+ * sample is drawn with a random number generator whose seed only depends on the
+ * seed of the ensemble and on the index of the member, and the seed of a
+ * randomizable member is drawn from the same generator. The members can therefore
+ * be built by several threads in any order, and the ensemble is the same for any
+ * number of execution slots. The training data is shared by all the members and
+ * is only read.
+ *
+ * A sample is kept as the number of times each instance is in it. If the members
+ * can be built from a ColumnStore, the data is encoded once and each member gets
+ * a sample of that store, so no copy of the instances is made for any member.
+ * Otherwise each member gets a copy of the instances of its sample.
+ *
+ * Once built, the trees of members that are NodeTreeClassifiers are compacted
+ * together: their identical subtrees and class frequencies are stored once, which
+ * makes the ensemble much smaller in memory and once serialized.
+ *
+ * The bagger can also record which instances each member leaves out of its sample,
+ * and evaluate the ensemble on them: every instance is classified by the members
+ * that have not seen it, which estimates the credal measures of the ensemble
+ * without a cross-validation.
+ *
+ * Since the sample of a member only depends on its index, more members can be added
+ * to an ensemble already built: an ensemble of N members grown by M members is the
+ * one built from scratch with N + M members. With the out-of-bag samples recorded,
+ * the ensemble can also be grown until its out-of-bag predictions stop changing.
+ *
+ * Note that the ensemble is not the one built by weka.classifiers.meta.Bagging
+ * with the same seed, since Bagging draws all the samples from a single generator.
+ */
+public class CredalBagger implements Serializable {
+
+  /** for serialization */
+  static final long serialVersionUID = -3716482098731564185L;
+
+  /** The classifier that is copied to build each member. */
+  protected Classifier m_Classifier;
+
+  /** The members of the ensemble. */
+  protected Classifier[] m_Classifiers;
+
+  /** Number of members. */
+  protected int m_NumIterations = 10;
+
+  /** The random seed of the ensemble. */
+  protected int m_Seed = 1;
+
+  /** Number of members built at the same time. With 1 slot they are built sequentially. */
+  protected int m_NumExecutionSlots = 1;
+
+  /** Whether the instances in the sample of each member are recorded. */
+  protected boolean m_CalcOutOfBag = false;
+
+  /** For each member, whether each instance is in its sample, or null if it is not recorded. */
+  protected boolean[][] m_InBag;
+
+  /** Statistics of the out-of-bag predictions, or null if they have not been computed. */
+  protected CredalClassificationStatistics m_OutOfBagStatistics;
+
+  /** Prefix of the names of the out-of-bag measures, which replaces the prefix "measure". */
+  public static final String OUT_OF_BAG_PREFIX = "measureOOB";
+
+  /**
+   * Set the classifier that is copied to build each member.
+   * @param newClassifier the classifier
+   */
+  public void setClassifier(Classifier newClassifier) {
+    m_Classifier = newClassifier;
+  }
+
+  /**
+   * Get the classifier that is copied to build each member.
+   * @return the classifier
+   */
+  public Classifier getClassifier() {
+    return m_Classifier;
+  }
+
+  /**
+   * Returns a member of the ensemble built by buildClassifier.
+   * @param index the index of the member
+   * @return the member
+   */
+  public Classifier getClassifier(int index) {
+    return m_Classifiers[index];
+  }
+
+  /**
+   * Returns the members of the ensemble built by buildClassifier. The array must not be modified.
+   * @return the members
+   */
+  public Classifier[] getClassifiers() {
+    return m_Classifiers;
+  }
+
+  /**
+   * Set the number of members.
+   * @param numIterations the number of members
+   */
+  public void setNumIterations(int numIterations) {
+    m_NumIterations = numIterations;
+  }
+
+  /**
+   * Get the number of members.
+   * @return the number of members
+   */
+  public int getNumIterations() {
+    return m_NumIterations;
+  }
+
+  /**
+   * Set the seed of the ensemble.
+   * @param seed the seed
+   */
+  public void setSeed(int seed) {
+    m_Seed = seed;
+  }
+
+  /**
+   * Get the seed of the ensemble.
+   * @return the seed
+   */
+  public int getSeed() {
+    return m_Seed;
+  }
+
+  /**
+   * Set the number of members built at the same time.
+   * @param numSlots the number of execution slots, 1 to build the members sequentially
+   */
+  public void setNumExecutionSlots(int numSlots) {
+    m_NumExecutionSlots = numSlots;
+  }
+
+  /**
+   * Get the number of members built at the same time.
+   * @return the number of execution slots
+   */
+  public int getNumExecutionSlots() {
+    return m_NumExecutionSlots;
+  }
+
+  /**
+   * Set whether the instances in the sample of each member are recorded, which is
+   * needed to compute the out-of-bag statistics.
+   * @param calcOutOfBag true to record them
+   */
+  public void setCalcOutOfBag(boolean calcOutOfBag) {
+    m_CalcOutOfBag = calcOutOfBag;
+  }
+
+  /**
+   * Get whether the instances in the sample of each member are recorded.
+   * @return true if they are recorded
+   */
+  public boolean getCalcOutOfBag() {
+    return m_CalcOutOfBag;
+  }
+
+  /**
+   * Returns the seed of the random number generator of a member. It mixes the bits of the
+   * seed of the ensemble and of the index of the member, so that the generators of
+   * consecutive members are not correlated.
+   * @param seed the seed of the ensemble
+   * @param index the index of the member
+   * @return the seed of the member
+   */
+  public static long memberSeed(int seed, int index) {
+    long z = ((long) seed << 32) ^ (index & 0xFFFFFFFFL);
+
+    z += 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  /**
+   * Draws a bootstrap sample of the data, with the probability of each instance
+   * proportional to its weight. The draws are the same as the ones of
+   * Instances.resampleWithWeights, but only the number of copies of each instance
+   * is returned.
+   * @param data the data
+   * @param random the random number generator
+   * @return the number of times each instance is in the sample
+   */
+  public static int[] bootstrap(Instances data, Random random) {
+    int num_instances = data.numInstances();
+    int[] counts = new int[num_instances];
+    double[] probabilities = new double[num_instances];
+    double sum_probs = 0, sum_weights = 0, weight;
+    int k, l;
+
+    if (num_instances == 0)
+      return counts;
+
+    for (int i = 0; i < num_instances; i++)
+      sum_weights += data.instance(i).weight();
+
+    // sorted uniform values in [0, sum_weights)
+    for (int i = 0; i < num_instances; i++) {
+      sum_probs += random.nextDouble();
+      probabilities[i] = sum_probs;
+    }
+    for (int i = 0; i < num_instances; i++)
+      probabilities[i] /= sum_probs / sum_weights;
+    probabilities[num_instances - 1] = sum_weights;
+
+    k = 0;
+    l = 0;
+    sum_probs = 0;
+    while (k < num_instances && l < num_instances) {
+      weight = data.instance(l).weight();
+      if (weight < 0)
+        throw new IllegalArgumentException("Weights have to be positive.");
+
+      sum_probs += weight;
+      while (k < num_instances && probabilities[k] <= sum_probs) {
+        counts[l]++;
+        k++;
+      }
+      l++;
+    }
+
+    return counts;
+  }
+
+  /**
+   * Builds the sample given by the number of copies of each instance. The copies have
+   * weight 1, as the ones of Instances.resampleWithWeights.
+   * @param data the data
+   * @param counts the number of copies of each instance
+   * @return the sample
+   */
+  protected static Instances sample(Instances data, int[] counts) {
+    Instances sample = new Instances(data, data.numInstances());
+
+    for (int i = 0; i < counts.length; i++) {
+      for (int j = 0; j < counts[i]; j++) {
+        sample.add(data.instance(i));
+        sample.instance(sample.numInstances() - 1).setWeight(1);
+      }
+    }
+
+    return sample;
+  }
+
+  /**
+   * Returns the number of times each row of a store is in a sample of the data the
+   * store was built from. The store leaves out the instances with missing class.
+   * @param data the data
+   * @param counts the number of times each instance is in the sample
+   * @param num_rows the number of rows of the store
+   * @return the number of times each row is in the sample
+   */
+  protected static int[] rowMultiplicities(Instances data, int[] counts, int num_rows) {
+    int[] multiplicities;
+    int row;
+
+    if (num_rows == counts.length)
+      return counts;
+
+    multiplicities = new int[num_rows];
+    row = 0;
+    for (int i = 0; i < counts.length; i++) {
+      if (!data.instance(i).classIsMissing())
+        multiplicities[row++] = counts[i];
+    }
+
+    return multiplicities;
+  }
+
+  /**
+   * Builds a member of the ensemble. Only its own generator is used, so the member
+   * does not depend on the other ones.
+   * @param data the training data
+   * @param store the encoded training data, or null if the members are built from instances
+   * @param index the index of the member
+   * @throws Exception if the member can't be built
+   */
+  protected void buildMember(Instances data, ColumnStore store, int index) throws Exception {
+    Random random = new Random(memberSeed(m_Seed, index));
+    int[] counts = bootstrap(data, random);
+
+    if (m_Classifiers[index] instanceof Randomizable)
+      ((Randomizable) m_Classifiers[index]).setSeed(random.nextInt());
+
+    if (m_InBag != null) {
+      boolean[] in_bag = new boolean[counts.length];
+
+      for (int i = 0; i < counts.length; i++)
+        in_bag[i] = counts[i] > 0;
+      m_InBag[index] = in_bag;
+    }
+
+    if (store != null) {
+      ((ColumnStoreClassifier) m_Classifiers[index]).buildClassifier(
+        new ColumnStore(store, rowMultiplicities(data, counts, store.numRows())));
+    } else {
+      m_Classifiers[index].buildClassifier(sample(data, counts));
+    }
+  }
+
+  /**
+   * Encodes the training data for the members that can be built from a ColumnStore.
+   * @param data the training data
+   * @return the encoded data, or null if the members are built from the instances
+   * @throws Exception if the members can't handle the data
+   */
+  protected ColumnStore encode(Instances data) throws Exception {
+    if (m_Classifier instanceof ColumnStoreClassifier) {
+      // the members are not given the instances, so their capabilities are tested here
+      m_Classifier.getCapabilities().testWithFail(data);
+      return new ColumnStore(data);
+    }
+
+    return null;
+  }
+
+  /**
+   * Builds a range of members, whose copies of the base classifier have already been made.
+   * @param data the training data, which is not modified
+   * @param store the encoded training data, or null
+   * @param from the index of the first member of the range
+   * @param to the index after the last member of the range
+   * @throws Exception if some member can't be built
+   */
+  protected void buildMembers(final Instances data, final ColumnStore store, final int from, int to)
+    throws Exception {
+
+    // the error of the first member that fails is reported, whatever the number of slots
+    ParallelChunks.run(to - from, m_NumExecutionSlots, new ParallelChunks.Chunk<Object>() {
+      public Object run(int chunk_from, int chunk_to) throws Exception {
+        for (int i = from + chunk_from; i < from + chunk_to; i++)
+          buildMember(data, store, i);
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Builds the members of the ensemble.
+   * @param data the training data, which is not modified
+   * @throws Exception if some member can't be built
+   */
+  public void buildClassifier(Instances data) throws Exception {
+    ColumnStore store;
+
+    if (m_Classifier == null)
+      throw new Exception("A base classifier has not been specified!");
+
+    store = encode(data);
+
+    m_Classifiers = Classifier.makeCopies(m_Classifier, m_NumIterations);
+    m_InBag = m_CalcOutOfBag ? new boolean[m_NumIterations][] : null;
+    m_OutOfBagStatistics = null;
+
+    buildMembers(data, store, 0, m_NumIterations);
+    compactMembers();
+  }
+
+  /**
+   * Adds members to the ensemble already built. The members are the ones that a build
+   * from scratch with more iterations would have at the same indices.
+   * @param data the training data given to buildClassifier
+   * @param numMembers the number of members to add
+   * @throws Exception if the ensemble has not been built or some member can't be built
+   */
+  public void addMembers(Instances data, int numMembers) throws Exception {
+    int num_members = m_NumIterations + numMembers;
+    Classifier[] classifiers;
+    Classifier[] copies;
+    ColumnStore store;
+
+    if (m_Classifiers == null)
+      throw new Exception("The ensemble has not been built!");
+    if (m_InBag != null && m_InBag.length > 0 && m_InBag[0].length != data.numInstances())
+      throw new Exception("The data is not the one the ensemble was built with!");
+    if (numMembers <= 0)
+      return;
+
+    store = encode(data);
+
+    copies = Classifier.makeCopies(m_Classifier, numMembers);
+    classifiers = new Classifier[num_members];
+    System.arraycopy(m_Classifiers, 0, classifiers, 0, m_NumIterations);
+    System.arraycopy(copies, 0, classifiers, m_NumIterations, numMembers);
+    m_Classifiers = classifiers;
+    if (m_InBag != null)
+      m_InBag = Arrays.copyOf(m_InBag, num_members);
+    m_OutOfBagStatistics = null;
+
+    try {
+      buildMembers(data, store, m_NumIterations, num_members);
+    } catch (Exception e) {
+      // the ensemble is left as it was before
+      m_Classifiers = Arrays.copyOf(m_Classifiers, m_NumIterations);
+      if (m_InBag != null)
+        m_InBag = Arrays.copyOf(m_InBag, m_NumIterations);
+      throw e;
+    }
+
+    m_NumIterations = num_members;
+    compactMembers();
+  }
+
+  /**
+   * Shares the identical subtrees and class frequencies of the trees of all the members,
+   * if they are NodeTreeClassifiers. The predictions of the members do not change.
+   */
+  protected void compactMembers() {
+    NodeTreeCompactor compactor;
+
+    if (!(m_Classifier instanceof NodeTreeClassifier))
+      return;
+
+    compactor = new NodeTreeCompactor();
+    for (int i = 0; i < m_Classifiers.length; i++)
+      compactor.compact(((NodeTreeClassifier) m_Classifiers[i]).getRootNode());
+  }
+
+
+  /**
+   * Returns the members whose sample does not contain an instance of the training data.
+   * @param index the index of the instance in the training data
+   * @return the members, in increasing order of their index
+   */
+  public Classifier[] outOfBagMembers(int index) {
+    int num_members = 0;
+    Classifier[] members;
+
+    for (int i = 0; i < m_InBag.length; i++) {
+      if (!m_InBag[i][index])
+        num_members++;
+    }
+
+    members = new Classifier[num_members];
+    num_members = 0;
+    for (int i = 0; i < m_InBag.length; i++) {
+      if (!m_InBag[i][index])
+        members[num_members++] = m_Classifiers[i];
+    }
+
+    return members;
+  }
+
+  /**
+   * Computes the out-of-bag statistics of an ensemble built with these members. Each
+   * training instance is classified by the members whose sample does not contain it.
+   * The instances that are in every sample are not counted.
+   * @param data the training data given to buildClassifier
+   * @param ensemble the ensemble, which combines the predictions of the members
+   * @throws Exception if the samples have not been recorded or some set can't be computed
+   */
+  public void computeOutOfBagStatistics(Instances data, CredalEnsemble ensemble) throws Exception {
+    CredalClassificationStatistics stats;
+    int[][] sets = outOfBagSets(data, ensemble);
+
+    stats = new CredalClassificationStatistics((Classifier) ensemble);
+    stats.setEnumerateMeasures(true);
+    stats.updateStatistics(null, null);
+    stats.setEnumerateMeasures(false);
+    stats.resetValues();
+
+    for (int i = 0; i < sets.length; i++) {
+      if (sets[i] != null)
+        stats.updateStatistics(sets[i], data.instance(i));
+    }
+
+    m_OutOfBagStatistics = stats;
+  }
+
+  /**
+   * Computes the out-of-bag non-dominated sets of the training instances. Each instance
+   * is classified by the members whose sample does not contain it.
+   * @param data the training data given to buildClassifier
+   * @param ensemble the ensemble, which combines the predictions of the members
+   * @return for each instance, the indices of its non-dominated class values, or null if
+   * its class is missing or it is in every sample
+   * @throws Exception if the samples have not been recorded or some set can't be computed
+   */
+  public int[][] outOfBagSets(Instances data, CredalEnsemble ensemble) throws Exception {
+    int[][] sets = new int[data.numInstances()][];
+    Classifier[] members;
+    Instance instance;
+
+    if (m_InBag == null)
+      throw new Exception("The samples of the members have not been recorded!");
+
+    for (int i = 0; i < sets.length; i++) {
+      instance = data.instance(i);
+      if (instance.classIsMissing())
+        continue;
+
+      members = outOfBagMembers(i);
+      if (members.length > 0)
+        sets[i] = ensemble.nonDominatedIndexSet(instance, members);
+    }
+
+    return sets;
+  }
+
+  /**
+   * Adds members to the ensemble until its out-of-bag non-dominated sets are stable:
+   * after each step, the proportion of the training instances whose set has changed is
+   * compared with a tolerance. The samples of the members must have been recorded.
+   * @param data the training data given to buildClassifier
+   * @param ensemble the ensemble, which combines the predictions of the members
+   * @param step the number of members added at each step
+   * @param maxMembers the maximum number of members
+   * @param tolerance the maximum proportion of changed sets of a stable ensemble
+   * @return the number of members of the ensemble
+   * @throws Exception if the samples have not been recorded or some member can't be built
+   */
+  public int growUntilStable(Instances data, CredalEnsemble ensemble, int step, int maxMembers,
+    double tolerance) throws Exception {
+
+    int[][] previous_sets, sets;
+    int num_changed, num_compared;
+
+    if (step <= 0)
+      throw new IllegalArgumentException("The number of members added at each step must be positive!");
+
+    sets = outOfBagSets(data, ensemble);
+
+    while (m_NumIterations < maxMembers) {
+      addMembers(data, Math.min(step, maxMembers - m_NumIterations));
+
+      previous_sets = sets;
+      sets = outOfBagSets(data, ensemble);
+
+      num_changed = 0;
+      num_compared = 0;
+      for (int i = 0; i < sets.length; i++) {
+        if (sets[i] == null)
+          continue;
+
+        num_compared++;
+        if (!Arrays.equals(sets[i], previous_sets[i]))
+          num_changed++;
+      }
+
+      if (num_changed <= tolerance * num_compared)
+        break;
+    }
+
+    return m_NumIterations;
+  }
+
+  /**
+   * Returns the statistics of the out-of-bag predictions.
+   * @return the statistics, or null if they have not been computed
+   */
+  public CredalClassificationStatistics getOutOfBagStatistics() {
+    return m_OutOfBagStatistics;
+  }
+
+  /**
+   * Returns the names of the out-of-bag measures that correspond to some measures.
+   * @param measures the names of the measures, such as "measureDeterminacy"
+   * @return the names of the out-of-bag measures, such as "measureOOBDeterminacy"
+   */
+  public static Vector<String> outOfBagMeasureNames(Enumeration measures) {
+    Vector<String> names = new Vector<String>();
+    String name;
+
+    while (measures.hasMoreElements()) {
+      name = (String) measures.nextElement();
+
+      if (name.startsWith("measure"))
+        names.add(OUT_OF_BAG_PREFIX + name.substring("measure".length()));
+    }
+
+    return names;
+  }
+
+  /**
+   * @param measureName the name of a measure
+   * @return true if it is the name of an out-of-bag measure
+   */
+  public static boolean isOutOfBagMeasure(String measureName) {
+    return measureName.startsWith(OUT_OF_BAG_PREFIX);
+  }
+
+  /**
+   * Returns the value of an out-of-bag measure.
+   * @param measureName the name of the measure, such as "measureOOBDeterminacy"
+   * @return the value of the measure, or NaN if the statistics have not been computed
+   */
+  public double getOutOfBagMeasure(String measureName) {
+    if (m_OutOfBagStatistics == null)
+      return Double.NaN;
+
+    return m_OutOfBagStatistics.getMeasure("measure" + measureName.substring(OUT_OF_BAG_PREFIX.length()));
+  }
+}
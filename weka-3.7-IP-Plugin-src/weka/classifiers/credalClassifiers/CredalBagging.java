@@ -7,8 +7,9 @@ package weka.classifiers.credalClassifiers;
 
 import java.util.Enumeration;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
+import weka.classifiers.Classifier;
 import weka.classifiers.Evaluation;
-import weka.classifiers.meta.Bagging;
 import weka.core.AdditionalMeasureProducer;
 import weka.core.Capabilities;
 import weka.core.Instance;
@@ -24,15 +25,36 @@ import weka.core.Utils;
  *
  * @author Serafin
  */
-public class CredalBagging extends CredalClassifier implements OptionHandler, AdditionalMeasureProducer, Randomizable{
+public class CredalBagging extends CredalClassifier implements OptionHandler, AdditionalMeasureProducer, Randomizable, CredalEnsemble{
 /** Number of trees in forest. */
   protected int m_numTrees = 100;
     
   /** The random seed. */
   protected int m_randomSeed = 1;  
 
+  /** Number of trees built at the same time. */
+  protected int m_numExecutionSlots = 1;
+
+  /** Whether the vote for an instance stops as soon as the remaining trees can not change its result. */
+  protected boolean m_earlyTermination = false;
+
+  /** Number of instances classified since the statistics were initialized. */
+  protected AtomicLong m_numInstancesVoted = new AtomicLong();
+
+  /** Number of trees evaluated for those instances. */
+  protected AtomicLong m_numTreesEvaluated = new AtomicLong();
+
+  /** Whether the out-of-bag measures are computed while the trees are built. */
+  protected boolean m_calcOutOfBag = false;
+
+  /** Number of trees added at each step of the growth, 0 to build all the trees at once. */
+  protected int m_growStep = 0;
+
+  /** Maximum proportion of out-of-bag sets changed by a step of the growth of a stable ensemble. */
+  protected double m_growTolerance = 0.01;
+
   /** The bagger. */
-  protected Bagging m_bagger = null;
+  protected CredalBagger m_bagger = null;
   
     /**
    * Returns a string describing classifier
@@ -143,6 +165,146 @@ public class CredalBagging extends CredalClassifier implements OptionHandler, Ad
   public int getSeed() {
     return m_randomSeed;
   }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of trees built, or evaluated on a batch of instances, at the same time "
+           + "(1 to do it sequentially). The results are the same for any number of execution slots.";
+  }
+
+  /**
+   * Set the number of trees built, or evaluated on a batch, at the same time.
+   *
+   * @param numSlots the number of execution slots
+   */
+  public void setNumExecutionSlots(int numSlots) {
+    m_numExecutionSlots = numSlots;
+  }
+
+  /**
+   * Gets the number of trees built, or evaluated on a batch, at the same time.
+   *
+   * @return the number of execution slots
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String earlyTerminationTipText() {
+    return "Whether the trees vote for an instance one by one, stopping as soon as the remaining "
+           + "trees can not change its non-dominated set. The predictions do not change.";
+  }
+
+  /**
+   * Set whether the vote for an instance stops as soon as the remaining trees can not change its result.
+   *
+   * @param earlyTermination true to stop the vote early
+   */
+  public void setEarlyTermination(boolean earlyTermination) {
+    m_earlyTermination = earlyTermination;
+  }
+
+  /**
+   * Gets whether the vote for an instance stops as soon as the remaining trees can not change its result.
+   *
+   * @return true if the vote stops early
+   */
+  public boolean getEarlyTermination() {
+    return m_earlyTermination;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String calcOutOfBagTipText() {
+    return "Whether the out-of-bag measures are computed while the trees are built. Each training "
+           + "instance is classified by the trees whose bootstrap sample does not contain it.";
+  }
+
+  /**
+   * Set whether the out-of-bag measures are computed.
+   *
+   * @param calcOutOfBag true to compute them
+   */
+  public void setCalcOutOfBag(boolean calcOutOfBag) {
+    m_calcOutOfBag = calcOutOfBag;
+  }
+
+  /**
+   * Gets whether the out-of-bag measures are computed.
+   *
+   * @return true if they are computed
+   */
+  public boolean getCalcOutOfBag() {
+    return m_calcOutOfBag;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String growStepTipText() {
+    return "If positive, the ensemble starts with this number of trees and keeps adding as many "
+           + "until its out-of-bag non-dominated sets are stable, or it has numTrees trees.";
+  }
+
+  /**
+   * Set the number of trees added at each step of the growth.
+   *
+   * @param growStep the number of trees, 0 to build all the trees at once
+   */
+  public void setGrowStep(int growStep) {
+    m_growStep = growStep;
+  }
+
+  /**
+   * Gets the number of trees added at each step of the growth.
+   *
+   * @return the number of trees, 0 if all the trees are built at once
+   */
+  public int getGrowStep() {
+    return m_growStep;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String growToleranceTipText() {
+    return "The maximum proportion of training instances whose out-of-bag non-dominated set "
+           + "changes in a step of the growth for the ensemble to be stable.";
+  }
+
+  /**
+   * Set the tolerance of the growth.
+   *
+   * @param growTolerance the maximum proportion of changed sets
+   */
+  public void setGrowTolerance(double growTolerance) {
+    m_growTolerance = growTolerance;
+  }
+
+  /**
+   * Gets the tolerance of the growth.
+   *
+   * @return the maximum proportion of changed sets
+   */
+  public double getGrowTolerance() {
+    return m_growTolerance;
+  }
   
   /**
    * Returns an enumeration describing the available options.
@@ -162,6 +324,33 @@ public class CredalBagging extends CredalClassifier implements OptionHandler, Ad
 	+ "\t(default 1)",
 	"s", 1, "-s"));
 
+    newVector.addElement(new Option(
+	"\tNumber of trees built at the same time.\n"
+	+ "\t(default 1)",
+	"num-slots", 1, "-num-slots <num>"));
+
+    newVector.addElement(new Option(
+	"\tCompute the out-of-bag measures while the trees are built.",
+	"oob", 0, "-oob"));
+
+    newVector.addElement(new Option(
+	"\tNumber of trees added at each step of the growth. The ensemble\n"
+	+ "\tgrows until its out-of-bag sets are stable, up to the number\n"
+	+ "\tof trees. 0 builds all the trees at once.\n"
+	+ "\t(default 0)",
+	"grow-step", 1, "-grow-step <num>"));
+
+    newVector.addElement(new Option(
+	"\tMaximum proportion of out-of-bag sets changed by a step\n"
+	+ "\tof the growth of a stable ensemble.\n"
+	+ "\t(default 0.01)",
+	"grow-tolerance", 1, "-grow-tolerance <num>"));
+
+    newVector.addElement(new Option(
+	"\tStop the vote for an instance as soon as the remaining\n"
+	+ "\ttrees can not change its non-dominated set.",
+	"E", 0, "-E"));
+
     Enumeration enu = super.listOptions();
     
     while (enu.hasMoreElements()) {
@@ -189,6 +378,21 @@ public class CredalBagging extends CredalClassifier implements OptionHandler, Ad
     result.add("-s");
     result.add("" + getSeed());
     
+    result.add("-num-slots");
+    result.add("" + getNumExecutionSlots());
+    
+    if (getCalcOutOfBag())
+      result.add("-oob");
+    
+    result.add("-grow-step");
+    result.add("" + getGrowStep());
+    
+    result.add("-grow-tolerance");
+    result.add("" + getGrowTolerance());
+    
+    if (getEarlyTermination())
+      result.add("-E");
+    
     options = super.getOptions();
     for (i = 0; i < options.length; i++)
       result.add(options[i]);
@@ -209,6 +413,28 @@ public class CredalBagging extends CredalClassifier implements OptionHandler, Ad
    *  Seed for random number generator.
    *  (default 1)</pre>
    * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of trees built at the same time.
+   *  (default 1)</pre>
+   * 
+   * <pre> -oob
+   *  Compute the out-of-bag measures while the trees are built.</pre>
+   * 
+   * <pre> -grow-step &lt;num&gt;
+   *  Number of trees added at each step of the growth. The ensemble
+   *  grows until its out-of-bag sets are stable, up to the number
+   *  of trees. 0 builds all the trees at once.
+   *  (default 0)</pre>
+   * 
+   * <pre> -grow-tolerance &lt;num&gt;
+   *  Maximum proportion of out-of-bag sets changed by a step
+   *  of the growth of a stable ensemble.
+   *  (default 0.01)</pre>
+   * 
+   * <pre> -E
+   *  Stop the vote for an instance as soon as the remaining
+   *  trees can not change its non-dominated set.</pre>
+   * 
    * <pre> -depth &lt;num&gt;
    *  The maximum depth of the trees, 0 for unlimited.
    *  (default 0)</pre>
@@ -239,6 +465,31 @@ public class CredalBagging extends CredalClassifier implements OptionHandler, Ad
       setSeed(1);
     }
     
+    tmpStr = Utils.getOption("num-slots", options);
+    if (tmpStr.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(tmpStr));
+    } else {
+      setNumExecutionSlots(1);
+    }
+    
+    setCalcOutOfBag(Utils.getFlag("oob", options));
+    
+    tmpStr = Utils.getOption("grow-step", options);
+    if (tmpStr.length() != 0) {
+      setGrowStep(Integer.parseInt(tmpStr));
+    } else {
+      setGrowStep(0);
+    }
+    
+    tmpStr = Utils.getOption("grow-tolerance", options);
+    if (tmpStr.length() != 0) {
+      setGrowTolerance(Double.parseDouble(tmpStr));
+    } else {
+      setGrowTolerance(0.01);
+    }
+    
+    setEarlyTermination(Utils.getFlag('E', options));
+    
     super.setOptions(options);
     
     Utils.checkForRemainingOptions(options);
@@ -262,7 +513,7 @@ public class CredalBagging extends CredalClassifier implements OptionHandler, Ad
         data = new Instances(data);
         data.deleteWithMissingClass();
     
-        m_bagger = new Bagging();
+        m_bagger = new CredalBagger();
         CredalDecisionTree2 rTree = new CredalDecisionTree2();
 
    // rTree.setKValue(m_KValue);
@@ -270,9 +521,121 @@ public class CredalBagging extends CredalClassifier implements OptionHandler, Ad
     // set up the bagger and build the forest
         m_bagger.setClassifier(rTree);
         m_bagger.setSeed(m_randomSeed);
-        m_bagger.setNumIterations(m_numTrees);
-        m_bagger.setCalcOutOfBag(false);
+        m_bagger.setNumIterations(m_growStep > 0 ? Math.min(m_growStep, m_numTrees) : m_numTrees);
+        m_bagger.setNumExecutionSlots(m_numExecutionSlots);
+        m_bagger.setCalcOutOfBag(m_calcOutOfBag || m_growStep > 0);
         m_bagger.buildClassifier(data);
+        
+        if (m_growStep > 0) {
+            m_bagger.growUntilStable(data, this, m_growStep, m_numTrees, m_growTolerance);
+        }
+        
+        if (m_calcOutOfBag) {
+            m_bagger.computeOutOfBagStatistics(data, this);
+        }
+        
+        // the out-of-bag predictions are not counted in the trees evaluated
+        m_numInstancesVoted.set(0);
+        m_numTreesEvaluated.set(0);
+  }
+
+  /**
+   * Adds trees to the ensemble already built. The ensemble then has the trees that a
+   * build from scratch with that many more trees would have, and numTrees is increased
+   * accordingly.
+   *
+   * @param data the training data the ensemble was built with
+   * @param numTrees the number of trees to add
+   * @throws Exception if the ensemble has not been built or some tree can't be built
+   */
+  public void addTrees(Instances data, int numTrees) throws Exception {
+    if (m_bagger == null)
+      throw new Exception("The ensemble has not been built!");
+
+    // the trees were built without the instances with missing class
+    data = new Instances(data);
+    data.deleteWithMissingClass();
+
+    m_bagger.addMembers(data, numTrees);
+    m_numTrees = m_bagger.getNumIterations();
+    
+    if (m_calcOutOfBag) {
+      m_bagger.computeOutOfBagStatistics(data, this);
+    }
+    
+    // the out-of-bag predictions are not counted in the trees evaluated
+    m_numInstancesVoted.set(0);
+    m_numTreesEvaluated.set(0);
+  }
+
+  /**
+   * Returns the number of trees built, which is lower than numTrees if the
+   * growth of the ensemble stopped early.
+   * @return the number of trees
+   */
+  public double measureNumTreesBuilt() {
+    return m_bagger == null ? 0 : m_bagger.getNumIterations();
+  }
+
+    
+  /**
+   * Initializes the statistics, and the count of the trees evaluated.
+   */
+  public void initStats() {
+    super.initStats();
+    
+    m_numInstancesVoted.set(0);
+    m_numTreesEvaluated.set(0);
+  }
+  
+  /**
+   * Returns the average number of trees evaluated per instance since the statistics
+   * were initialized. It is lower than the number of trees when the vote stops early.
+   * @return the average number of trees evaluated
+   */
+  public double measureAverageTreesEvaluated() {
+    long num_instances = m_numInstancesVoted.get();
+    
+    if (num_instances == 0)
+      return 0;
+    
+    return (double) m_numTreesEvaluated.get() / num_instances;
+  }
+  
+  /**
+   * Returns an enumeration of the additional measure names
+   * @return an enumeration of the measure names
+   */
+  public Enumeration enumerateMeasures() {
+    Vector newVector = new Vector();
+    newVector.addElement("measureAverageTreesEvaluated");
+    newVector.addElement("measureNumTreesBuilt");
+
+    Enumeration enume = super.enumerateMeasures();
+    while(enume.hasMoreElements())
+        newVector.add(enume.nextElement());
+    
+    newVector.addAll(CredalBagger.outOfBagMeasureNames(super.enumerateMeasures()));
+
+    return newVector.elements();
+  }
+  
+  /**
+   * Returns the value of the named measure
+   * @param additionalMeasureName the name of the measure to query for its value
+   * @return the value of the named measure
+   * @throws IllegalArgumentException if the named measure is not supported
+   */
+  public double getMeasure(String additionalMeasureName) {
+    if (additionalMeasureName.compareToIgnoreCase("measureAverageTreesEvaluated") == 0) {
+      return measureAverageTreesEvaluated();
+    } else if (additionalMeasureName.compareToIgnoreCase("measureNumTreesBuilt") == 0) {
+      return measureNumTreesBuilt();
+    } else if (CredalBagger.isOutOfBagMeasure(additionalMeasureName)) {
+      return m_bagger == null ? Double.NaN : m_bagger.getOutOfBagMeasure(additionalMeasureName);
+    }
+
+    return super.getMeasure(additionalMeasureName);
   }
     
      /**
@@ -300,27 +663,35 @@ public class CredalBagging extends CredalClassifier implements OptionHandler, Ad
   }
   
   /**
-   * It update the statistics for a given instance. It computes the non-dominated index set for the instance. 
+   * It computes the non-dominated index set for a given instance, without updating the statistics. 
    * It calculates how many times a state has been dominated
-   * The non-dominated states are those for which the number of times that have been dominated is minimum
    * @param instance the instance
+   * @return the indices of the non-dominated class values
    * @throws NoSupportForMissingValuesException 
    */
 
-    protected void updateCredalStatistics(Instance instance) throws NoSupportForMissingValuesException {
+    public int[] nonDominatedIndexSet(Instance instance) throws NoSupportForMissingValuesException {
+        return this.nonDominatedIndexSet(instance, m_bagger.getClassifiers());
+    }
+
+  /**
+   * Computes the indices of the non-dominated class values for an instance, combining only
+   * the predictions of some trees, without updating the credal classification statistics.
+   * @param instance the instance
+   * @param members the trees whose predictions are combined
+   * @return the indices of the non-dominated class values
+   * @throws NoSupportForMissingValuesException 
+   */
+    public int[] nonDominatedIndexSet(Instance instance, Classifier[] members) throws NoSupportForMissingValuesException {
         CredalDecisionTree2 tree;
         int num_classes = instance.numClasses();
-        boolean[] non_dominated_states = new boolean[num_classes];
         boolean[] partial_non_dominated_states;
         boolean non_dominated;
-        int[] non_dominated_index_set;
-        int cont;
-        int num_non_dominated_states;
         double[] times_dominated = new double[num_classes];
-        double min_times_dominated, partial_times_dominated;
+        int num_trees_evaluated = members.length;
         
-        for(int i = 0; i < m_numTrees; i++){
-            tree = (CredalDecisionTree2) m_bagger.getClassifier(i);
+        for(int i = 0; i < members.length; i++){
+            tree = (CredalDecisionTree2) members[i];
             partial_non_dominated_states = tree.computeNonDominatedStatesSet(instance);
             
             for(int j = 0; j < num_classes; j++){
@@ -329,8 +700,88 @@ public class CredalBagging extends CredalClassifier implements OptionHandler, Ad
                 if(!non_dominated)
                    times_dominated[j]++;
             }
+            
+            if(m_earlyTermination && this.isVoteDecided(times_dominated, members.length - i - 1)){
+                num_trees_evaluated = i + 1;
+                break;
+            }
         }
+        
+        m_numInstancesVoted.incrementAndGet();
+        m_numTreesEvaluated.addAndGet(num_trees_evaluated);
+
+        return this.nonDominatedIndexSet(times_dominated);
+    }
+
+  /**
+   * Returns the non-dominated class values of every instance of a batch, without
+   * updating the statistics. Each tree classifies the whole batch before the next
+   * one, and with several execution slots the trees are evaluated in parallel chunks.
+   * The sets are the same as the ones of nonDominatedIndexSet.
+   * @param batch the instances
+   * @return for each instance, the indices of its non-dominated class values
+   * @throws Exception if some set can't be computed
+   */
+    public int[][] nonDominatedSets(Instances batch) throws Exception {
+        if(m_earlyTermination)
+            return super.nonDominatedSets(batch);
+        
+        Classifier[] members = m_bagger.getClassifiers();
+        int[][] sets = CredalVoting.nonDominatedSets(members, batch, m_numExecutionSlots, new CredalVoting.SetRule(){
+            public int[] nonDominatedIndexSet(double[] times_dominated){
+                return CredalBagging.this.nonDominatedIndexSet(times_dominated);
+            }
+        });
+        
+        m_numInstancesVoted.addAndGet(sets.length);
+        m_numTreesEvaluated.addAndGet((long) sets.length * members.length);
+        
+        return sets;
+    }
 
+  /**
+   * It checks whether the remaining trees can change the non-dominated index set.
+   * They can not when a single state has the minimum number of times dominated, and it would
+   * still have it if all the remaining trees dominated that state.
+   * @param times_dominated the number of trees, among those evaluated, for which each state is dominated
+   * @param remaining_trees the number of trees not evaluated yet
+   * @return true if the non-dominated index set is already decided
+   */
+    protected boolean isVoteDecided(double[] times_dominated, int remaining_trees) {
+        double min_times_dominated = Double.POSITIVE_INFINITY;
+        double second_min_times_dominated = Double.POSITIVE_INFINITY;
+        double partial_times_dominated;
+        
+        for(int j = 0; j < times_dominated.length; j++){
+            partial_times_dominated = times_dominated[j];
+            
+            if(partial_times_dominated < min_times_dominated){
+                second_min_times_dominated = min_times_dominated;
+                min_times_dominated = partial_times_dominated;
+            }
+            else if(partial_times_dominated < second_min_times_dominated)
+                second_min_times_dominated = partial_times_dominated;
+        }
+        
+        return min_times_dominated + remaining_trees < second_min_times_dominated;
+    }
+
+  /**
+   * It computes the non-dominated index set from the number of trees for which each state is dominated.
+   * The non-dominated states are those for which the number of times that have been dominated is minimum
+   * @param times_dominated the number of trees for which each state is dominated
+   * @return the indices of the non-dominated class values
+   */
+
+    protected int[] nonDominatedIndexSet(double[] times_dominated) {
+        int num_classes = times_dominated.length;
+        boolean[] non_dominated_states = new boolean[num_classes];
+        boolean non_dominated;
+        int[] non_dominated_index_set;
+        int cont;
+        int num_non_dominated_states;
+        double min_times_dominated, partial_times_dominated;
+        
         min_times_dominated = times_dominated[0];
         
         for(int j = 1; j < num_classes; j++){
@@ -366,9 +817,18 @@ public class CredalBagging extends CredalClassifier implements OptionHandler, Ad
             }
         }
         
-        this.updateStatistics(non_dominated_index_set, instance);
+        return non_dominated_index_set;
         
     }
+
+  /**
+   * It updates the statistics for a given instance with its non-dominated index set.
+   * @param instance the instance
+   * @throws NoSupportForMissingValuesException 
+   */
+    protected void updateCredalStatistics(Instance instance) throws NoSupportForMissingValuesException {
+        this.updateStatistics(this.nonDominatedIndexSet(instance), instance);
+    }
     
   @Override
     public double classifyInstance(Instance instance) 
@@ -6,8 +6,9 @@
 package weka.classifiers.credalClassifiers;
 
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Vector;
-import weka.classifiers.meta.Bagging;
+import weka.classifiers.Classifier;
 import weka.core.AdditionalMeasureProducer;
 import weka.core.Capabilities;
 import weka.core.Instance;
@@ -23,24 +24,21 @@ import weka.core.Utils;
  *
  * @author Serafin
  */
-public class CredalBaggingAggregate extends CredalClassifier implements OptionHandler, AdditionalMeasureProducer, Randomizable{
+public class CredalBaggingAggregate extends CredalClassifier implements OptionHandler, AdditionalMeasureProducer, Randomizable, CredalEnsemble{
 /** Number of trees in forest. */
   protected int m_numTrees = 100;
     
   /** The random seed. */
   protected int m_randomSeed = 1;  
 
+  /** Number of trees built at the same time. */
+  protected int m_numExecutionSlots = 1;
+
+  /** Whether the out-of-bag measures are computed while the trees are built. */
+  protected boolean m_calcOutOfBag = false;
+
   /** The bagger. */
-  protected Bagging m_bagger = null;
-  
-  /** The matrix of possibilities degrees */
-  protected double[][] matrix_degrees;
-  
-  /** Preference scores */
-  protected double[] preference_scores;
-  
-  /** No preference scores */
-  protected double[] non_preference_scores;
+  protected CredalBagger m_bagger = null;
   
   
     /**
@@ -153,6 +151,62 @@ public class CredalBaggingAggregate extends CredalClassifier implements OptionHa
   public int getSeed() {
     return m_randomSeed;
   }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of trees built, or of threads that evaluate a batch of instances, at the same "
+           + "time (1 to do it sequentially). The results are the same for any number of execution slots.";
+  }
+
+  /**
+   * Set the number of trees built at the same time.
+   *
+   * @param numSlots the number of execution slots
+   */
+  public void setNumExecutionSlots(int numSlots) {
+    m_numExecutionSlots = numSlots;
+  }
+
+  /**
+   * Gets the number of trees built at the same time.
+   *
+   * @return the number of execution slots
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String calcOutOfBagTipText() {
+    return "Whether the out-of-bag measures are computed while the trees are built. Each training "
+           + "instance is classified by the trees whose bootstrap sample does not contain it.";
+  }
+
+  /**
+   * Set whether the out-of-bag measures are computed.
+   *
+   * @param calcOutOfBag true to compute them
+   */
+  public void setCalcOutOfBag(boolean calcOutOfBag) {
+    m_calcOutOfBag = calcOutOfBag;
+  }
+
+  /**
+   * Gets whether the out-of-bag measures are computed.
+   *
+   * @return true if they are computed
+   */
+  public boolean getCalcOutOfBag() {
+    return m_calcOutOfBag;
+  }
   
   /**
    * Returns an enumeration describing the available options.
@@ -172,6 +226,15 @@ public class CredalBaggingAggregate extends CredalClassifier implements OptionHa
 	+ "\t(default 1)",
 	"s", 1, "-s"));
 
+    newVector.addElement(new Option(
+	"\tNumber of trees built at the same time.\n"
+	+ "\t(default 1)",
+	"num-slots", 1, "-num-slots <num>"));
+
+    newVector.addElement(new Option(
+	"\tCompute the out-of-bag measures while the trees are built.",
+	"oob", 0, "-oob"));
+
     Enumeration enu = super.listOptions();
     
     while (enu.hasMoreElements()) {
@@ -199,6 +262,12 @@ public class CredalBaggingAggregate extends CredalClassifier implements OptionHa
     result.add("-s");
     result.add("" + getSeed());
     
+    result.add("-num-slots");
+    result.add("" + getNumExecutionSlots());
+    
+    if (getCalcOutOfBag())
+      result.add("-oob");
+    
     options = super.getOptions();
     for (i = 0; i < options.length; i++)
       result.add(options[i]);
@@ -219,6 +288,13 @@ public class CredalBaggingAggregate extends CredalClassifier implements OptionHa
    *  Seed for random number generator.
    *  (default 1)</pre>
    * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of trees built at the same time.
+   *  (default 1)</pre>
+   * 
+   * <pre> -oob
+   *  Compute the out-of-bag measures while the trees are built.</pre>
+   * 
    * <pre> -depth &lt;num&gt;
    *  The maximum depth of the trees, 0 for unlimited.
    *  (default 0)</pre>
@@ -249,6 +325,15 @@ public class CredalBaggingAggregate extends CredalClassifier implements OptionHa
       setSeed(1);
     }
     
+    tmpStr = Utils.getOption("num-slots", options);
+    if (tmpStr.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(tmpStr));
+    } else {
+      setNumExecutionSlots(1);
+    }
+    
+    setCalcOutOfBag(Utils.getFlag("oob", options));
+    
     super.setOptions(options);
     
     Utils.checkForRemainingOptions(options);
@@ -266,7 +351,7 @@ public class CredalBaggingAggregate extends CredalClassifier implements OptionHa
         data = new Instances(data);
         data.deleteWithMissingClass();
     
-        m_bagger = new Bagging();
+        m_bagger = new CredalBagger();
         CredalDecisionTree2 rTree = new CredalDecisionTree2();
 
    // rTree.setKValue(m_KValue);
@@ -275,10 +360,46 @@ public class CredalBaggingAggregate extends CredalClassifier implements OptionHa
         m_bagger.setClassifier(rTree);
         m_bagger.setSeed(m_randomSeed);
         m_bagger.setNumIterations(m_numTrees);
-        m_bagger.setCalcOutOfBag(false);
+        m_bagger.setNumExecutionSlots(m_numExecutionSlots);
+        m_bagger.setCalcOutOfBag(m_calcOutOfBag);
         m_bagger.buildClassifier(data);
+        
+        if (m_calcOutOfBag) {
+            m_bagger.computeOutOfBagStatistics(data, this);
+        }
   }
     
+  /**
+   * Returns an enumeration of the additional measure names, including the
+   * out-of-bag measures
+   * @return an enumeration of the measure names
+   */
+  public Enumeration enumerateMeasures() {
+    Vector newVector = new Vector();
+
+    Enumeration enume = super.enumerateMeasures();
+    while(enume.hasMoreElements())
+        newVector.add(enume.nextElement());
+    
+    newVector.addAll(CredalBagger.outOfBagMeasureNames(newVector.elements()));
+
+    return newVector.elements();
+  }
+  
+  /**
+   * Returns the value of the named measure
+   * @param additionalMeasureName the name of the measure to query for its value
+   * @return the value of the named measure
+   * @throws IllegalArgumentException if the named measure is not supported
+   */
+  public double getMeasure(String additionalMeasureName) {
+    if (CredalBagger.isOutOfBagMeasure(additionalMeasureName)) {
+      return m_bagger == null ? Double.NaN : m_bagger.getOutOfBagMeasure(additionalMeasureName);
+    }
+
+    return super.getMeasure(additionalMeasureName);
+  }
+  
      /**
    * Computes class distribution for instance using decision tree.
    *
@@ -362,7 +483,7 @@ public class CredalBaggingAggregate extends CredalClassifier implements OptionHa
      * @return P(BIi >= BIj)
      */
     
-    private double computePossibilityDegree(double bel_i, double pl_i, double bel_j, double pl_j){
+    private static double computePossibilityDegree(double bel_i, double pl_i, double bel_j, double pl_j){
         double numerator = pl_j - bel_i;
         double denominator = pl_j - bel_j + pl_i - bel_i;
         double possibility_degree;
@@ -387,187 +508,242 @@ public class CredalBaggingAggregate extends CredalClassifier implements OptionHa
     }
     
     /**
-     * Computes the matrix of possibility degrees after the combination. pij = P(BI_i >= BI_j)
-     * @param combined_inferior_probabilities the inferior probabilities resulting from the combination
-     * @param combined_superior_probabilities the superior probabilities resulting from the combination
+     * Computes the non-dominated states set from the combined belief intervals. The matrix of
+     * possibility degrees pij = P(BI_i >= BI_j) is filled first, and then a single sweep over it
+     * computes the preference scores sum_{j}P(BI_i >= BI_j), the non-preference scores
+     * sum_{j}P(BI_j >= BI_i), and whether some class value i has P(BI_j >= BI_i) <= 0.5 forall j,
+     * in which case the states with the maximum preference score are non-dominated. Otherwise,
+     * a state is non-dominated if its preference score is greater than its non-preference score.
+     * @param inferior the inferior probabilities resulting from the combination
+     * @param superior the superior probabilities resulting from the combination
+     * @return the indices of the non-dominated class values
      */
-    
-    private void computeMatrixDegrees(double[] combined_inferior_probabilities, double[] combined_superior_probabilities){
-        int num_states = combined_inferior_probabilities.length;
-        double bel_i, bel_j, pl_i, pl_j;
-        double possibility_degree;
-        
-        matrix_degrees = new double[num_states][num_states];
+    private static int[] nonDominatedIndexSet(double[] inferior, double[] superior){
+        int num_classes = inferior.length;
+        double[][] matrix_degrees = new double[num_classes][num_classes];
+        double[] preference_scores = new double[num_classes];
+        double[] non_preference_scores = new double[num_classes];
+        boolean[] non_dominated_states = new boolean[num_classes];
+        int[] non_dominated_index_set;
+        double possibility_degree, max_score;
+        boolean dominated, determinely;
+        int num_non_dominated_states, cont;
         
-        for(int i = 0; i < num_states; i++){
+        for(int i = 0; i < num_classes; i++){
             matrix_degrees[i][i] = 0.5;
-            bel_i = combined_inferior_probabilities[i];
-            pl_i = combined_superior_probabilities[i];
                 
             for(int j = 0; j < i; j++){
-                bel_j = combined_inferior_probabilities[j];
-                pl_j = combined_superior_probabilities[j];
-                possibility_degree = computePossibilityDegree(bel_i, pl_i, bel_j, pl_j);
+                possibility_degree = computePossibilityDegree(inferior[i], superior[i], inferior[j], superior[j]);
                 matrix_degrees[i][j] = possibility_degree;
                 matrix_degrees[j][i] = 1 - possibility_degree;
             }
         }
-    }
-    
-    /**
-     * Computes the preference and non-preference scores from the Matrix of degrees. 
-     * Preference score for i = sum_{j}P(BI_i >= BI_j) 
-     * Non Preference score for i = sum_{i}P(BI_j >= BI_i)
-     */
-    
-    private void computePreferenceScores(){
-        int num_classes = matrix_degrees.length;
-        preference_scores = new double[num_classes];
-        non_preference_scores = new double[num_classes];
-
+        
+        determinely = false;
+        max_score = 0;
+        
         for(int i = 0; i < num_classes; i++){
+            dominated = false;
+            
             for(int j = 0; j < num_classes; j++){
                 preference_scores[i]+=matrix_degrees[i][j];
                 non_preference_scores[i]+=matrix_degrees[j][i];
+                
+                if(j != i && matrix_degrees[j][i] > 0.5)
+                    dominated = true;
             }
+            
+            if(!dominated)
+                determinely = true;
+            
+            if(preference_scores[i] > max_score)
+                max_score = preference_scores[i];
         }
         
-    }
-    /**
-     * estimates if there are a class value i for which P(BI_i >=PI_j) >= 0.5 forall j \neq i
-     * @return true if there exists such class value, false else 
-     */
-    
-    private boolean clearDomining(){
-        int num_classes = matrix_degrees.length;
-        boolean clear_domining = false;
-        boolean dominated;
-                
-        for(int i = 0; i < num_classes && !clear_domining; i++){
-            dominated = false;
+        num_non_dominated_states = 0;
+        
+        for(int j = 0; j < num_classes; j++){
+            if(determinely)
+                non_dominated_states[j] = preference_scores[j] == max_score;
+            else
+                non_dominated_states[j] = preference_scores[j] > non_preference_scores[j];
             
-            for(int j = 0; j < num_classes && !dominated; j++){
-                if(j!=i)
-                    dominated = matrix_degrees[j][i] > 0.5; 
+            if(non_dominated_states[j])
+                num_non_dominated_states++;
+        }
+        
+        non_dominated_index_set = new int[num_non_dominated_states];
+        cont = 0;
+        
+        for(int j = 0; j < num_classes; j++){
+            if(non_dominated_states[j]){
+                non_dominated_index_set[cont] = j;
+                cont++;
             }
-            
-            if(!dominated)
-                clear_domining = true;
         }
         
-        return clear_domining;
+        return non_dominated_index_set;
     }
     
     /**
-     * Checks if the state c_j is non-dominated. It is non-dominated if, and only if, sum_{i \neq j}P(BI_i >= BI_j) >=  sum_{i \neq j}P(BI_j >= BI_i)
-     * @param j the state j
-     * @return true if cj is dominated, false otherwise
+     * Combines the belief interval of a tree for an instance with the intervals combined so far,
+     * as combineTwoBeliefIntervals does, but overwriting the combined intervals instead of
+     * allocating new arrays. The interval of the tree is computed from the frequencies of its leaf.
+     * @param tree the tree
+     * @param instance the instance
+     * @param first whether the tree is the first one, whose interval is just copied
+     * @param inferior the inferior probabilities combined so far, which are updated
+     * @param superior the superior probabilities combined so far, which are updated
+     * @param buffer an array with a position per class value, used for intermediate results
+     * @throws NoSupportForMissingValuesException 
      */
-    
-    private boolean nonDominated(int j, boolean determinely){
-        int num_classes = matrix_degrees.length;
-        boolean non_dominated;
-        double max_score = 0;
-        
-        if(determinely){
-            for(int i = 0; i < num_classes; i++){
-                if(preference_scores[i] > max_score)
-                    max_score=preference_scores[i];
+    private static void combineBeliefInterval(CredalDecisionTree2 tree, Instance instance, boolean first,
+            double[] inferior, double[] superior, double[] buffer) throws NoSupportForMissingValuesException{
+        double[] frequencies = tree.frequencyForInstance(instance);
+        int num_states = inferior.length;
+        double s_value = tree.getSValue();
+        double denominator = Utils.sum(frequencies) + s_value;
+        double tree_inferior, tree_superior;
+        
+        if(first){
+            for(int j = 0; j < num_states; j++){
+                inferior[j] = frequencies[j]/denominator;
+                superior[j] = (frequencies[j] + s_value)/denominator;
             }
+            return;
+        }
+        
+        for(int j = 0; j < num_states; j++){
+            tree_inferior = frequencies[j]/denominator;
+            tree_superior = (frequencies[j] + s_value)/denominator;
             
-            non_dominated = preference_scores[j] == max_score;
+            inferior[j] = 1 -(1 - tree_inferior)*(1 - inferior[j]);
+            buffer[j] = (1 - tree_superior)*(1 - superior[j]);
         }
-   
-        else
-            non_dominated = preference_scores[j] > non_preference_scores[j];
-       
-       return non_dominated;
-    }
-    
-    /**
-     * Computes the non-dominated states set checking if each class value is non-dominated.
-     * @return 
-     */
-    
-    private boolean[] computeNonDominatedStatesSet(boolean determinely){
-        int num_classes = matrix_degrees.length;
-        boolean[] non_dominated_states = new boolean[num_classes];
         
-        boolean non_dominated;
+        if(Utils.sum(inferior) > 0)
+            Utils.normalize(inferior);
         
-        for(int i = 0; i < num_classes; i++){
-            non_dominated = nonDominated(i, determinely);
-            non_dominated_states[i] = non_dominated;
-        }
+        if(Utils.sum(buffer) > 0)
+            Utils.normalize(buffer);
         
-        return non_dominated_states;
+        for(int j = 0; j < num_states; j++){ 
+            superior[j] = 1 - buffer[j];
+            
+            if(superior[j] < inferior[j])
+               superior[j] = inferior[j];                      
+        }
     }
     
     /**
-     * Update the credal statistics for an instance. Combines the belief intervals. Compute the matrix of degrees and, then,
-     * the non-dominated states set
-     * @param instance The instance
+     * Computes the indices of the non-dominated class values for an instance, without updating the statistics.
+     * Combines the belief intervals. Compute the matrix of degrees and, then, the non-dominated states set.
+     * @param instance the instance
+     * @return the indices of the non-dominated class values
      * @throws NoSupportForMissingValuesException 
      */
-    
-    private void updateCredalStatistics(Instance instance) throws NoSupportForMissingValuesException {
-        CredalDecisionTree2 tree;
-        int num_classes = instance.numClasses();
-        boolean[] non_dominated_states;
-        boolean non_dominated;
-        int[] non_dominated_index_set;
-        int cont;
-        int num_non_dominated_states;
-        double[][] partial_extreme_probabilities, combined_probabilities;
-        double[] partial_inferior_probabilities, partial_superior_probabilities;
-        double[] combined_inferior_probabilities, combined_superior_probabilities;
-        boolean determinely;
-        
-        tree = (CredalDecisionTree2) m_bagger.getClassifier(0);
-        
-        combined_probabilities = tree.getExtremeProbabilities(instance);
-        combined_inferior_probabilities = combined_probabilities[0];
-        combined_superior_probabilities = combined_probabilities[1];
-        
-        for(int i = 1; i < m_numTrees; i++){
-            tree = (CredalDecisionTree2) m_bagger.getClassifier(i);
-            partial_extreme_probabilities = tree.getExtremeProbabilities(instance);
-            partial_inferior_probabilities = partial_extreme_probabilities[0];
-            partial_superior_probabilities = partial_extreme_probabilities[1];
-            combined_probabilities = combineTwoBeliefIntervals(partial_inferior_probabilities, partial_superior_probabilities, combined_inferior_probabilities, combined_superior_probabilities);
-            combined_inferior_probabilities = combined_probabilities[0];
-            combined_superior_probabilities = combined_probabilities[1];  
-        }
+    public int[] nonDominatedIndexSet(Instance instance) throws NoSupportForMissingValuesException {
+        return this.nonDominatedIndexSet(instance, m_bagger.getClassifiers());
+    }
 
-        computeMatrixDegrees(combined_inferior_probabilities, combined_superior_probabilities);
-        computePreferenceScores();
-        determinely = clearDomining();
+  /**
+   * Computes the indices of the non-dominated class values for an instance, combining only
+   * the predictions of some trees, without updating the statistics. The belief intervals
+   * of the trees are combined in their order into a single pair of arrays.
+   * @param instance the instance
+   * @param members the trees whose predictions are combined
+   * @return the indices of the non-dominated class values
+   * @throws NoSupportForMissingValuesException 
+   */
+    public int[] nonDominatedIndexSet(Instance instance, Classifier[] members) throws NoSupportForMissingValuesException {
+        int num_classes = instance.numClasses();
+        double[] inferior = new double[num_classes];
+        double[] superior = new double[num_classes];
+        double[] buffer = new double[num_classes];
         
-        non_dominated_states = computeNonDominatedStatesSet(determinely);
+        for(int i = 0; i < members.length; i++)
+            combineBeliefInterval((CredalDecisionTree2) members[i], instance, i == 0, inferior, superior, buffer);
         
-        num_non_dominated_states = 0;
+        return nonDominatedIndexSet(inferior, superior);
+    }
+
+  /**
+   * Computes the non-dominated sets of a range of instances of a batch. Each tree combines
+   * its interval for all the instances of the range before the next tree does, so the
+   * intervals of every instance are combined in the order of the trees, as for a single
+   * instance.
+   * @param members the trees
+   * @param batch the instances
+   * @param from the first instance of the range
+   * @param to the instance after the last one of the range
+   * @return for each instance of the range, the indices of its non-dominated class values
+   * @throws NoSupportForMissingValuesException 
+   */
+    protected static int[][] nonDominatedSets(Classifier[] members, Instances batch, int from, int to) throws NoSupportForMissingValuesException {
+        int num_classes = batch.numClasses();
+        double[][] inferior = new double[to - from][num_classes];
+        double[][] superior = new double[to - from][num_classes];
+        double[] buffer = new double[num_classes];
+        int[][] sets = new int[to - from][];
+        CredalDecisionTree2 tree;
         
-        for(int j = 0; j < num_classes; j++){
-            non_dominated = non_dominated_states[j];
+        for(int t = 0; t < members.length; t++){
+            tree = (CredalDecisionTree2) members[t];
             
-            if(non_dominated)
-                num_non_dominated_states++;
+            for(int i = from; i < to; i++)
+                combineBeliefInterval(tree, batch.instance(i), t == 0, inferior[i - from], superior[i - from], buffer);
         }
         
-        non_dominated_index_set = new int[num_non_dominated_states];
-        cont = 0;
+        for(int i = 0; i < sets.length; i++)
+            sets[i] = nonDominatedIndexSet(inferior[i], superior[i]);
         
-        for(int j = 0; j < num_classes; j++){
-            non_dominated = non_dominated_states[j];
-            
-            if(non_dominated){
-                non_dominated_index_set[cont] = j;
-                cont++;
+        return sets;
+    }
+
+  /**
+   * Returns the non-dominated class values of every instance of a batch, without
+   * updating the statistics. With several execution slots, the batch is split in
+   * consecutive ranges of instances evaluated in parallel. The sets are the same as
+   * the ones of nonDominatedIndexSet.
+   * @param batch the instances
+   * @return for each instance, the indices of its non-dominated class values
+   * @throws Exception if some set can't be computed
+   */
+    public int[][] nonDominatedSets(final Instances batch) throws Exception {
+        final Classifier[] members = m_bagger.getClassifiers();
+        int num_instances = batch.numInstances();
+        List<int[][]> chunk_sets;
+        int[][] sets;
+        int from;
+        
+        chunk_sets = ParallelChunks.run(num_instances, m_numExecutionSlots, new ParallelChunks.Chunk<int[][]>() {
+            public int[][] run(int chunk_from, int chunk_to) throws Exception {
+                return nonDominatedSets(members, batch, chunk_from, chunk_to);
             }
-        }
+        });
+        
+        if(chunk_sets.size() == 1)
+            return chunk_sets.get(0);
         
-        this.updateStatistics(non_dominated_index_set, instance);
+        sets = new int[num_instances][];
+        from = 0;
         
+        for(int c = 0; c < chunk_sets.size(); c++){
+            System.arraycopy(chunk_sets.get(c), 0, sets, from, chunk_sets.get(c).length);
+            from += chunk_sets.get(c).length;
+        }
+        
+        return sets;
+    }
+
+    /**
+     * Update the credal statistics for an instance with its non-dominated states set
+     * @param instance The instance
+     * @throws NoSupportForMissingValuesException 
+     */
+    
+    private void updateCredalStatistics(Instance instance) throws NoSupportForMissingValuesException {
+        this.updateStatistics(this.nonDominatedIndexSet(instance), instance);
     }
     /** The main method for chekings*/
     
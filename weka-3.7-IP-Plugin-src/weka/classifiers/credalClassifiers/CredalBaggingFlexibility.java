@@ -7,6 +7,7 @@ package weka.classifiers.credalClassifiers;
 
 import java.util.Enumeration;
 import java.util.Vector;
+import weka.classifiers.Classifier;
 import weka.classifiers.Evaluation;
 import weka.classifiers.meta.Bagging;
 import weka.core.AdditionalMeasureProducer;
@@ -25,32 +26,81 @@ import weka.core.Utils;
  * @author Serafin
  */
 public class CredalBaggingFlexibility extends CredalBagging{
-     /**
-   * It update the statistics for a given instance. It computes the non-dominated index set for the instance. 
-   * It calculates how many times a state has been dominated
-   * The non-dominated states are those for which the number of times that have been dominated is minimum
-   * @param instance the instance
-   * @throws NoSupportForMissingValuesException 
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String earlyTerminationTipText() {
+    return "Not supported: the flexible vote always combines all the trees.";
+  }
+
+  /**
+   * Early termination is not supported, since the bound used by CredalBagging
+   * does not decide whether the second minimum is within the 10% of the trees.
+   *
+   * @param earlyTermination must be false
+   * @throws IllegalArgumentException if earlyTermination is true
    */
+  public void setEarlyTermination(boolean earlyTermination) {
+    if (earlyTermination)
+      throw new IllegalArgumentException("Early termination is not supported by the flexible vote!");
+    super.setEarlyTermination(earlyTermination);
+  }
 
+  /**
+   * Returns an enumeration describing the available options, those of
+   * CredalBagging except early termination.
+   *
+   * @return an enumeration of all the available options
+   */
+  public Enumeration listOptions() {
+    Vector newVector = new Vector();
+    Enumeration enu = super.listOptions();
+    Option option;
+    
+    while (enu.hasMoreElements()) {
+      option = (Option) enu.nextElement();
+      
+      if (!option.name().equals("E"))
+        newVector.addElement(option);
+    }
+
+    return newVector.elements();
+  }
+
+  /**
+   * Parses a given list of options, those of CredalBagging except -E.
+   *
+   * @param options the list of options as an array of strings
+   * @throws Exception if an option is not supported
+   */
+  public void setOptions(String[] options) throws Exception{
+    if (Utils.getFlag('E', options))
+      throw new Exception("Early termination is not supported by the flexible vote!");
+    
+    super.setOptions(options);
+  }
+    /**
+     * Computes the indices of the non-dominated class values for an instance, combining
+     * only the predictions of some trees, without updating the statistics.
+     * @param instance the instance
+     * @param members the trees whose predictions are combined
+     * @return the indices of the non-dominated class values
+     * @throws NoSupportForMissingValuesException 
+     */
     @Override
-    protected void updateCredalStatistics(Instance instance) throws NoSupportForMissingValuesException {
+    public int[] nonDominatedIndexSet(Instance instance, Classifier[] members) throws NoSupportForMissingValuesException {
         CredalDecisionTree2 tree;
         int num_classes = instance.numClasses();
-        boolean[] non_dominated_states = new boolean[num_classes];
         boolean[] partial_non_dominated_states;
         boolean non_dominated;
-        int[] non_dominated_index_set;
-        int cont;
-        int num_non_dominated_states;
         double[] times_dominated = new double[num_classes];
-        double min_times_dominated, second_min_times_dominated, partial_times_dominated;
-        double percentaje_difference;
-        double max_percertange_difference = 0.1;
-        boolean second_min_non_dominated;
+        int num_trees;
         
-        for(int i = 0; i < m_numTrees; i++){
-            tree = (CredalDecisionTree2) m_bagger.getClassifier(i);
+        for(int i = 0; i < members.length; i++){
+            tree = (CredalDecisionTree2) members[i];
             partial_non_dominated_states = tree.computeNonDominatedStatesSet(instance);
             
             for(int j = 0; j < num_classes; j++){
@@ -60,6 +110,42 @@ public class CredalBaggingFlexibility extends CredalBagging{
                    times_dominated[j]++;
             }
         }
+        
+        // the difference allowed is the 10% of the trees combined, not of the whole ensemble
+        num_trees = m_bagger.getNumIterations();
+        
+        if(members.length != num_trees){
+            for(int j = 0; j < num_classes; j++)
+                times_dominated[j] *= (double) num_trees / members.length;
+        }
+        
+        m_numInstancesVoted.incrementAndGet();
+        m_numTreesEvaluated.addAndGet(members.length);
+
+        return this.nonDominatedIndexSet(times_dominated);
+    }
+
+    /**
+     * Computes the indices of the non-dominated class values from the number of trees
+     * for which each class value is dominated. Besides the class values dominated the
+     * minimum number of times, those dominated the second minimum number of times are
+     * non-dominated if the difference is at most the 10% of the trees built, which
+     * may be less than numTrees when the growth of the ensemble stops early.
+     * @param times_dominated the number of trees for which each class value is dominated
+     * @return the indices of the non-dominated class values
+     */
+    @Override
+    protected int[] nonDominatedIndexSet(double[] times_dominated) {
+        int num_classes = times_dominated.length;
+        boolean[] non_dominated_states = new boolean[num_classes];
+        boolean non_dominated;
+        int[] non_dominated_index_set;
+        int cont;
+        int num_non_dominated_states;
+        double min_times_dominated, second_min_times_dominated, partial_times_dominated;
+        double percentaje_difference;
+        double max_percertange_difference = 0.1;
+        boolean second_min_non_dominated;
 
         min_times_dominated = times_dominated[0];
         
@@ -81,7 +167,7 @@ public class CredalBaggingFlexibility extends CredalBagging{
             }
         }
         
-        percentaje_difference = (second_min_times_dominated-min_times_dominated)/m_numTrees;
+        percentaje_difference = (second_min_times_dominated-min_times_dominated)/m_bagger.getNumIterations();
         second_min_non_dominated = percentaje_difference <= max_percertange_difference;
         
         for(int j = 0; j < num_classes; j++){
@@ -119,7 +205,7 @@ public class CredalBaggingFlexibility extends CredalBagging{
             }
         }
         
-        this.updateStatistics(non_dominated_index_set, instance);
+        return non_dominated_index_set;
         
     }
 
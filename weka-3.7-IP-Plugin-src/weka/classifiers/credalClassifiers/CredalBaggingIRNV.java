@@ -7,8 +7,8 @@ package weka.classifiers.credalClassifiers;
 
 import java.util.Enumeration;
 import java.util.Vector;
+import weka.classifiers.Classifier;
 import weka.classifiers.Evaluation;
-import weka.classifiers.meta.Bagging;
 import weka.core.AdditionalMeasureProducer;
 import weka.core.Capabilities;
 import weka.core.Instance;
@@ -24,15 +24,21 @@ import weka.core.Utils;
  *
  * @author Serafin
  */
-public class CredalBaggingIRNV extends CredalClassifier implements OptionHandler, AdditionalMeasureProducer, Randomizable{
+public class CredalBaggingIRNV extends CredalClassifier implements OptionHandler, AdditionalMeasureProducer, Randomizable, CredalEnsemble{
     /** Number of trees in forest. */
   protected int m_numTrees = 100;
     
   /** The random seed. */
   protected int m_randomSeed = 1;  
 
+  /** Number of trees built at the same time. */
+  protected int m_numExecutionSlots = 1;
+
+  /** Whether the out-of-bag measures are computed while the trees are built. */
+  protected boolean m_calcOutOfBag = false;
+
   /** The bagger. */
-  protected Bagging m_bagger = null;
+  protected CredalBagger m_bagger = null;
   
   /**
    * Returns a string describing classifier
@@ -142,6 +148,62 @@ public class CredalBaggingIRNV extends CredalClassifier implements OptionHandler
   public int getSeed() {
     return m_randomSeed;
   }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of trees built at the same time (1 to build them sequentially). "
+           + "The ensemble is the same for any number of execution slots.";
+  }
+
+  /**
+   * Set the number of trees built at the same time.
+   *
+   * @param numSlots the number of execution slots
+   */
+  public void setNumExecutionSlots(int numSlots) {
+    m_numExecutionSlots = numSlots;
+  }
+
+  /**
+   * Gets the number of trees built at the same time.
+   *
+   * @return the number of execution slots
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String calcOutOfBagTipText() {
+    return "Whether the out-of-bag measures are computed while the trees are built. Each training "
+           + "instance is classified by the trees whose bootstrap sample does not contain it.";
+  }
+
+  /**
+   * Set whether the out-of-bag measures are computed.
+   *
+   * @param calcOutOfBag true to compute them
+   */
+  public void setCalcOutOfBag(boolean calcOutOfBag) {
+    m_calcOutOfBag = calcOutOfBag;
+  }
+
+  /**
+   * Gets whether the out-of-bag measures are computed.
+   *
+   * @return true if they are computed
+   */
+  public boolean getCalcOutOfBag() {
+    return m_calcOutOfBag;
+  }
   
   /**
    * Returns an enumeration describing the available options.
@@ -161,6 +223,15 @@ public class CredalBaggingIRNV extends CredalClassifier implements OptionHandler
 	+ "\t(default 1)",
 	"s", 1, "-s"));
 
+    newVector.addElement(new Option(
+	"\tNumber of trees built at the same time.\n"
+	+ "\t(default 1)",
+	"num-slots", 1, "-num-slots <num>"));
+
+    newVector.addElement(new Option(
+	"\tCompute the out-of-bag measures while the trees are built.",
+	"oob", 0, "-oob"));
+
     Enumeration enu = super.listOptions();
     
     while (enu.hasMoreElements()) {
@@ -188,6 +259,12 @@ public class CredalBaggingIRNV extends CredalClassifier implements OptionHandler
     result.add("-s");
     result.add("" + getSeed());
     
+    result.add("-num-slots");
+    result.add("" + getNumExecutionSlots());
+    
+    if (getCalcOutOfBag())
+      result.add("-oob");
+    
     options = super.getOptions();
     for (i = 0; i < options.length; i++)
       result.add(options[i]);
@@ -208,6 +285,13 @@ public class CredalBaggingIRNV extends CredalClassifier implements OptionHandler
    *  Seed for random number generator.
    *  (default 1)</pre>
    * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of trees built at the same time.
+   *  (default 1)</pre>
+   * 
+   * <pre> -oob
+   *  Compute the out-of-bag measures while the trees are built.</pre>
+   * 
    * <pre> -depth &lt;num&gt;
    *  The maximum depth of the trees, 0 for unlimited.
    *  (default 0)</pre>
@@ -238,6 +322,15 @@ public class CredalBaggingIRNV extends CredalClassifier implements OptionHandler
       setSeed(1);
     }
     
+    tmpStr = Utils.getOption("num-slots", options);
+    if (tmpStr.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(tmpStr));
+    } else {
+      setNumExecutionSlots(1);
+    }
+    
+    setCalcOutOfBag(Utils.getFlag("oob", options));
+    
     super.setOptions(options);
     
     Utils.checkForRemainingOptions(options);
@@ -261,7 +354,7 @@ public class CredalBaggingIRNV extends CredalClassifier implements OptionHandler
         data = new Instances(data);
         data.deleteWithMissingClass();
     
-        m_bagger = new Bagging();
+        m_bagger = new CredalBagger();
         CredalIRNV rTree = new CredalIRNV();
 
    // rTree.setKValue(m_KValue);
@@ -270,10 +363,46 @@ public class CredalBaggingIRNV extends CredalClassifier implements OptionHandler
         m_bagger.setClassifier(rTree);
         m_bagger.setSeed(m_randomSeed);
         m_bagger.setNumIterations(m_numTrees);
-        m_bagger.setCalcOutOfBag(false);
+        m_bagger.setNumExecutionSlots(m_numExecutionSlots);
+        m_bagger.setCalcOutOfBag(m_calcOutOfBag);
         m_bagger.buildClassifier(data);
+        
+        if (m_calcOutOfBag) {
+            m_bagger.computeOutOfBagStatistics(data, this);
+        }
   }
     
+  /**
+   * Returns an enumeration of the additional measure names, including the
+   * out-of-bag measures
+   * @return an enumeration of the measure names
+   */
+  public Enumeration enumerateMeasures() {
+    Vector newVector = new Vector();
+
+    Enumeration enume = super.enumerateMeasures();
+    while(enume.hasMoreElements())
+        newVector.add(enume.nextElement());
+    
+    newVector.addAll(CredalBagger.outOfBagMeasureNames(newVector.elements()));
+
+    return newVector.elements();
+  }
+  
+  /**
+   * Returns the value of the named measure
+   * @param additionalMeasureName the name of the measure to query for its value
+   * @return the value of the named measure
+   * @throws IllegalArgumentException if the named measure is not supported
+   */
+  public double getMeasure(String additionalMeasureName) {
+    if (CredalBagger.isOutOfBagMeasure(additionalMeasureName)) {
+      return m_bagger == null ? Double.NaN : m_bagger.getOutOfBagMeasure(additionalMeasureName);
+    }
+
+    return super.getMeasure(additionalMeasureName);
+  }
+  
       /**
    * Computes class distribution for instance using decision tree.
    *
@@ -336,14 +465,27 @@ public class CredalBaggingIRNV extends CredalClassifier implements OptionHandler
     
   
   /**
-   * It update the statistics for a given instance. It computes the non-dominated index set for the instance. 
+   * It computes the non-dominated index set for a given instance, without updating the statistics. 
    * It calculates how many times a state has been dominated
    * The non-dominated states are those for which the number of times that have been dominated is minimum
    * @param instance the instance
+   * @return the indices of the non-dominated class values
    * @throws NoSupportForMissingValuesException 
    */
 
-    private void updateCredalStatistics(Instance instance) throws NoSupportForMissingValuesException {
+    public int[] nonDominatedIndexSet(Instance instance) throws NoSupportForMissingValuesException {
+        return this.nonDominatedIndexSet(instance, m_bagger.getClassifiers());
+    }
+
+  /**
+   * Computes the indices of the non-dominated class values for an instance, combining only
+   * the predictions of some trees, without updating the statistics.
+   * @param instance the instance
+   * @param members the trees whose predictions are combined
+   * @return the indices of the non-dominated class values
+   * @throws NoSupportForMissingValuesException 
+   */
+    public int[] nonDominatedIndexSet(Instance instance, Classifier[] members) throws NoSupportForMissingValuesException {
         CredalIRNV tree;
         int num_classes = instance.numClasses();
         boolean[] non_dominated_states = new boolean[num_classes];
@@ -353,8 +495,8 @@ public class CredalBaggingIRNV extends CredalClassifier implements OptionHandler
         double[] times_dominated = new double[num_classes];
         double min_times_dominated, partial_times_dominated;
         
-        for(int i = 0; i < m_numTrees; i++){
-            tree = (CredalIRNV) m_bagger.getClassifier(i);
+        for(int i = 0; i < members.length; i++){
+            tree = (CredalIRNV) members[i];
             partial_non_dominated_states = tree.computeNonDominatedStatesSet(instance);
             
             for(int j = 0; j < num_classes; j++){
@@ -382,9 +524,18 @@ public class CredalBaggingIRNV extends CredalClassifier implements OptionHandler
         non_dominated_index_set = computeNonDominatedIndexSet(non_dominated_states);
         
         
-        this.updateStatistics(non_dominated_index_set, instance);
+        return non_dominated_index_set;
         
     }
+
+  /**
+   * It updates the statistics for a given instance with its non-dominated index set.
+   * @param instance the instance
+   * @throws NoSupportForMissingValuesException 
+   */
+    private void updateCredalStatistics(Instance instance) throws NoSupportForMissingValuesException {
+        this.updateStatistics(this.nonDominatedIndexSet(instance), instance);
+    }
     
   @Override
     public double classifyInstance(Instance instance) throws NoSupportForMissingValuesException {
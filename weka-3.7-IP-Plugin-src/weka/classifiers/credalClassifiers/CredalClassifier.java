@@ -54,6 +54,9 @@ public abstract class CredalClassifier extends Classifier implements AdditionalM
     /** Parameter for the IDM**/
     protected double m_SValue = 1.0;
 
+    /** If set, the attributes of a node are scored in parallel, for the classifiers that build trees**/
+    protected boolean m_ParallelScoring = false;
+
 
     /**
      * Set the path of the folder where the predictiosn are stored
@@ -116,6 +119,72 @@ public abstract class CredalClassifier extends Classifier implements AdditionalM
         this.stats.updateStatistics(nonDominatedClasses, instance);
     }
 
+    /**
+     * Updates the statistics with the non-dominated sets of a batch of instances,
+     * as returned by nonDominatedSets.
+     * @param nonDominatedSets, the non-dominated class values of each instance
+     * @param batch, the instances of the batch.
+     */
+    public void updateStatistics(int[][] nonDominatedSets, Instances batch) {
+        for (int i = 0; i < nonDominatedSets.length; i++)
+            this.stats.updateStatistics(nonDominatedSets[i], batch.instance(i));
+    }
+
+    /**
+     * Returns the indices of the non-dominated class values for an instance.
+     * Unlike classifyInstance and distributionForInstance, it does not update
+     * the statistics of the classifier, and it can be called by several threads
+     * once the classifier is built. The returned array may be shared by several
+     * instances, so it must not be modified.
+     * @param instance, the instance to be classified.
+     * @return the indices of the non-dominated class values, in increasing order
+     * @throws Exception if the set can't be computed
+     */
+    public abstract int[] nonDominatedIndexSet(Instance instance) throws Exception;
+
+    /**
+     * Returns the indices of the non-dominated class values for every instance
+     * of a batch, without updating the statistics. The statistics can be updated
+     * afterwards by passing the result to updateStatistics.
+     * @param batch, the instances to be classified.
+     * @return for each instance, the indices of its non-dominated class values
+     * @throws Exception if some set can't be computed
+     */
+    public int[][] nonDominatedSets(Instances batch) throws Exception {
+        int[][] sets = new int[batch.numInstances()][];
+
+        for (int i = 0; i < sets.length; i++)
+            sets[i] = this.nonDominatedIndexSet(batch.instance(i));
+
+        return sets;
+    }
+
+    /**
+     * Copies the values of every instance of a batch into a single array, one
+     * instance after another, as expected by the batch methods of the naive
+     * credal classifiers: nominal values are stored as their indices and
+     * missing values as -9999.
+     * @param batch, the instances.
+     * @return the values, batch.numAttributes() for each instance
+     */
+    protected static int[] packInstances(Instances batch) {
+        int num_attributes = batch.numAttributes();
+        int[] values = new int[batch.numInstances() * num_attributes];
+        Instance instance;
+        double value;
+        int offset = 0;
+
+        for (int i = 0; i < batch.numInstances(); i++) {
+            instance = batch.instance(i);
+            for (int j = 0; j < num_attributes; j++) {
+                value = instance.value(j);
+                values[offset++] = Instance.isMissingValue(value) ? -9999 : (int) value;
+            }
+        }
+
+        return values;
+    }
+
     /**
      * Return the value of the parameter 's' of the IDM model.
      * @return
@@ -132,13 +201,48 @@ public abstract class CredalClassifier extends Classifier implements AdditionalM
         this.m_SValue = value;
     }
 
+    /**
+     * Whether the classifier builds trees whose nodes can score their attributes in
+     * parallel. Only those classifiers have the -parallelScoring option.
+     * @return false, the tree classifiers return true
+     */
+    protected boolean supportsParallelScoring() {
+        return false;
+    }
+
+    /**
+     * Returns the tip text for this property
+     * @return tip text for this property suitable for
+     * displaying in the explorer/experimenter gui
+     */
+    public String parallelScoringTipText() {
+        return "Whether the attributes of a node are scored in parallel. The tree is the same in both cases. "
+               + "Only used by the credal trees.";
+    }
+
+    /**
+     * Get whether the attributes of a node are scored in parallel.
+     * @return true if the attributes are scored in parallel
+     */
+    public boolean getParallelScoring() {
+        return this.m_ParallelScoring;
+    }
+
+    /**
+     * Set whether the attributes of a node are scored in parallel.
+     * @param value true to score the attributes in parallel
+     */
+    public void setParallelScoring(boolean value) {
+        this.m_ParallelScoring = value;
+    }
+
     /**
      * Gets the current settings of the classifier.
      *
      * @return an array of strings suitable for passing to setOptions
      */
     public String[] getOptions() {
-        String[] options = new String[5];
+        String[] options = new String[6];
         int current = 0;
 
         options[current++] = "-S";
@@ -150,6 +254,9 @@ public abstract class CredalClassifier extends Classifier implements AdditionalM
         if (this.m_OutputFlag)
             options[current++] = "-OFlag";
 
+        if (this.supportsParallelScoring() && this.m_ParallelScoring)
+            options[current++] = "-parallelScoring";
+
         while (current < options.length) {
             options[current++] = "";
         }
@@ -184,6 +291,9 @@ public abstract class CredalClassifier extends Classifier implements AdditionalM
         else
             this.setOutputFlag(false);
 
+        if (this.supportsParallelScoring())
+            this.setParallelScoring(Utils.getFlag("parallelScoring", options));
+
     }
 
     /**
@@ -193,7 +303,7 @@ public abstract class CredalClassifier extends Classifier implements AdditionalM
      */
     public Enumeration listOptions() {
 
-        Vector newVector = new Vector(3);
+        Vector newVector = new Vector(4);
 
         newVector.addElement(new Option(
                "The number of ''hidden'' instances which controls the strength of the prior (for credal classifiers, higher s implies higher indeterminacy)",
@@ -210,6 +320,11 @@ public abstract class CredalClassifier extends Classifier implements AdditionalM
                "Section 7 of the user manual to carry out this comparison.",
                "OFlag", 0, "-OFlag"));
 
+        if (this.supportsParallelScoring())
+            newVector.addElement(new Option(
+                   "\tScore the attributes of each node in parallel.",
+                   "parallelScoring", 0, "-parallelScoring"));
+
         return newVector.elements();
     }
 
@@ -23,11 +23,13 @@ import weka.core.Capabilities.Capability;
 import weka.classifiers.*;
 import weka.core.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 /* Class for constructing an unpruned credal decision tree based on the ID3 algorithm. Split metrics based on imprecise
  * probabilities can be used.
  */
-public class CredalDecisionTree extends CredalClassifier implements OptionHandler, AdditionalMeasureProducer{
+public class CredalDecisionTree extends CredalClassifier implements OptionHandler, AdditionalMeasureProducer, ColumnStoreClassifier, ColumnStore.ClassEntropy{
 
   /* Field that contains the tree structure*/
   NodeTree m_RootNode;
@@ -54,13 +56,24 @@ public class CredalDecisionTree extends CredalClassifier implements OptionHandle
         that defines is zero is set to the most probable class that defines its parent if if was a leave */
   boolean m_MisclassifiedAllowed=true;
   
-  /* Vector with the ingoGain value of each attribute*/
-  double[] infoGains;
-  
   /* If this field contains a value k then the attribute with k-th hightest value of Information Gain will be used
       as a root of the node. The default value is k=1.*/
   int m_KThRootAttribute=1;
 
+  /* Number of threads used to build the subtrees. With 1 thread the tree is built sequentially.*/
+  int m_NumThreads=1;
+
+  /* Minimum number of instances that a node must have so that its subtree is built as a separate task
+     when several threads are used. Smaller subtrees are built by the thread of their parent.*/
+  int m_MinParallelNodeSize=1000;
+
+  /* Pool that runs the subtree tasks, only while the tree is being built in parallel*/
+  transient ForkJoinPool m_Pool;
+
+  /* Compiled form of the tree used for classifying instances. It is not serialized and it is
+     compiled again when it is needed.*/
+  transient volatile FlatTree m_FlatTree;
+
  /* Returns an instance of a TechnicalInformation object, containing 
    * detailed information about the technical background of this class,
    * e.g., paper reference or book this class is based on.
@@ -218,29 +231,175 @@ public class CredalDecisionTree extends CredalClassifier implements OptionHandle
         return output;
   }
 
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numThreadsTipText() {
+    return "The number of threads used to build the subtrees (1 to build the tree sequentially). "
+           + "The tree is the same for any number of threads.";
+  }
+
+  /**
+   * Get the number of threads used to build the tree.
+   *
+   * @return the number of threads
+   */
+  public int getNumThreads() {
+    return m_NumThreads;
+  }
+
+  /**
+   * Set the number of threads used to build the tree.
+   *
+   * @param newNumThreads the number of threads
+   */
+  public void setNumThreads(int newNumThreads) {
+    m_NumThreads = newNumThreads;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String minParallelNodeSizeTipText() {
+    return "The minimum number of instances of a node for building its subtree as a separate task.";
+  }
+
+  /**
+   * Get the minimum number of instances of a node for building its subtree as a separate task.
+   *
+   * @return the minimum node size
+   */
+  public int getMinParallelNodeSize() {
+    return m_MinParallelNodeSize;
+  }
+
+  /**
+   * Set the minimum number of instances of a node for building its subtree as a separate task.
+   *
+   * @param newMinParallelNodeSize the minimum node size
+   */
+  public void setMinParallelNodeSize(int newMinParallelNodeSize) {
+    m_MinParallelNodeSize = newMinParallelNodeSize;
+  }
+
+  /**
+   * The nodes of the tree can score their attributes in parallel.
+   * @return true
+   */
+  protected boolean supportsParallelScoring() {
+    return true;
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options
+   */
+  public Enumeration listOptions() {
+
+    Vector newVector = new Vector();
+
+    newVector.addElement(new Option(
+        "\tNumber of threads used to build the subtrees.\n"
+        + "\t(default 1)",
+        "threads", 1, "-threads <number of threads>"));
+
+    newVector.addElement(new Option(
+        "\tMinimum number of instances of a node for building its subtree\n"
+        + "\tas a separate task.\n"
+        + "\t(default 1000)",
+        "parallelSize", 1, "-parallelSize <number of instances>"));
+
+    Enumeration enu = super.listOptions();
+
+    while (enu.hasMoreElements()) {
+      newVector.addElement(enu.nextElement());
+    }
+
+    return newVector.elements();
+  }
+
+  /**
+   * Gets the current settings of the tree.
+   *
+   * @return an array of strings suitable for passing to setOptions()
+   */
+  public String[] getOptions() {
+    Vector        result;
+    String[]      options;
+    int           i;
+
+    result = new Vector();
+
+    result.add("-threads");
+    result.add("" + getNumThreads());
+
+    result.add("-parallelSize");
+    result.add("" + getMinParallelNodeSize());
+
+    options = super.getOptions();
+    for (i = 0; i < options.length; i++)
+      result.add(options[i]);
+
+    return (String[]) result.toArray(new String[result.size()]);
+  }
+
+  /**
+   * Parses a given list of options. <p/>
+   *
+   * <pre> -threads &lt;number of threads&gt;
+   *  Number of threads used to build the subtrees.
+   *  (default 1)</pre>
+   *
+   * <pre> -parallelSize &lt;number of instances&gt;
+   *  Minimum number of instances of a node for building its subtree
+   *  as a separate task.
+   *  (default 1000)</pre>
+   *
+   * @param options the list of options as an array of strings
+   * @throws Exception if an option is not supported
+   */
+  public void setOptions(String[] options) throws Exception{
+    String tmpStr;
+
+    tmpStr = Utils.getOption("threads", options);
+    if (tmpStr.length() != 0) {
+      setNumThreads(Integer.parseInt(tmpStr));
+    } else {
+      setNumThreads(1);
+    }
+
+    tmpStr = Utils.getOption("parallelSize", options);
+    if (tmpStr.length() != 0) {
+      setMinParallelNodeSize(Integer.parseInt(tmpStr));
+    } else {
+      setMinParallelNodeSize(1000);
+    }
+
+    super.setOptions(options);
+  }
+
   /**
    * Gets the attribute used for splitting in a certain node
-   * @param data the instances of the node
+   * @param infoGains the information gain of each attribute in the node
+   * @param store the training data
    * @param level the level of the node
    * @return the split attribute
-   * @throws Exception 
    */
   
-  protected Attribute getAttributeToRamify(Instances data, int level) throws Exception{
+  protected Attribute getAttributeToRamify(double[] infoGains, ColumnStore store, int level) {
     
     // Compute attribute with maximum information gain.
-    infoGains = new double[data.numAttributes()];
-    Enumeration attEnum = data.enumerateAttributes();
-    while (attEnum.hasMoreElements()) {
-      Attribute att = (Attribute) attEnum.nextElement();
-      infoGains[att.index()] = computeInfoGain(data, att);
-    }
-    infoGains[data.classIndex()]=-Double.MAX_VALUE;
+    infoGains[store.classIndex()]=-Double.MAX_VALUE;
     
     if (level==0){
-        return data.attribute(Utils.sort(infoGains)[infoGains.length-this.m_KThRootAttribute]);
+        return store.attribute(Utils.sort(infoGains)[infoGains.length-this.m_KThRootAttribute]);
     }else{
-        return data.attribute(Utils.maxIndex(infoGains));
+        return store.attribute(Utils.maxIndex(infoGains));
     }
 
   }
@@ -252,18 +411,78 @@ public class CredalDecisionTree extends CredalClassifier implements OptionHandle
    */
   public void buildClassifier(Instances data) throws Exception {
 
-    initStats();
-    
     // can classifier handle the data?
     getCapabilities().testWithFail(data);
 
-    // remove instances with missing class
-    data = new Instances(data);
-    data.deleteWithMissingClass();
+    // encode the data once, leaving out the instances with missing class
+    buildClassifier(new ColumnStore(data));
+  }
+
+  /**
+   * Builds the tree from encoded training data, which may be a sample of a store
+   * shared by the trees of an ensemble.
+   *
+   * @param store the training data
+   * @exception Exception if classifier can't be built successfully
+   */
+  public void buildClassifier(ColumnStore store) throws Exception {
+
+    initStats();
+    
+    int[] rows = store.getRowIndices();
     
     this.m_RootNode=new NodeTree();
     
-    makeTree(this.m_RootNode,data,0);
+    if (m_NumThreads > 1) {
+      // the subtrees are built over disjoint ranges of the rows, so the tree is the same
+      m_Pool = new ForkJoinPool(m_NumThreads);
+      try {
+        m_Pool.invoke(new SubtreeTask(this.m_RootNode,store,rows,0,rows.length,0));
+      } catch (RuntimeException e) {
+        Throwable cause = e;
+        while (cause instanceof RuntimeException && cause.getCause() != null)
+          cause = cause.getCause();
+        if (cause instanceof Exception)
+          throw (Exception) cause;
+        throw e;
+      } finally {
+        m_Pool.shutdown();
+        m_Pool = null;
+      }
+    } else {
+      makeTree(this.m_RootNode,store,rows,0,rows.length,0);
+    }
+    
+    m_FlatTree = compileTree();
+  }
+
+  /* Task that builds the subtree of a node. It is used when the tree is built with several threads.
+   */
+  private class SubtreeTask extends RecursiveAction {
+
+    static final long serialVersionUID = 2187633349215470416L;
+
+    private final NodeTree m_Node;
+    private final ColumnStore m_Store;
+    private final int[] m_Rows;
+    private final int m_From, m_To, m_Level;
+
+    SubtreeTask(NodeTree node, ColumnStore store, int[] rows, int from, int to, int level) {
+      m_Node = node;
+      m_Store = store;
+      m_Rows = rows;
+      m_From = from;
+      m_To = to;
+      m_Level = level;
+    }
+
+    protected void compute() {
+      try {
+        makeTree(m_Node, m_Store, m_Rows, m_From, m_To, m_Level);
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    }
   }
 
   /* Computes class distribution for instance using decision tree.
@@ -340,149 +559,141 @@ private double[] frequencyForInstance(NodeTree node, Instance instance){
   
 
   
-  /* Splits a dataset according to the values of a nominal attribute.
-   *
-   * @param data the data which is to be split
-   * @param att the attribute to be used for splitting
-   * @return the sets of instances produced by the split
-   */
-   protected Instances[] splitData(Instances data, Attribute att) {
-
-    Instances[] splitData = new Instances[att.numValues()];
-    for (int j = 0; j < att.numValues(); j++) {
-      splitData[j] = new Instances(data, data.numInstances());
-    }
-    Enumeration instEnum = data.enumerateInstances();
-    while (instEnum.hasMoreElements()) {
-      Instance inst = (Instance) instEnum.nextElement();
-      splitData[(int) inst.value(att)].add(inst);
-    }
-    for (int i = 0; i < splitData.length; i++) {
-      splitData[i].compactify();
-    }
-    return splitData;
-  }
   
    
-  protected void computeClassDistribution(NodeTree node, Instances data){
-      //node.setDistribution(new double[data.numClasses()]);
-      node.setFrequency(new double[data.numClasses()]);
-      Enumeration instEnum = data.enumerateInstances();
-      while (instEnum.hasMoreElements()) {
-        Instance inst = (Instance) instEnum.nextElement();
-        //node.getDistribution()[(int) inst.classValue()]++;
-        node.getFrequency()[(int) inst.classValue()]++;
-      }
-      //node.setSupport(data.numInstances());
-
+  /**
+   * Compute the frequencies for the class values in a node given its instances 
+   * @param node the node
+   * @param store the training data
+   * @param rows the row indices, the instances of the node are those in [from, to)
+   * @param from the first position of the node
+   * @param to the position after the last one of the node
+   */ 
+  protected void computeClassDistribution(NodeTree node, ColumnStore store, int[] rows, int from, int to){
+      node.setFrequency(store.classCounts(rows, from, to));
   }
    
-  public boolean stopCriterion(Attribute m_Attribute, int level, Instances data){
+  public boolean stopCriterion(Attribute m_Attribute, double[] infoGains, int level){
       return m_StopLevel==-1 || Utils.grOrEq(0,infoGains[m_Attribute.index()]) || (m_StopLevel>0 && m_StopLevel==(level));
   }
    
   /* Method for building an Imprecise Credal Decision Tree.
+   * The instances of the node are a range of the row indices, which is reordered
+   * in place to give the ranges of the successors. When the tree is built with
+   * several threads, the successors with enough instances are built as separate
+   * tasks once all the successors have been created.
    *
-   * @param data the training data
+   * @param node the node to be built
+   * @param store the training data
+   * @param rows the row indices, the instances of the node are those in [from, to)
+   * @param from the first position of the node
+   * @param to the position after the last one of the node
+   * @param level the level of the node
    * @exception Exception if decision tree can't be built successfully
    */
-  void makeTree(NodeTree node, Instances data, int level) throws Exception {
+  void makeTree(NodeTree node, ColumnStore store, int[] rows, int from, int to, int level) throws Exception {
 
     // Check if no instances have reached this node.
-    if (data.numInstances() == 0) {
+    if (from == to) {
       node.setAttribute(null);
-      //node.setClassAttribute(data.classAttribute());      
-      //node.setClassValue(Instance.missingValue());
-      //node.setDistribution( new double[data.numClasses()]);
-      node.setFrequency( new double[data.numClasses()]);
-      //node.setSupport(0);
+      node.setFrequency( new double[store.numClasses()]);
       return;
     }
 
-//node.setClassAttribute(data.classAttribute());
-    
-    Attribute m_Attribute= this.getAttributeToRamify(data, level);
+    double[] infoGains = this.computeInfoGains(store, rows, from, to);
+    Attribute m_Attribute= this.getAttributeToRamify(infoGains, store, level);
     
     // Make leaf if information gain is zero. 
     // Otherwise create successors.
-    //if (this.getStopLevel()==-1 || Utils.eq(infoGains[m_Attribute.index()], 0) ||  (this.getStopLevel()>0 && this.getStopLevel()==(level))) {
-    if (stopCriterion(m_Attribute, level, data)){
+    if (stopCriterion(m_Attribute, infoGains, level)){
       
       node.setAttribute(null);
-      //node.setClassAttribute(data.classAttribute());
       
-      this.computeClassDistribution(node,data);      
+      this.computeClassDistribution(node,store,rows,from,to);      
       
-      //node.normalize();
-      //node.setClassValue(node.getMaxDistributionIndex());
     } else {
 
       node.setAttribute(m_Attribute);
       
-      //this.computeClassDistribution(node,data);        
-      
-      Instances[] splitData = splitData(data, m_Attribute);
-          
+      // group the rows of the node by the value of the split attribute
+      int[] bounds = store.partition(m_Attribute.index(), rows, from, to);
+      List<SubtreeTask> tasks = null;
           
       for (int j = 0; j < m_Attribute.numValues(); j++) {
         NodeTree newnode=new NodeTree();
         node.setSuccesors(j,newnode);
         
-        if (!m_MisclassifiedAllowed && splitData[j].numInstances()==0){
+        if (!m_MisclassifiedAllowed && bounds[j]==bounds[j+1]){
               if (node.getFrequency()==null)
-                  this.computeClassDistribution(node,data);
+                  this.computeClassDistribution(node,store,rows,from,to);
           
               node.getSuccesors(j).setAttribute(null);
-              //node.getSuccesors(j).setClassAttribute(data.classAttribute());
 
-              this.computeClassDistribution(node.getSuccesors(j),data);      
+              this.computeClassDistribution(node.getSuccesors(j),store,rows,from,to);      
 
-              //node.getSuccesors(j).normalize();
-              //node.getSuccesors(j).setClassValue(node.getMaxDistributionIndex());
+        }else if (m_Pool != null && bounds[j+1]-bounds[j] >= m_MinParallelNodeSize){
+            if (tasks == null)
+                tasks = new ArrayList<SubtreeTask>();
+            tasks.add(new SubtreeTask(node.getSuccesors(j),store,rows,bounds[j],bounds[j+1],level+1));
         }else{
-            makeTree(node.getSuccesors(j),splitData[j],level+1);
+            makeTree(node.getSuccesors(j),store,rows,bounds[j],bounds[j+1],level+1);
         }
         
       }
+      
+      // the ranges of the node are not read any more, so the subtrees can be built concurrently
+      if (tasks != null)
+          RecursiveAction.invokeAll(tasks);
     }
   }
 
 
-  /* Computes information gain for an attribute.
+  /**
+   * Computes the information gain of every attribute for the instances of a node.
+   * The class counts of each attribute value are accumulated in one contingency table
+   * per attribute, so no subset of instances has to be built to score a split.
    *
-   * @param data the data for which info gain is to be computed
-   * @param att the attribute
-   * @return the information gain for the given attribute and data
+   * @param store the training data
+   * @param rows the row indices, the instances of the node are those in [from, to)
+   * @param from the first position of the node
+   * @param to the position after the last one of the node
+   * @return the information gain of each attribute
    */
-  public double computeInfoGain(Instances data, Attribute att) 
-    throws Exception {
+  protected double[] computeInfoGains(final ColumnStore store, final int[] rows, final int from, final int to) throws Exception {
 
-    double infoGain = computeEntropy(data);
-    Instances[] splitData = splitData(data, att);
-    for (int j = 0; j < att.numValues(); j++) {
-          if (splitData[j].numInstances() > 0) {
-            infoGain -= ((double) splitData[j].numInstances() /
-                         (double) data.numInstances()) *
-              computeEntropy(splitData[j]);
-          }
+    int num_attributes = store.numAttributes();
+    int class_index = store.classIndex();
+    double[] gains = new double[num_attributes];
+
+    double entropy = computeEntropy(store.classCounts(rows, from, to));
+    final int num_instances = store.numInstances(rows, from, to);
+
+    if (m_ParallelScoring) {
+      final double node_entropy = entropy;
+      ParallelScoring.scoreAttributes(ParallelScoring.candidateAttributes(num_attributes, class_index), gains,
+          new ParallelScoring.AttributeScore() {
+            public double score(int index) throws Exception {
+              return ColumnStore.infoGain(node_entropy, store.contingencyTable(index, rows, from, to), num_instances, CredalDecisionTree.this);
+            }
+          });
+    } else {
+      for (int i = 0; i < num_attributes; i++) {
+        if (i != class_index)
+          gains[i] = ColumnStore.infoGain(entropy, store.contingencyTable(i, rows, from, to), num_instances, this);
+      }
     }
-    return infoGain;
+
+    return gains;
   }
 
-  /* Computes the entropy of a dataset.
-   * 
-   * @param data the data for which entropy is to be computed
-   * @return the entropy of the data's class distribution
+  /**
+   * Computes the entropy of a class distribution according to the split metric.
+   *
+   * @param classCounts the class counts
+   * @return the entropy of the class distribution
    */
-  protected double computeEntropy(Instances data) throws Exception {
+  public double computeEntropy(double[] classCounts) throws Exception {
 
-    double [] classCounts = new double[data.numClasses()];
-    Enumeration instEnum = data.enumerateInstances();
-    while (instEnum.hasMoreElements()) {
-      Instance inst = (Instance) instEnum.nextElement();
-      classCounts[(int) inst.classValue()]++;
-    }
-    
     if (this.m_SplitMetric==CredalDecisionTree.IMPRECISE_ENTROPY)
         return E_ContingencyTables.entropyImprecise(classCounts,this.getSValue());
     else
@@ -491,6 +702,53 @@ private double[] frequencyForInstance(NodeTree node, Instance instance){
   }
     
   
+  /**
+   * Returns the compiled form of the tree, compiling it if needed (for example, after
+   * the classifier has been deserialized or the parameter s has been changed).
+   * @return the compiled tree
+   */
+  public FlatTree getFlatTree() {
+    FlatTree tree = m_FlatTree;
+
+    if (tree == null || tree.getSValue() != this.getSValue()) {
+      tree = compileTree();
+      m_FlatTree = tree;
+    }
+    return tree;
+  }
+
+  /**
+   * Compiles the tree and computes the non-dominated class values of each leaf.
+   * @return the compiled tree
+   */
+  protected FlatTree compileTree() {
+    FlatTree tree = new FlatTree(this.m_RootNode);
+    int[][] sets = new int[tree.numLeaves()][];
+
+    for (int leaf = 0; leaf < sets.length; leaf++)
+      sets[leaf] = getNonDominatedIndexSet(computeNonDominatedSet(tree.getFrequencies(), tree.frequencyOffset(leaf), tree.numClasses()));
+
+    tree.setNonDominatedSets(sets, this.getSValue());
+    return tree;
+  }
+
+  /**
+   * Returns the non-dominated class values for an instance, stored in the leaf that it reaches.
+   * @param instance the instance
+   * @return the indices of the non-dominated class values. The array must not be modified.
+   * @throws NoSupportForMissingValuesException if the instance has missing values
+   */
+  public int[] nonDominatedIndexSet(Instance instance) throws NoSupportForMissingValuesException {
+
+    if (instance.hasMissingValue()) {
+      throw new NoSupportForMissingValuesException("IPTree: no missing values, "
+                                                   + "please.");
+    }
+
+    FlatTree tree = this.getFlatTree();
+    return tree.nonDominatedSet(tree.leaf(instance));
+  }
+
   public NodeTree getRootNode(){
       return this.m_RootNode; 
   }
@@ -507,23 +765,8 @@ private double[] frequencyForInstance(NodeTree node, Instance instance){
   private void updateCredalStatistics(Instance instance) throws NoSupportForMissingValuesException{
 
 
-      double[] frequency=this.frequencyForInstance(instance);
-
-      boolean[] nonDominatedSet= computeNonDominatedSet(frequency);
-
-      int cont=0;
-      for (int i=0; i<nonDominatedSet.length; i++){
-        if (nonDominatedSet[i])
-            cont++;
-      }
-
-      int[] nonDominatedIndexSet = new int[cont];
-
-      cont=0;
-      for (int i=0; i<nonDominatedSet.length; i++){
-        if (nonDominatedSet[i])
-            nonDominatedIndexSet[cont++]=i;
-      }
+      // the non-dominated set of every leaf is computed when the tree is compiled
+      int[] nonDominatedIndexSet = this.nonDominatedIndexSet(instance);
 
       this.updateStatistics(nonDominatedIndexSet, instance);
 
@@ -538,19 +781,33 @@ private double[] frequencyForInstance(NodeTree node, Instance instance){
    */
 
   public boolean[] computeNonDominatedSet(double[] frequency) {
+    return computeNonDominatedSet(frequency, 0, frequency.length);
+  }
+
+  /**
+   * Compute the non dominates states set given the frequencies of the class values stored
+   * in a block of an array, as the leaf frequencies of the compiled tree.
+   * @param frequencies the array with the frequencies
+   * @param offset the position of the frequency of the first class value
+   * @param num_classes the number of class values
+   * @return a boolean vector, where the i-th component is equal to true if the i-th class value is non-dominated
+   */
+  public boolean[] computeNonDominatedSet(double[] frequencies, int offset, int num_classes) {
 
-    double sum=Utils.sum(frequency);
-    boolean[] nonDominatedSet= new boolean[frequency.length];
+    double sum=0;
+    for (int i=0; i<num_classes; i++)
+        sum+=frequencies[offset+i];
+    boolean[] nonDominatedSet= new boolean[num_classes];
 
-    for (int k=0; k<frequency.length; k++){
+    for (int k=0; k<num_classes; k++){
 
         double maxPInf=Double.NEGATIVE_INFINITY;
 
-        for (int i=0; i<frequency.length; i++){
+        for (int i=0; i<num_classes; i++){
             if (i!=k){
                 double pInf=0.0;
                 if (this.m_SplitMetric==IMPRECISE_ENTROPY)
-                    pInf=frequency[i]/sum;
+                    pInf=frequencies[offset+i]/sum;
 
                 if (pInf>maxPInf)
                     maxPInf=pInf;
@@ -559,7 +816,7 @@ private double[] frequencyForInstance(NodeTree node, Instance instance){
 
         double pSup=0.0;
         if (this.m_SplitMetric==IMPRECISE_ENTROPY)
-            pSup=(frequency[k]+this.getSValue())/sum;
+            pSup=(frequencies[offset+k]+this.getSValue())/sum;
 
         nonDominatedSet[k] = pSup>maxPInf;
 
@@ -28,7 +28,7 @@ import java.util.*;
  *
  * @author Serafin
  */
-public class CredalDecisionTree2 extends CredalClassifier implements OptionHandler, AdditionalMeasureProducer{
+public class CredalDecisionTree2 extends CredalClassifier implements OptionHandler, AdditionalMeasureProducer, ColumnStoreClassifier, ColumnStore.ClassEntropy, NodeTreeClassifier{
     /* Field that contains the tree structure*/
   NodeTree m_RootNode;
   
@@ -42,6 +42,10 @@ public class CredalDecisionTree2 extends CredalClassifier implements OptionHandl
   
   /* Vector with the infoGain value of each attribute*/
   double[] infoGains;
+
+  /* Compiled form of the tree used for classifying instances. It is not serialized and it is
+     compiled again when it is needed.*/
+  transient volatile FlatTree m_FlatTree;
   
    /* Returns an instance of a TechnicalInformation object, containing 
    * detailed information about the technical background of this class,
@@ -202,28 +206,24 @@ public class CredalDecisionTree2 extends CredalClassifier implements OptionHandl
         return output;
   }
   
-    /**
-     * It computes the attribute to ramify in a certain node
-     * @param data the instances in the node
-     * @param level the level of the tree
-     * @return the attribute to remify
-     * @throws Exception 
-     */
+  /**
+   * It computes the attribute to ramify in a certain node
+   * @param store the training data
+   * @param rows the row indices, the instances of the node are those in [from, to)
+   * @param from the first position of the node
+   * @param to the position after the last one of the node
+   * @param level the level of the tree
+   * @return the attribute to remify
+   * @throws Exception 
+   */
 
-    protected Attribute getAttributeToRamify(Instances data, int level) throws Exception{
+  protected Attribute getAttributeToRamify(ColumnStore store, int[] rows, int from, int to, int level) throws Exception{
     
     // Compute attribute with maximum information gain.
-        infoGains = new double[data.numAttributes()];
-        Enumeration attEnum = data.enumerateAttributes();
-    
-        while (attEnum.hasMoreElements()) {
-            Attribute att = (Attribute) attEnum.nextElement();
-            infoGains[att.index()] = computeInfoGain(data, att);
-        }
-    
-        infoGains[data.classIndex()]=-Double.MAX_VALUE;
+        infoGains = computeInfoGains(store, rows, from, to);
+        infoGains[store.classIndex()]=-Double.MAX_VALUE;
     
-        return data.attribute(Utils.maxIndex(infoGains));
+        return store.attribute(Utils.maxIndex(infoGains));
     }
 
    /* Builds IPTree decision tree classifier.
@@ -233,18 +233,31 @@ public class CredalDecisionTree2 extends CredalClassifier implements OptionHandl
    */
   public void buildClassifier(Instances data) throws Exception {
 
-    initStats();
-    
     // can classifier handle the data?
     getCapabilities().testWithFail(data);
 
-    // remove instances with missing class
-    data = new Instances(data);
-    data.deleteWithMissingClass();
+    // encode the data once, leaving out the instances with missing class
+    buildClassifier(new ColumnStore(data));
+  }
+
+  /**
+   * Builds the tree from encoded training data, which may be a sample of a store
+   * shared by the trees of an ensemble.
+   *
+   * @param store the training data
+   * @exception Exception if classifier can't be built successfully
+   */
+  public void buildClassifier(ColumnStore store) throws Exception {
+
+    initStats();
+    
+    int[] rows = store.getRowIndices();
     
     this.m_RootNode=new NodeTree();
     
-    makeTree(this.m_RootNode,data,0);
+    makeTree(this.m_RootNode,store,rows,0,rows.length,0);
+    
+    m_FlatTree = compileTree();
   }
 
   /* Computes class distribution for instance using decision tree.
@@ -355,120 +368,83 @@ public class CredalDecisionTree2 extends CredalClassifier implements OptionHandl
   
 
   
-  /* Splits a dataset according to the values of a nominal attribute.
-   *
-   * @param data the data which is to be split
-   * @param att the attribute to be used for splitting
-   * @return the sets of instances produced by the split
-   */
-   protected Instances[] splitData(Instances data, Attribute att) {
-
-    Instances[] splitData = new Instances[att.numValues()];
-    for (int j = 0; j < att.numValues(); j++) {
-      splitData[j] = new Instances(data, data.numInstances());
-    }
-    Enumeration instEnum = data.enumerateInstances();
-    while (instEnum.hasMoreElements()) {
-      Instance inst = (Instance) instEnum.nextElement();
-      splitData[(int) inst.value(att)].add(inst);
-    }
-    for (int i = 0; i < splitData.length; i++) {
-      splitData[i].compactify();
-    }
-    return splitData;
-  }
   
   /**
    * Compute the frequencies for the class values in a node given its instances 
    * @param node the node
-   * @param data the instances in the node
+   * @param store the training data
+   * @param rows the row indices, the instances of the node are those in [from, to)
+   * @param from the first position of the node
+   * @param to the position after the last one of the node
    */ 
-   
-  protected void computeClassDistribution(NodeTree node, Instances data){
-      //node.setDistribution(new double[data.numClasses()]);
-      node.setFrequency(new double[data.numClasses()]);
-      Enumeration instEnum = data.enumerateInstances();
-      while (instEnum.hasMoreElements()) {
-        Instance inst = (Instance) instEnum.nextElement();
-        //node.getDistribution()[(int) inst.classValue()]++;
-        node.getFrequency()[(int) inst.classValue()]++;
-      }
-      //node.setSupport(data.numInstances());
-
+  protected void computeClassDistribution(NodeTree node, ColumnStore store, int[] rows, int from, int to){
+      node.setFrequency(store.classCounts(rows, from, to));
   }
   
   /**
-   * It checks whether it is satified the stop criterion for a cetain attribute, level and data in a node
+   * It checks whether it is satified the stop criterion for a cetain attribute and level in a node
    * @param m_Attribute the attribute
    * @param level the level
-   * @param data the instances in the node
    * @return if the criterion holds. 
    */
    
-  public boolean stopCriterion(Attribute m_Attribute, int level, Instances data){
+  public boolean stopCriterion(Attribute m_Attribute, int level){
       return m_StopLevel==-1 || Utils.grOrEq(0,infoGains[m_Attribute.index()]) || (m_StopLevel>0 && m_StopLevel==(level));
   }
    
-  /* Method for building an IPTree tree.
+  /**
+   * Method for building an IPTree tree.
+   * The instances of the node are a range of the row indices, which is reordered
+   * in place to give the ranges of the successors.
    *
-   * @param data the training data
+   * @param node the node to be built
+   * @param store the training data
+   * @param rows the row indices, the instances of the node are those in [from, to)
+   * @param from the first position of the node
+   * @param to the position after the last one of the node
+   * @param level the level of the node
    * @exception Exception if decision tree can't be built successfully
    */
-  void makeTree(NodeTree node, Instances data, int level) throws Exception {
+  void makeTree(NodeTree node, ColumnStore store, int[] rows, int from, int to, int level) throws Exception {
 
     // Check if no instances have reached this node.
-    if (data.numInstances() == 0) {
+    if (from == to) {
       node.setAttribute(null);
-      //node.setClassAttribute(data.classAttribute());      
-      //node.setClassValue(Instance.missingValue());
-      //node.setDistribution( new double[data.numClasses()]);
-      node.setFrequency( new double[data.numClasses()]);
-      //node.setSupport(0);
+      node.setFrequency( new double[store.numClasses()]);
       return;
     }
 
-//node.setClassAttribute(data.classAttribute());
-    
-    Attribute m_Attribute= this.getAttributeToRamify(data, level);
+    Attribute m_Attribute= this.getAttributeToRamify(store, rows, from, to, level);
     
     // Make leaf if information gain is zero. 
     // Otherwise create successors.
-    //if (this.getStopLevel()==-1 || Utils.eq(infoGains[m_Attribute.index()], 0) ||  (this.getStopLevel()>0 && this.getStopLevel()==(level))) {
-    if (stopCriterion(m_Attribute, level, data)){
+    if (stopCriterion(m_Attribute, level)){
       
       node.setAttribute(null);
-      //node.setClassAttribute(data.classAttribute());
       
-      this.computeClassDistribution(node,data);      
+      this.computeClassDistribution(node,store,rows,from,to);      
       
-      //node.normalize();
-      //node.setClassValue(node.getMaxDistributionIndex());
     } else {
 
       node.setAttribute(m_Attribute);
       
-      //this.computeClassDistribution(node,data);        
-      
-      Instances[] splitData = splitData(data, m_Attribute);
-          
+      // group the rows of the node by the value of the split attribute
+      int[] bounds = store.partition(m_Attribute.index(), rows, from, to);
           
       for (int j = 0; j < m_Attribute.numValues(); j++) {
         NodeTree newnode=new NodeTree();
         node.setSuccesors(j,newnode);
         
-        if (!m_MisclassifiedAllowed && splitData[j].numInstances()==0){
+        if (!m_MisclassifiedAllowed && bounds[j]==bounds[j+1]){
               if (node.getFrequency()==null)
-                  this.computeClassDistribution(node,data);
+                  this.computeClassDistribution(node,store,rows,from,to);
           
               node.getSuccesors(j).setAttribute(null);
-              //node.getSuccesors(j).setClassAttribute(data.classAttribute());
 
-              this.computeClassDistribution(node.getSuccesors(j),data);      
+              this.computeClassDistribution(node.getSuccesors(j),store,rows,from,to);      
 
-              //node.getSuccesors(j).normalize();
-              //node.getSuccesors(j).setClassValue(node.getMaxDistributionIndex());
         }else{
-            makeTree(node.getSuccesors(j),splitData[j],level+1);
+            makeTree(node.getSuccesors(j),store,rows,bounds[j],bounds[j+1],level+1);
         }
         
       }
@@ -476,42 +452,43 @@ public class CredalDecisionTree2 extends CredalClassifier implements OptionHandl
   }
 
 
-  /* Computes information gain for an attribute.
+  /**
+   * Computes the information gain of every attribute for the instances of a node.
+   * The class counts of each attribute value are accumulated in one contingency table
+   * per attribute, so no subset of instances has to be built to score a split.
    *
-   * @param data the data for which info gain is to be computed
-   * @param att the attribute
-   * @return the information gain for the given attribute and data
+   * @param store the training data
+   * @param rows the row indices, the instances of the node are those in [from, to)
+   * @param from the first position of the node
+   * @param to the position after the last one of the node
+   * @return the information gain of each attribute
    */
-  public double computeInfoGain(Instances data, Attribute att) 
-    throws Exception {
+  protected double[] computeInfoGains(ColumnStore store, int[] rows, int from, int to) throws Exception {
+
+    int num_attributes = store.numAttributes();
+    int class_index = store.classIndex();
+    double[] gains = new double[num_attributes];
+
+    double entropy = computeEntropy(store.classCounts(rows, from, to));
+    final int num_instances = store.numInstances(rows, from, to);
 
-    double infoGain = computeEntropy(data);
-    Instances[] splitData = splitData(data, att);
-    for (int j = 0; j < att.numValues(); j++) {
-          if (splitData[j].numInstances() > 0) {
-            infoGain -= ((double) splitData[j].numInstances() /
-                         (double) data.numInstances()) *
-              computeEntropy(splitData[j]);
-          }
+    for (int i = 0; i < num_attributes; i++) {
+      if (i != class_index)
+        gains[i] = ColumnStore.infoGain(entropy, store.contingencyTable(i, rows, from, to), num_instances, this);
     }
-    return infoGain;
+
+    return gains;
   }
 
-  /* Computes the entropy of a dataset.
-   * 
-   * @param data the data for which entropy is to be computed
-   * @return the entropy of the data's class distribution
+  /**
+   * Computes the entropy of a class distribution.
+   *
+   * @param classCounts the class counts
+   * @return the entropy of the class distribution
    */
-  protected double computeEntropy(Instances data) throws Exception {
+  public double computeEntropy(double[] classCounts) throws Exception {
 
-    double [] classCounts = new double[data.numClasses()];
-    Enumeration instEnum = data.enumerateInstances();
-    while (instEnum.hasMoreElements()) {
-      Instance inst = (Instance) instEnum.nextElement();
-      classCounts[(int) inst.classValue()]++;
-    }
-    
-    return E_ContingencyTables.entropyImprecise(classCounts,this.getSValue());        
+    return E_ContingencyTables.entropyImprecise(classCounts,this.getSValue());
   }
     
   /**
@@ -519,6 +496,53 @@ public class CredalDecisionTree2 extends CredalClassifier implements OptionHandl
    * @return the root node 
    */
   
+  /**
+   * Returns the compiled form of the tree, compiling it if needed (for example, after
+   * the classifier has been deserialized or the parameter s has been changed).
+   * @return the compiled tree
+   */
+  public FlatTree getFlatTree() {
+    FlatTree tree = m_FlatTree;
+
+    if (tree == null || tree.getSValue() != this.getSValue()) {
+      tree = compileTree();
+      m_FlatTree = tree;
+    }
+    return tree;
+  }
+
+  /**
+   * Compiles the tree and computes the non-dominated class values of each leaf.
+   * @return the compiled tree
+   */
+  protected FlatTree compileTree() {
+    FlatTree tree = new FlatTree(this.m_RootNode);
+    int[][] sets = new int[tree.numLeaves()][];
+
+    for (int leaf = 0; leaf < sets.length; leaf++)
+      sets[leaf] = getNonDominatedIndexSet(computeNonDominatedSet(tree.getFrequencies(), tree.frequencyOffset(leaf), tree.numClasses()));
+
+    tree.setNonDominatedSets(sets, this.getSValue());
+    return tree;
+  }
+
+  /**
+   * Returns the non-dominated class values for an instance, stored in the leaf that it reaches.
+   * @param instance the instance
+   * @return the indices of the non-dominated class values. The array must not be modified.
+   * @throws NoSupportForMissingValuesException if the instance has missing values
+   */
+  public int[] nonDominatedIndexSet(Instance instance) throws NoSupportForMissingValuesException {
+
+    if (instance.hasMissingValue()) {
+      throw new NoSupportForMissingValuesException("IPTree: no missing values, "
+                                                   + "please.");
+    }
+
+    FlatTree tree = this.getFlatTree();
+    return tree.nonDominatedSet(tree.leaf(instance));
+  }
+
   public NodeTree getRootNode(){
       return this.m_RootNode; 
   }
@@ -558,22 +582,42 @@ public class CredalDecisionTree2 extends CredalClassifier implements OptionHandl
    */
   
     public boolean[] computeNonDominatedStatesSet(Instance instance) throws NoSupportForMissingValuesException{
-        int num_classes = instance.numClasses();
+        int[] non_dominated_index_set = this.nonDominatedIndexSet(instance);
+        boolean[] non_dominated_states = new boolean[instance.numClasses()];
+        
+        for(int i = 0; i < non_dominated_index_set.length; i++)
+            non_dominated_states[non_dominated_index_set[i]] = true;
+        
+        return non_dominated_states;
+    }
+    
+    /**
+     * Compute the non-dominated states set of a leaf according to stochastic (credal) dominance
+     * @param frequencies the array with the class frequencies of the leaves
+     * @param offset the position of the frequency of the first class value of the leaf
+     * @param num_classes the number of class values
+     * @return array K-dimensional. Component i = true iif state i non-dominated
+     */
+    
+    public boolean[] computeNonDominatedSet(double[] frequencies, int offset, int num_classes){
         boolean[] non_dominated_states = new boolean[num_classes];
-        double[][] extreme_probabilities = getExtremeProbabilities(instance);
-        double[] inferior_probabilities = extreme_probabilities[0];
-        double[] superior_probabilities = extreme_probabilities[1];
         double inferior_probability, superior_probability;
         double max_inferior_probability;
         boolean non_dominated;
+        double num_instances_node = 0;
+        
+        for(int j = 0; j < num_classes; j++)
+            num_instances_node += frequencies[offset + j];
+        
+        double denominator = num_instances_node + m_SValue;
         
         for(int i = 0; i < num_classes; i++){
-            superior_probability = superior_probabilities[i];
+            superior_probability = (frequencies[offset + i] + m_SValue)/denominator;
             max_inferior_probability = Double.MIN_VALUE;
             
             for(int j = 0; j < num_classes; j++){
                 if(j != i){
-                    inferior_probability = inferior_probabilities[j];
+                    inferior_probability = frequencies[offset + j]/denominator;
                     
                     if(inferior_probability > max_inferior_probability)
                         max_inferior_probability = inferior_probability;
@@ -587,42 +631,6 @@ public class CredalDecisionTree2 extends CredalClassifier implements OptionHandl
         return non_dominated_states;
     }
     
-    /**
-     * It computes the indices of the non-dominated states given the array that indicates if all the states are dominated
-     * @param non_dominated_states the array of boolean values. The i-th component has the valua 1 if the state i is non-dominated and 0 otherwise. 
-     * @return the index set of non-dominated states
-     */
-    
-    private int[] computeNonDominatedIndexSet(boolean[] non_dominated_states){
-        int num_non_dominated=0;
-        int num_class_values = non_dominated_states.length;
-        boolean non_dominated;
-        int[] non_dominated_index_set;
-        int cont;
-        
-        for (int i=0; i<num_class_values; i++){
-            non_dominated = non_dominated_states[i];
-            
-            if (non_dominated)
-                num_non_dominated++;
-        } 
-        
-        non_dominated_index_set = new int[num_non_dominated];
-        
-        cont = 0;
-        
-        for (int i=0; i<num_class_values; i++){
-            non_dominated = non_dominated_states[i];
-
-            if (non_dominated){
-                non_dominated_index_set[cont]=i;
-                cont++;
-            }
-        }
-        
-        return non_dominated_index_set;
-    }
-    
     /* 
    * This function computes a utility measure of an IP model for an instance
     @param instance the instance
@@ -630,10 +638,8 @@ public class CredalDecisionTree2 extends CredalClassifier implements OptionHandl
    */
   private void updateCredalStatistics(Instance instance) throws NoSupportForMissingValuesException{
 
-      boolean[] nonDominatedSet = computeNonDominatedStatesSet(instance);
-
-
-      int[] nonDominatedIndexSet = computeNonDominatedIndexSet(nonDominatedSet);
+      // the non-dominated set of every leaf is computed when the tree is compiled
+      int[] nonDominatedIndexSet = this.nonDominatedIndexSet(instance);
 
     
 
@@ -714,11 +714,14 @@ public class CredalDecisionTreeDirectNPI  extends CredalClassifier implements Op
         return this.m_RootNode; 
     }
   
-    /** 
-    * This function updates the credal statistics given an instance 
-    * @param instance the instance
-    */
-    private void updateCredalStatistics(Instance instance) throws NoSupportForMissingValuesException{
+    /**
+     * Computes the indices of the non-dominated class values for an instance,
+     * without updating the statistics.
+     * @param instance the instance
+     * @return the indices of the non-dominated class values
+     * @throws NoSupportForMissingValuesException 
+     */
+    public int[] nonDominatedIndexSet(Instance instance) throws NoSupportForMissingValuesException{
 
         double[] frequency=this.frequencyForInstance(instance);
 
@@ -740,10 +743,18 @@ public class CredalDecisionTreeDirectNPI  extends CredalClassifier implements Op
                 nonDominatedIndexSet[cont++]=i;
         }
 
-        this.updateStatistics(nonDominatedIndexSet, instance);
+        return nonDominatedIndexSet;
 
     }
 
+    /** 
+    * This function updates the credal statistics given an instance 
+    * @param instance the instance
+    */
+    private void updateCredalStatistics(Instance instance) throws NoSupportForMissingValuesException{
+        this.updateStatistics(this.nonDominatedIndexSet(instance), instance);
+    }
+
     /**
      * It computes the 
      * @param frequency the frequencies of the insnce
@@ -8,7 +8,10 @@ package weka.classifiers.credalClassifiers;
 import java.util.Enumeration;
 import java.util.Vector;
 import weka.classifiers.Evaluation;
+import weka.classifiers.trees.ColumnStore;
+import weka.classifiers.trees.ColumnStoreClassifier;
 import weka.classifiers.trees.NodeTree;
+import weka.classifiers.trees.ParallelScoring;
 import weka.core.AdditionalMeasureProducer;
 import weka.core.Attribute;
 import weka.core.Capabilities;
@@ -26,7 +29,7 @@ import weka.core.Utils;
  *
  * @author Serafin
  */
-public class CredalDecisionTreeNPIM extends CredalClassifier implements OptionHandler, AdditionalMeasureProducer{
+public class CredalDecisionTreeNPIM extends CredalClassifier implements OptionHandler, AdditionalMeasureProducer, ColumnStoreClassifier, ColumnStore.ClassEntropy{
 
   /** for serialization */
   static final long serialVersionUID = 2889730616939923301L;
@@ -234,21 +237,35 @@ public class CredalDecisionTreeNPIM extends CredalClassifier implements OptionHa
   }
 
   
-  protected Attribute getAttributeToRamify(Instances data, int level) throws Exception{
+  /**
+   * The nodes of the tree can score their attributes in parallel.
+   * @return true
+   */
+  protected boolean supportsParallelScoring() {
+    return true;
+  }
+
+  /**
+   * It computes the attribute to ramify in a certain node
+   * @param store the training data
+   * @param rows the row indices, the instances of the node are those in [from, to)
+   * @param from the first position of the node
+   * @param to the position after the last one of the node
+   * @param level the level of the tree
+   * @return the attribute to remify
+   * @throws Exception 
+   */
+
+  protected Attribute getAttributeToRamify(ColumnStore store, int[] rows, int from, int to, int level) throws Exception{
     
     // Compute attribute with maximum information gain.
-    infoGains = new double[data.numAttributes()];
-    Enumeration attEnum = data.enumerateAttributes();
-    while (attEnum.hasMoreElements()) {
-      Attribute att = (Attribute) attEnum.nextElement();
-      infoGains[att.index()] = computeInfoGain(data, att);
-    }
-    infoGains[data.classIndex()]=-Double.MAX_VALUE;
+    infoGains = computeInfoGains(store, rows, from, to);
+    infoGains[store.classIndex()]=-Double.MAX_VALUE;
     
     if (level==0){
-        return data.attribute(Utils.sort(infoGains)[infoGains.length-this.m_KThRootAttribute]);
+        return store.attribute(Utils.sort(infoGains)[infoGains.length-this.m_KThRootAttribute]);
     }else{
-        return data.attribute(Utils.maxIndex(infoGains));
+        return store.attribute(Utils.maxIndex(infoGains));
     }
 
   }
@@ -261,18 +278,29 @@ public class CredalDecisionTreeNPIM extends CredalClassifier implements OptionHa
    */
   public void buildClassifier(Instances data) throws Exception {
 
-    initStats();
-    
     // can classifier handle the data?
     getCapabilities().testWithFail(data);
 
-    // remove instances with missing class
-    data = new Instances(data);
-    data.deleteWithMissingClass();
+    // encode the data once, leaving out the instances with missing class
+    buildClassifier(new ColumnStore(data));
+  }
+
+  /**
+   * Builds the tree from encoded training data, which may be a sample of a store
+   * shared by the trees of an ensemble.
+   *
+   * @param store the training data
+   * @exception Exception if classifier can't be built successfully
+   */
+  public void buildClassifier(ColumnStore store) throws Exception {
+
+    initStats();
+    
+    int[] rows = store.getRowIndices();
     
     this.m_RootNode=new NodeTree();
     
-    makeTree(this.m_RootNode,data,0);
+    makeTree(this.m_RootNode,store,rows,0,rows.length,0);
   }
 
   /**
@@ -376,111 +404,86 @@ public class CredalDecisionTreeNPIM extends CredalClassifier implements OptionHa
   }
 
   
-  /**
-   * Splits a dataset according to the values of a nominal attribute.
-   *
-   * @param data the data which is to be split
-   * @param att the attribute to be used for splitting
-   * @return the sets of instances produced by the split
-   */
-   protected Instances[] splitData(Instances data, Attribute att) {
-
-    Instances[] splitData = new Instances[att.numValues()];
-    for (int j = 0; j < att.numValues(); j++) {
-      splitData[j] = new Instances(data, data.numInstances());
-    }
-    Enumeration instEnum = data.enumerateInstances();
-    while (instEnum.hasMoreElements()) {
-      Instance inst = (Instance) instEnum.nextElement();
-      splitData[(int) inst.value(att)].add(inst);
-    }
-    for (int i = 0; i < splitData.length; i++) {
-      splitData[i].compactify();
-    }
-    return splitData;
-  }
   
   
    
    
-  protected void computeClassDistribution(NodeTree node, Instances data){
-      //node.setDistribution(new double[data.numClasses()]);
-      node.setFrequency(new double[data.numClasses()]);
-      Enumeration instEnum = data.enumerateInstances();
-      while (instEnum.hasMoreElements()) {
-        Instance inst = (Instance) instEnum.nextElement();
-        //node.getDistribution()[(int) inst.classValue()]++;
-        node.getFrequency()[(int) inst.classValue()]++;
-      }
-      //node.setSupport(data.numInstances());
-
+  /**
+   * Compute the frequencies for the class values in a node given its instances 
+   * @param node the node
+   * @param store the training data
+   * @param rows the row indices, the instances of the node are those in [from, to)
+   * @param from the first position of the node
+   * @param to the position after the last one of the node
+   */ 
+  protected void computeClassDistribution(NodeTree node, ColumnStore store, int[] rows, int from, int to){
+      node.setFrequency(store.classCounts(rows, from, to));
   }
    
-  public boolean stopCriterion(Attribute m_Attribute, int level, Instances data){
+  /**
+   * It checks whether it is satified the stop criterion for a cetain attribute and level in a node
+   * @param m_Attribute the attribute
+   * @param level the level
+   * @return if the criterion holds. 
+   */
+   
+  public boolean stopCriterion(Attribute m_Attribute, int level){
       return m_StopLevel==-1 || Utils.grOrEq(0,infoGains[m_Attribute.index()]) ||  (m_StopLevel>0 && m_StopLevel==(level));
   }
    
   /**
    * Method for building an IPTree tree.
+   * The instances of the node are a range of the row indices, which is reordered
+   * in place to give the ranges of the successors.
    *
-   * @param data the training data
+   * @param node the node to be built
+   * @param store the training data
+   * @param rows the row indices, the instances of the node are those in [from, to)
+   * @param from the first position of the node
+   * @param to the position after the last one of the node
+   * @param level the level of the node
    * @exception Exception if decision tree can't be built successfully
    */
-  void makeTree(NodeTree node, Instances data, int level) throws Exception {
+  void makeTree(NodeTree node, ColumnStore store, int[] rows, int from, int to, int level) throws Exception {
 
     // Check if no instances have reached this node.
-    if (data.numInstances() == 0) {
+    if (from == to) {
       node.setAttribute(null);
-      //node.setClassAttribute(data.classAttribute());      
-      //node.setClassValue(Instance.missingValue());
-      //node.setDistribution( new double[data.numClasses()]);
-      node.setFrequency( new double[data.numClasses()]);
-      //node.setSupport(0);
+      node.setFrequency( new double[store.numClasses()]);
       return;
     }
 
-    //node.setClassAttribute(data.classAttribute());
-    
-    Attribute m_Attribute= this.getAttributeToRamify(data, level);
+    Attribute m_Attribute= this.getAttributeToRamify(store, rows, from, to, level);
     
     // Make leaf if information gain is zero. 
     // Otherwise create successors.
-    //if (this.getStopLevel()==-1 || Utils.eq(infoGains[m_Attribute.index()], 0) ||  (this.getStopLevel()>0 && this.getStopLevel()==(level))) {
-    if (stopCriterion(m_Attribute, level, data)){
+    if (stopCriterion(m_Attribute, level)){
       
       node.setAttribute(null);
-      //node.setClassAttribute(data.classAttribute());
       
-      this.computeClassDistribution(node,data);      
+      this.computeClassDistribution(node,store,rows,from,to);      
       
-      //node.normalize();
-      //node.setClassValue(node.getMaxDistributionIndex());
     } else {
 
       node.setAttribute(m_Attribute);
       
-      //this.computeClassDistribution(node,data);        
-      
-      Instances[] splitData = splitData(data, m_Attribute);
+      // group the rows of the node by the value of the split attribute
+      int[] bounds = store.partition(m_Attribute.index(), rows, from, to);
           
-      
       for (int j = 0; j < m_Attribute.numValues(); j++) {
         NodeTree newnode=new NodeTree();
         node.setSuccesors(j,newnode);
         
-        if (!m_MisclassifiedAllowed && splitData[j].numInstances()==0){
+        if (!m_MisclassifiedAllowed && bounds[j]==bounds[j+1]){
               if (node.getFrequency()==null)
-                  this.computeClassDistribution(node,data);
+                  this.computeClassDistribution(node,store,rows,from,to);
           
               node.getSuccesors(j).setAttribute(null);
-              //node.getSuccesors(j).setClassAttribute(data.classAttribute());
 
-              this.computeClassDistribution(node.getSuccesors(j),data);      
+              this.computeClassDistribution(node.getSuccesors(j),store,rows,from,to);      
 
-              //node.getSuccesors(j).normalize();
-              //node.getSuccesors(j).setClassValue(node.getMaxDistributionIndex());
         }else{
-            makeTree(node.getSuccesors(j),splitData[j],level+1);
+            makeTree(node.getSuccesors(j),store,rows,bounds[j],bounds[j+1],level+1);
         }
         
       }
@@ -489,61 +492,52 @@ public class CredalDecisionTreeNPIM extends CredalClassifier implements OptionHa
 
 
   /**
-   * Computes information gain for an attribute.
+   * Computes the information gain of every attribute for the instances of a node.
+   * The class counts of each attribute value are accumulated in one contingency table
+   * per attribute, so no subset of instances has to be built to score a split.
    *
-   * @param data the data for which info gain is to be computed
-   * @param att the attribute
-   * @return the information gain for the given attribute and data
+   * @param store the training data
+   * @param rows the row indices, the instances of the node are those in [from, to)
+   * @param from the first position of the node
+   * @param to the position after the last one of the node
+   * @return the information gain of each attribute
    */
-  public double computeInfoGain(Instances data, Attribute att) throws Exception {
-    double entropy, conditionated_entropy;
-    int num_instances_partition, num_instances;  
-    double infoGain = computeEntropy(data);
-    Instances[] splitData = splitData(data, att);
-    Instances instances_partition;
-    double probability;
-    
-    num_instances = data.numInstances();
-    
-    for (int j = 0; j < att.numValues(); j++) {
-          instances_partition = splitData[j];
-          num_instances_partition = instances_partition.numInstances();
-        
-          if (num_instances_partition > 0) {
-            probability = (double) num_instances_partition/(double)num_instances; 
-            entropy = computeEntropy(instances_partition);
-            conditionated_entropy = probability*entropy;
-            
-            infoGain -= conditionated_entropy;
-          }
+  protected double[] computeInfoGains(final ColumnStore store, final int[] rows, final int from, final int to) throws Exception {
+
+    int num_attributes = store.numAttributes();
+    int class_index = store.classIndex();
+    double[] gains = new double[num_attributes];
+
+    double entropy = computeEntropy(store.classCounts(rows, from, to));
+    final int num_instances = store.numInstances(rows, from, to);
+
+    if (m_ParallelScoring) {
+      final double node_entropy = entropy;
+      ParallelScoring.scoreAttributes(ParallelScoring.candidateAttributes(num_attributes, class_index), gains,
+          new ParallelScoring.AttributeScore() {
+            public double score(int index) throws Exception {
+              return ColumnStore.infoGain(node_entropy, store.contingencyTable(index, rows, from, to), num_instances, CredalDecisionTreeNPIM.this);
+            }
+          });
+    } else {
+      for (int i = 0; i < num_attributes; i++) {
+        if (i != class_index)
+          gains[i] = ColumnStore.infoGain(entropy, store.contingencyTable(i, rows, from, to), num_instances, this);
+      }
     }
-    return infoGain;
+
+    return gains;
   }
 
   /**
-   * Computes the entropy of a dataset.
-   * 
-   * @param data the data for which entropy is to be computed
-   * @return the entropy of the data's class distribution
+   * Computes the entropy of a class distribution.
+   *
+   * @param classCounts the class counts
+   * @return the entropy of the class distribution
    */
-  protected double computeEntropy(Instances data) throws Exception {
-    int num_classes = data.numClasses();
-    double [] classCounts = new double[num_classes];
-    Enumeration instEnum = data.enumerateInstances();
-    Instance instance;
-    int value;
-    double entropy;
-    
-    while (instEnum.hasMoreElements()) {
-      instance = (Instance) instEnum.nextElement();
-      value = (int) instance.classValue();
-      classCounts[value]++;
-    }
-    
-    entropy = E_ContingencyTables.entropyNPI(classCounts);
-    
-    return entropy;
-        
+  public double computeEntropy(double[] classCounts) throws Exception {
+
+    return E_ContingencyTables.entropyNPI(classCounts);
   }
     
 
@@ -553,12 +547,14 @@ public class CredalDecisionTreeNPIM extends CredalClassifier implements OptionHa
       return this.m_RootNode; 
   }
   
-    /** 
-   * 
-   * This function computes a utility measure of an IP model
-   * 
+  /**
+   * Computes the indices of the non-dominated class values for an instance,
+   * without updating the statistics.
+   * @param instance the instance
+   * @return the indices of the non-dominated class values
+   * @throws NoSupportForMissingValuesException 
    */
-  protected void updateCredalStatistics(Instance instance) throws NoSupportForMissingValuesException{
+  public int[] nonDominatedIndexSet(Instance instance) throws NoSupportForMissingValuesException{
 
       double[] frequency=this.frequencyForInstance(instance);
 
@@ -578,9 +574,18 @@ public class CredalDecisionTreeNPIM extends CredalClassifier implements OptionHa
             nonDominatedIndexSet[cont++]=i;
       }
 
-      this.updateStatistics(nonDominatedIndexSet, instance);
+      return nonDominatedIndexSet;
 
 
+  }
+
+    /** 
+   * 
+   * This function computes a utility measure of an IP model
+   * 
+   */
+  protected void updateCredalStatistics(Instance instance) throws NoSupportForMissingValuesException{
+      this.updateStatistics(this.nonDominatedIndexSet(instance), instance);
   }
 
   public boolean[] computeNonDominatedSet(double[] frequency) {
@@ -231,6 +231,14 @@ public class CredalDecisionTree_CostErrors extends CostSensitiveCredalClassifier
         return output;
     }
     
+    /**
+     * The nodes of the tree can score their attributes in parallel.
+     * @return true
+     */
+    protected boolean supportsParallelScoring() {
+        return true;
+    }
+
     /**
     * Gets the attribute used for splitting in a certain node
     * @param data the instances of the node
@@ -243,11 +251,20 @@ public class CredalDecisionTree_CostErrors extends CostSensitiveCredalClassifier
     
         // Compute attribute with maximum information gain.
         infoGains = new double[data.numAttributes()];
-        Enumeration attEnum = data.enumerateAttributes();
-        
-        while (attEnum.hasMoreElements()) {
-            Attribute att = (Attribute) attEnum.nextElement();
-            infoGains[att.index()] = computeInfoGain(data, att);
+        if (m_ParallelScoring) {
+            final Instances node_data = data;
+            ParallelScoring.scoreAttributes(ParallelScoring.candidateAttributes(data.numAttributes(), data.classIndex()), infoGains,
+                    new ParallelScoring.AttributeScore() {
+                        public double score(int index) throws Exception {
+                            return computeInfoGain(node_data, node_data.attribute(index));
+                        }
+                    });
+        } else {
+            Enumeration attEnum = data.enumerateAttributes();
+            while (attEnum.hasMoreElements()) {
+                Attribute att = (Attribute) attEnum.nextElement();
+                infoGains[att.index()] = computeInfoGain(data, att);
+            }
         }
         
         infoGains[data.classIndex()]=-Double.MAX_VALUE;
@@ -516,12 +533,13 @@ public class CredalDecisionTree_CostErrors extends CostSensitiveCredalClassifier
     }
     
     /**
-    * This function updates the evaluation metrics of the Imprecise Classifier given an instance 
-    * @param instance the given instance
-    * @throws NoSupportForMissingValuesException 
-    */
-  
-    private void updateCredalStatistics(Instance instance) throws NoSupportForMissingValuesException{
+     * Computes the indices of the non-dominated class values for an instance,
+     * without updating the statistics.
+     * @param instance the instance
+     * @return the indices of the non-dominated class values
+     * @throws NoSupportForMissingValuesException 
+     */
+    public int[] nonDominatedIndexSet(Instance instance) throws NoSupportForMissingValuesException{
         double[] frequency=this.frequencyForInstance(instance);
 
         boolean[] nonDominatedSet= computeNonDominatedSet(frequency);
@@ -530,8 +548,18 @@ public class CredalDecisionTree_CostErrors extends CostSensitiveCredalClassifier
         int[] nonDominatedIndexSet =getNonDominatedIndexSet(nonDominatedSet);
 
       
-        this.updateStatistics(nonDominatedIndexSet, instance);
+        return nonDominatedIndexSet;
+
+    }
 
+    /**
+    * This function updates the evaluation metrics of the Imprecise Classifier given an instance 
+    * @param instance the given instance
+    * @throws NoSupportForMissingValuesException 
+    */
+  
+    private void updateCredalStatistics(Instance instance) throws NoSupportForMissingValuesException{
+        this.updateStatistics(this.nonDominatedIndexSet(instance), instance);
     }
     
     /**
@@ -29,7 +29,7 @@ import static weka.classifiers.credalClassifiers.CredalDecisionTree_CostErrors_W
  *
  * @author Serafin
  */
-public class CredalDecisionTree_CostErrors_Weighted extends CostSensitiveCredalClassifier implements OptionHandler, AdditionalMeasureProducer{
+public class CredalDecisionTree_CostErrors_Weighted extends CostSensitiveCredalClassifier implements OptionHandler, AdditionalMeasureProducer, NodeTreeClassifier{
     /* Field that contains the tree structure*/
     NodeTree m_RootNode;
     
@@ -235,6 +235,14 @@ public class CredalDecisionTree_CostErrors_Weighted extends CostSensitiveCredalC
         return output;
     }
     
+    /**
+     * The nodes of the tree can score their attributes in parallel.
+     * @return true
+     */
+    protected boolean supportsParallelScoring() {
+        return true;
+    }
+
             /**
     * Gets the attribute used for splitting in a certain node
     * @param data the instances of the node
@@ -247,12 +255,21 @@ public class CredalDecisionTree_CostErrors_Weighted extends CostSensitiveCredalC
     
         // Compute attribute with maximum information gain.
         infoGains = new double[data.numAttributes()];
-        Enumeration attEnum = data.enumerateAttributes();
-        
-        //Compute the information gain for each attribute
-        while (attEnum.hasMoreElements()) {
-            Attribute att = (Attribute) attEnum.nextElement();
-            infoGains[att.index()] = computeInfoGain(data, att);
+        if (m_ParallelScoring) {
+            final Instances node_data = data;
+            ParallelScoring.scoreAttributes(ParallelScoring.candidateAttributes(data.numAttributes(), data.classIndex()), infoGains,
+                    new ParallelScoring.AttributeScore() {
+                        public double score(int index) throws Exception {
+                            return computeInfoGain(node_data, node_data.attribute(index));
+                        }
+                    });
+        } else {
+            Enumeration attEnum = data.enumerateAttributes();
+            //Compute the information gain for each attribute
+            while (attEnum.hasMoreElements()) {
+                Attribute att = (Attribute) attEnum.nextElement();
+                infoGains[att.index()] = computeInfoGain(data, att);
+            }
         }
         
         infoGains[data.classIndex()]=-Double.MAX_VALUE;
@@ -637,20 +654,31 @@ public class CredalDecisionTree_CostErrors_Weighted extends CostSensitiveCredalC
     }
     
     /**
-    * This function updates the evaluation metrics of the Imprecise Classifier given an instance 
-    * @param instance the given instance
-    * @throws NoSupportForMissingValuesException 
-    */
-  
-    private void updateCredalStatistics(Instance instance) throws NoSupportForMissingValuesException{
+     * Computes the indices of the non-dominated class values for an instance,
+     * without updating the statistics.
+     * @param instance the instance
+     * @return the indices of the non-dominated class values
+     * @throws NoSupportForMissingValuesException 
+     */
+    public int[] nonDominatedIndexSet(Instance instance) throws NoSupportForMissingValuesException{
 
         boolean[] non_dominated_states_set  = this.computeNonDominatedStatesSet(instance);       
 
         int[] nonDominatedIndexSet = getNonDominatedIndexSet(non_dominated_states_set);
 
 
-        this.updateStatistics(nonDominatedIndexSet, instance);
+        return nonDominatedIndexSet;
+
+    }
 
+    /**
+    * This function updates the evaluation metrics of the Imprecise Classifier given an instance 
+    * @param instance the given instance
+    * @throws NoSupportForMissingValuesException 
+    */
+  
+    private void updateCredalStatistics(Instance instance) throws NoSupportForMissingValuesException{
+        this.updateStatistics(this.nonDominatedIndexSet(instance), instance);
     }
     
      /**
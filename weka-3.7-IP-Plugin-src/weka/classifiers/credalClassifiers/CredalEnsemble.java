@@ -0,0 +1,38 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package weka.classifiers.credalClassifiers;
+
+import weka.classifiers.Classifier;
+import weka.core.Instance;
+
+/**
+ * Credal ensemble that can combine the predictions of any subset of its members,
+ * for example the members whose bootstrap sample does not contain an instance,
+ * to compute out-of-bag statistics.
+ */
+public interface CredalEnsemble {
+
+  /**
+   * Returns the indices of the non-dominated class values for an instance, combining
+   * only the predictions of some members. It does not update the statistics.
+   * @param instance the instance to be classified
+   * @param members the members whose predictions are combined, at least one
+   * @return the indices of the non-dominated class values, in increasing order
+   * @throws Exception if the set can't be computed
+   */
+  int[] nonDominatedIndexSet(Instance instance, Classifier[] members) throws Exception;
+}
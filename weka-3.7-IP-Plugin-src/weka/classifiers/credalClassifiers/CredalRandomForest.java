@@ -7,8 +7,8 @@ package weka.classifiers.credalClassifiers;
 
 import java.util.Enumeration;
 import java.util.Vector;
+import weka.classifiers.Classifier;
 import weka.classifiers.Evaluation;
-import weka.classifiers.meta.Bagging;
 import weka.core.AdditionalMeasureProducer;
 import weka.core.Capabilities;
 import weka.core.Instance;
@@ -24,7 +24,7 @@ import weka.core.Utils;
  *
  * @author EquipoAsus
  */
-public class CredalRandomForest extends CredalClassifier implements OptionHandler, AdditionalMeasureProducer, Randomizable{
+public class CredalRandomForest extends CredalClassifier implements OptionHandler, AdditionalMeasureProducer, Randomizable, CredalEnsemble{
   /** Number of trees in forest. */
   protected int m_numTrees = 100;
     
@@ -38,8 +38,20 @@ public class CredalRandomForest extends CredalClassifier implements OptionHandle
   /** Final number of features that were considered in last build. */
   protected int m_KValue = 0;
 
+  /** Number of trees built at the same time. */
+  protected int m_numExecutionSlots = 1;
+
+  /** Whether the out-of-bag measures are computed while the trees are built. */
+  protected boolean m_calcOutOfBag = false;
+
+  /** Number of trees added at each step of the growth, 0 to build all the trees at once. */
+  protected int m_growStep = 0;
+
+  /** Maximum proportion of out-of-bag sets changed by a step of the growth of a stable ensemble. */
+  protected double m_growTolerance = 0.01;
+
   /** The bagger. */
-  protected Bagging m_bagger = null;
+  protected CredalBagger m_bagger = null;
   
     /**
    * Returns a string describing classifier
@@ -180,6 +192,118 @@ public class CredalRandomForest extends CredalClassifier implements OptionHandle
   public int getSeed() {
     return m_randomSeed;
   }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of trees built, or evaluated on a batch of instances, at the same time "
+           + "(1 to do it sequentially). The results are the same for any number of execution slots.";
+  }
+
+  /**
+   * Set the number of trees built, or evaluated on a batch, at the same time.
+   *
+   * @param numSlots the number of execution slots
+   */
+  public void setNumExecutionSlots(int numSlots) {
+    m_numExecutionSlots = numSlots;
+  }
+
+  /**
+   * Gets the number of trees built, or evaluated on a batch, at the same time.
+   *
+   * @return the number of execution slots
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String calcOutOfBagTipText() {
+    return "Whether the out-of-bag measures are computed while the trees are built. Each training "
+           + "instance is classified by the trees whose bootstrap sample does not contain it.";
+  }
+
+  /**
+   * Set whether the out-of-bag measures are computed.
+   *
+   * @param calcOutOfBag true to compute them
+   */
+  public void setCalcOutOfBag(boolean calcOutOfBag) {
+    m_calcOutOfBag = calcOutOfBag;
+  }
+
+  /**
+   * Gets whether the out-of-bag measures are computed.
+   *
+   * @return true if they are computed
+   */
+  public boolean getCalcOutOfBag() {
+    return m_calcOutOfBag;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String growStepTipText() {
+    return "If positive, the ensemble starts with this number of trees and keeps adding as many "
+           + "until its out-of-bag non-dominated sets are stable, or it has numTrees trees.";
+  }
+
+  /**
+   * Set the number of trees added at each step of the growth.
+   *
+   * @param growStep the number of trees, 0 to build all the trees at once
+   */
+  public void setGrowStep(int growStep) {
+    m_growStep = growStep;
+  }
+
+  /**
+   * Gets the number of trees added at each step of the growth.
+   *
+   * @return the number of trees, 0 if all the trees are built at once
+   */
+  public int getGrowStep() {
+    return m_growStep;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String growToleranceTipText() {
+    return "The maximum proportion of training instances whose out-of-bag non-dominated set "
+           + "changes in a step of the growth for the ensemble to be stable.";
+  }
+
+  /**
+   * Set the tolerance of the growth.
+   *
+   * @param growTolerance the maximum proportion of changed sets
+   */
+  public void setGrowTolerance(double growTolerance) {
+    m_growTolerance = growTolerance;
+  }
+
+  /**
+   * Gets the tolerance of the growth.
+   *
+   * @return the maximum proportion of changed sets
+   */
+  public double getGrowTolerance() {
+    return m_growTolerance;
+  }
   
   /**
    * Returns an enumeration describing the available options.
@@ -203,6 +327,28 @@ public class CredalRandomForest extends CredalClassifier implements OptionHandle
 	+ "\t(default 1)",
 	"s", 1, "-s"));
 
+    newVector.addElement(new Option(
+	"\tNumber of trees built at the same time.\n"
+	+ "\t(default 1)",
+	"num-slots", 1, "-num-slots <num>"));
+
+    newVector.addElement(new Option(
+	"\tCompute the out-of-bag measures while the trees are built.",
+	"oob", 0, "-oob"));
+
+    newVector.addElement(new Option(
+	"\tNumber of trees added at each step of the growth. The ensemble\n"
+	+ "\tgrows until its out-of-bag sets are stable, up to the number\n"
+	+ "\tof trees. 0 builds all the trees at once.\n"
+	+ "\t(default 0)",
+	"grow-step", 1, "-grow-step <num>"));
+
+    newVector.addElement(new Option(
+	"\tMaximum proportion of out-of-bag sets changed by a step\n"
+	+ "\tof the growth of a stable ensemble.\n"
+	+ "\t(default 0.01)",
+	"grow-tolerance", 1, "-grow-tolerance <num>"));
+
     Enumeration enu = super.listOptions();
     
     while (enu.hasMoreElements()) {
@@ -233,6 +379,18 @@ public class CredalRandomForest extends CredalClassifier implements OptionHandle
     result.add("-s");
     result.add("" + getSeed());
     
+    result.add("-num-slots");
+    result.add("" + getNumExecutionSlots());
+    
+    if (getCalcOutOfBag())
+      result.add("-oob");
+    
+    result.add("-grow-step");
+    result.add("" + getGrowStep());
+    
+    result.add("-grow-tolerance");
+    result.add("" + getGrowTolerance());
+    
     options = super.getOptions();
     for (i = 0; i < options.length; i++)
       result.add(options[i]);
@@ -256,6 +414,24 @@ public class CredalRandomForest extends CredalClassifier implements OptionHandle
    *  Seed for random number generator.
    *  (default 1)</pre>
    * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of trees built at the same time.
+   *  (default 1)</pre>
+   * 
+   * <pre> -oob
+   *  Compute the out-of-bag measures while the trees are built.</pre>
+   * 
+   * <pre> -grow-step &lt;num&gt;
+   *  Number of trees added at each step of the growth. The ensemble
+   *  grows until its out-of-bag sets are stable, up to the number
+   *  of trees. 0 builds all the trees at once.
+   *  (default 0)</pre>
+   * 
+   * <pre> -grow-tolerance &lt;num&gt;
+   *  Maximum proportion of out-of-bag sets changed by a step
+   *  of the growth of a stable ensemble.
+   *  (default 0.01)</pre>
+   * 
    * <pre> -depth &lt;num&gt;
    *  The maximum depth of the trees, 0 for unlimited.
    *  (default 0)</pre>
@@ -293,6 +469,29 @@ public class CredalRandomForest extends CredalClassifier implements OptionHandle
       setSeed(1);
     }
     
+    tmpStr = Utils.getOption("num-slots", options);
+    if (tmpStr.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(tmpStr));
+    } else {
+      setNumExecutionSlots(1);
+    }
+    
+    setCalcOutOfBag(Utils.getFlag("oob", options));
+    
+    tmpStr = Utils.getOption("grow-step", options);
+    if (tmpStr.length() != 0) {
+      setGrowStep(Integer.parseInt(tmpStr));
+    } else {
+      setGrowStep(0);
+    }
+    
+    tmpStr = Utils.getOption("grow-tolerance", options);
+    if (tmpStr.length() != 0) {
+      setGrowTolerance(Double.parseDouble(tmpStr));
+    } else {
+      setGrowTolerance(0.01);
+    }
+    
     super.setOptions(options);
     
     Utils.checkForRemainingOptions(options);
@@ -305,11 +504,14 @@ public class CredalRandomForest extends CredalClassifier implements OptionHandle
     // can classifier handle the data?
         getCapabilities().testWithFail(data);
 
-    // remove instances with missing class
-        data = new Instances(data);
-        data.deleteWithMissingClass();
+    // remove instances with missing class. The trees only read the data, through a
+    // store shared by all of them, so it is only copied if there is any
+        if (data.attributeStats(data.classIndex()).missingCount > 0) {
+            data = new Instances(data);
+            data.deleteWithMissingClass();
+        }
     
-        m_bagger = new Bagging();
+        m_bagger = new CredalBagger();
         CredalRandomTree rTree = new CredalRandomTree();
 
     // set up the random tree options
@@ -323,11 +525,91 @@ public class CredalRandomForest extends CredalClassifier implements OptionHandle
     // set up the bagger and build the forest
     m_bagger.setClassifier(rTree);
     m_bagger.setSeed(m_randomSeed);
-    m_bagger.setNumIterations(m_numTrees);
-    m_bagger.setCalcOutOfBag(false);
+    m_bagger.setNumIterations(m_growStep > 0 ? Math.min(m_growStep, m_numTrees) : m_numTrees);
+    m_bagger.setNumExecutionSlots(m_numExecutionSlots);
+    m_bagger.setCalcOutOfBag(m_calcOutOfBag || m_growStep > 0);
     m_bagger.buildClassifier(data);
+    
+    if (m_growStep > 0) {
+        m_bagger.growUntilStable(data, this, m_growStep, m_numTrees, m_growTolerance);
+    }
+    
+    if (m_calcOutOfBag) {
+        m_bagger.computeOutOfBagStatistics(data, this);
+    }
+  }
+
+  /**
+   * Adds trees to the ensemble already built. The ensemble then has the trees that a
+   * build from scratch with that many more trees would have, and numTrees is increased
+   * accordingly.
+   *
+   * @param data the training data the ensemble was built with
+   * @param numTrees the number of trees to add
+   * @throws Exception if the ensemble has not been built or some tree can't be built
+   */
+  public void addTrees(Instances data, int numTrees) throws Exception {
+    if (m_bagger == null)
+      throw new Exception("The ensemble has not been built!");
+
+    // the trees were built without the instances with missing class
+    if (data.attributeStats(data.classIndex()).missingCount > 0) {
+      data = new Instances(data);
+      data.deleteWithMissingClass();
+    }
+
+    m_bagger.addMembers(data, numTrees);
+    m_numTrees = m_bagger.getNumIterations();
+    
+    if (m_calcOutOfBag) {
+      m_bagger.computeOutOfBagStatistics(data, this);
+    }
   }
+
+  /**
+   * Returns the number of trees built, which is lower than numTrees if the
+   * growth of the ensemble stopped early.
+   * @return the number of trees
+   */
+  public double measureNumTreesBuilt() {
+    return m_bagger == null ? 0 : m_bagger.getNumIterations();
+  }
+
+    
+  /**
+   * Returns an enumeration of the additional measure names, including the
+   * out-of-bag measures
+   * @return an enumeration of the measure names
+   */
+  public Enumeration enumerateMeasures() {
+    Vector newVector = new Vector();
+
+    Enumeration enume = super.enumerateMeasures();
+    while(enume.hasMoreElements())
+        newVector.add(enume.nextElement());
     
+    newVector.addAll(CredalBagger.outOfBagMeasureNames(newVector.elements()));
+    newVector.addElement("measureNumTreesBuilt");
+
+    return newVector.elements();
+  }
+  
+  /**
+   * Returns the value of the named measure
+   * @param additionalMeasureName the name of the measure to query for its value
+   * @return the value of the named measure
+   * @throws IllegalArgumentException if the named measure is not supported
+   */
+  public double getMeasure(String additionalMeasureName) {
+    if (CredalBagger.isOutOfBagMeasure(additionalMeasureName)) {
+      return m_bagger == null ? Double.NaN : m_bagger.getOutOfBagMeasure(additionalMeasureName);
+    } else if (additionalMeasureName.compareToIgnoreCase("measureNumTreesBuilt") == 0) {
+      return measureNumTreesBuilt();
+    }
+
+    return super.getMeasure(additionalMeasureName);
+  }
+  
      /**
    * Computes class distribution for instance using decision tree.
    *
@@ -352,64 +634,95 @@ public class CredalRandomForest extends CredalClassifier implements OptionHandle
     return probs;
   }
 
-    private void updateCredalStatistics(Instance instance) throws NoSupportForMissingValuesException {
+    /**
+     * Computes the indices of the non-dominated class values for an instance,
+     * without updating the statistics.
+     * @param instance the instance
+     * @return the indices of the non-dominated class values
+     * @throws NoSupportForMissingValuesException 
+     */
+    public int[] nonDominatedIndexSet(Instance instance) throws NoSupportForMissingValuesException {
+        return this.nonDominatedIndexSet(instance, m_bagger.getClassifiers());
+    }
+
+  /**
+   * Computes the indices of the non-dominated class values for an instance, combining only
+   * the predictions of some trees, without updating the statistics.
+   * @param instance the instance
+   * @param members the trees whose predictions are combined
+   * @return the indices of the non-dominated class values
+   * @throws NoSupportForMissingValuesException 
+   */
+    public int[] nonDominatedIndexSet(Instance instance, Classifier[] members) throws NoSupportForMissingValuesException {
         CredalRandomTree tree;
         int num_classes = instance.numClasses();
-        boolean[] non_dominated_states = new boolean[num_classes];
         boolean[] partial_non_dominated_states;
-        double[] frequency;
-        boolean all_dominated;
-        boolean non_dominated;
         boolean partial_non_dominated;
-        int[] nonDominatedIndexSet;
-        int times, min_times;
-        int[] num_times_dominated = new int[num_classes]; 
-        /*
-        for(int j = 0; j < num_classes; j++)
-            non_dominated_states[j] = true;
-       */
-        for(int i = 0; i < m_numTrees; i++){
-            tree = (CredalRandomTree) m_bagger.getClassifier(i);
-            frequency = tree.frequencyForInstance(instance);
-            partial_non_dominated_states = tree.computeNonDominatedSet(frequency);
+        double[] num_times_dominated = new double[num_classes]; 
+
+        for(int i = 0; i < members.length; i++){
+            tree = (CredalRandomTree) members[i];
+            partial_non_dominated_states = tree.computeNonDominatedStatesSet(instance);
             
             for(int j = 0; j < num_classes; j++){
                 partial_non_dominated = partial_non_dominated_states[j];
                                     
-                if(!partial_non_dominated){
-          //         non_dominated_states[j] = false;
+                if(!partial_non_dominated)
                    num_times_dominated[j]++;
-                }
-                
             }
         }
         
-        //all_dominated = checkAllDominated(non_dominated_states);
+        return this.nonDominatedIndexSet(num_times_dominated);
+    }
+
+  /**
+   * Returns the non-dominated class values of every instance of a batch, without
+   * updating the statistics. Each tree classifies the whole batch before the next
+   * one, and with several execution slots the trees are evaluated in parallel chunks.
+   * The sets are the same as the ones of nonDominatedIndexSet.
+   * @param batch the instances
+   * @return for each instance, the indices of its non-dominated class values
+   * @throws Exception if some set can't be computed
+   */
+    public int[][] nonDominatedSets(Instances batch) throws Exception {
+        return CredalVoting.nonDominatedSets(m_bagger.getClassifiers(), batch, m_numExecutionSlots, new CredalVoting.SetRule(){
+            public int[] nonDominatedIndexSet(double[] times_dominated){
+                return CredalRandomForest.this.nonDominatedIndexSet(times_dominated);
+            }
+        });
+    }
+
+    /**
+     * Computes the indices of the non-dominated class values from the number of trees
+     * for which each class value is dominated. The non-dominated class values are
+     * those dominated the minimum number of times.
+     * @param num_times_dominated the number of trees for which each class value is dominated
+     * @return the indices of the non-dominated class values
+     */
+    protected int[] nonDominatedIndexSet(double[] num_times_dominated) {
+        int num_classes = num_times_dominated.length;
+        boolean[] non_dominated_states = new boolean[num_classes];
+        boolean non_dominated;
+        int[] nonDominatedIndexSet;
+        double times, min_times;
         
-        //if(all_dominated){
-            min_times = num_times_dominated[0];
+        min_times = num_times_dominated[0];
             
-            for(int j = 1; j < num_classes; j++){
-               times = num_times_dominated[j];
+        for(int j = 1; j < num_classes; j++){
+           times = num_times_dominated[j];
                
-               if(times < min_times)
-                   min_times = times;
+           if(times < min_times)
+               min_times = times;
                
-            }
+        }
             
-            for(int j = 0; j < num_classes; j++){
-                times = num_times_dominated[j];
+        for(int j = 0; j < num_classes; j++){
+            times = num_times_dominated[j];
                 
-                if(times == min_times)
-                    non_dominated_states[j] = true;
+            if(times == min_times)
+                non_dominated_states[j] = true;
 
-            }
-           /*
-            for(int j = 0; j < num_classes; j++)
-               non_dominated_states[j] = true;
-           */
-        //}   
-        
+        }
         
         int num_non_dominated_states = 0;
         
@@ -432,9 +745,13 @@ public class CredalRandomForest extends CredalClassifier implements OptionHandle
             }
         }
         
-        this.updateStatistics(nonDominatedIndexSet, instance);
+        return nonDominatedIndexSet;
         
     }
+
+    private void updateCredalStatistics(Instance instance) throws NoSupportForMissingValuesException {
+        this.updateStatistics(this.nonDominatedIndexSet(instance), instance);
+    }
     
   @Override
     public double classifyInstance(Instance instance) 
@@ -10,7 +10,12 @@ import java.util.Enumeration;
 import java.util.Vector;
 import java.util.Random;
 import weka.classifiers.Evaluation;
+import weka.classifiers.trees.ColumnStore;
+import weka.classifiers.trees.ColumnStoreClassifier;
+import weka.classifiers.trees.FlatTree;
 import weka.classifiers.trees.NodeTree;
+import weka.classifiers.trees.NodeTreeClassifier;
+import weka.classifiers.trees.ParallelScoring;
 import weka.core.AdditionalMeasureProducer;
 import weka.core.Attribute;
 import weka.core.Capabilities;
@@ -20,6 +25,7 @@ import weka.core.Instances;
 import weka.core.NoSupportForMissingValuesException;
 import weka.core.Option;
 import weka.core.OptionHandler;
+import weka.core.Randomizable;
 import weka.core.Tag;
 import weka.core.TechnicalInformation;
 import weka.core.Utils;
@@ -28,7 +34,7 @@ import weka.core.Utils;
  *
  * @author Serafin
  */
-public class CredalRandomTree extends CredalClassifier implements OptionHandler, AdditionalMeasureProducer{
+public class CredalRandomTree extends CredalClassifier implements OptionHandler, AdditionalMeasureProducer, Randomizable, ColumnStoreClassifier, ColumnStore.ClassEntropy, NodeTreeClassifier{
      /* Field that contains the tree structure*/
   NodeTree m_RootNode;
   
@@ -64,6 +70,20 @@ public class CredalRandomTree extends CredalClassifier implements OptionHandler,
    /** The number of attributes considered for a split. */
   protected int m_KValue = 0;
 
+  /* Seed of the random choice of the attributes considered for a split, set by the forest*/
+  int m_Seed=1;
+
+  /* Random number generator of the tree being built, seeded with m_Seed, so that a tree
+     is the same whatever the thread or the order in which the trees of a forest are built*/
+  transient Random m_Random;
+
+  /* Buffer with the candidate attributes of the node being split, reused by all the nodes*/
+  transient int[] m_AttIndicesWindow;
+
+  /* Compiled form of the tree used for classifying instances. It is not serialized and it is
+     compiled again when it is needed.*/
+  transient volatile FlatTree m_FlatTree;
+
  /**
    * Returns an instance of a TechnicalInformation object, containing 
    * detailed information about the technical background of this class,
@@ -235,19 +255,56 @@ public class CredalRandomTree extends CredalClassifier implements OptionHandler,
   }
 
   
-  protected Attribute getAttributeToRamify(Instances data, int level) throws Exception{
-    int num_attributes = data.numAttributes();
+  /**
+   * The nodes of the tree can score their attributes in parallel.
+   * @return true
+   */
+  protected boolean supportsParallelScoring() {
+    return true;
+  }
+
+   /**
+   * Set the seed for the random choice of the attributes considered for a split.
+   *
+   * @param seed the seed 
+   */
+  public void setSeed(int seed) {
+    m_Seed = seed;
+  }
+  
+  /**
+   * Gets the seed for the random choice of the attributes considered for a split.
+   *
+   * @return the seed
+   */
+  public int getSeed() {
+    return m_Seed;
+  }
+
+  /**
+   * It computes the attribute to ramify in a certain node
+   * @param store the training data
+   * @param rows the row indices, the instances of the node are those in [from, to)
+   * @param from the first position of the node
+   * @param to the position after the last one of the node
+   * @param level the level of the tree
+   * @return the attribute to remify
+   * @throws Exception 
+   */
+
+  protected Attribute getAttributeToRamify(final ColumnStore store, final int[] rows, final int from, final int to, int level) throws Exception{
+    int num_attributes = store.numAttributes();
     Attribute selected;
-    Attribute attribute;
     int index_max_gain;
     double info_gain;
-    int class_index = data.classIndex();
+    int class_index = store.classIndex();
     int chosen_index, att_index;
-    Random random = new Random();
-    int[] attIndicesWindow = new int[num_attributes - 1];
-    int window_size = data.numAttributes() - 1;
-    infoGains = new double[num_attributes];
+    Random random = m_Random;
+    int[] attIndicesWindow = m_AttIndicesWindow;
+    int window_size = num_attributes - 1;
     int j = 0;
+    double entropy = computeEntropy(store.classCounts(rows, from, to));
+    final int num_instances = store.numInstances(rows, from, to);
     
     for(int i = 0; i < num_attributes; i++){
          infoGains[i]=-Double.MAX_VALUE;
@@ -267,13 +324,27 @@ public class CredalRandomTree extends CredalClassifier implements OptionHandler,
         attIndicesWindow[window_size - 1] = att_index;
         window_size--;
         
-        attribute = data.attribute(att_index);
-        info_gain = computeInfoGain(data, attribute);
-        infoGains[att_index] = info_gain;
+        if (!m_ParallelScoring) {
+            info_gain = ColumnStore.infoGain(entropy, store.contingencyTable(att_index, rows, from, to), num_instances, this);
+            infoGains[att_index] = info_gain;
+        }
+    }
+    
+    if (m_ParallelScoring) {
+        // the sampled attributes have been shifted to the end of the window
+        int[] sampled = new int[num_attributes - 1 - window_size];
+        System.arraycopy(attIndicesWindow, window_size, sampled, 0, sampled.length);
+        
+        final double node_entropy = entropy;
+        ParallelScoring.scoreAttributes(sampled, infoGains, new ParallelScoring.AttributeScore() {
+            public double score(int index) throws Exception {
+                return ColumnStore.infoGain(node_entropy, store.contingencyTable(index, rows, from, to), num_instances, CredalRandomTree.this);
+            }
+        });
     }
         
     index_max_gain = Utils.maxIndex(infoGains);
-    selected = data.attribute(index_max_gain);
+    selected = store.attribute(index_max_gain);
     
     return selected;
 
@@ -285,19 +356,41 @@ public class CredalRandomTree extends CredalClassifier implements OptionHandler,
    * @exception Exception if classifier can't be built successfully
    */
   public void buildClassifier(Instances data) throws Exception {
-    initStats();
-    
-    m_KValue = (int) Utils.log2(data.numAttributes()) + 1;
     // can classifier handle the data?
     getCapabilities().testWithFail(data);
 
-    // remove instances with missing class
-    data = new Instances(data);
-    data.deleteWithMissingClass();
+    // encode the data once, leaving out the instances with missing class
+    buildClassifier(new ColumnStore(data));
+  }
+
+  /**
+   * Builds the tree from encoded training data, which may be a sample of a store
+   * shared by the trees of an ensemble.
+   *
+   * @param store the training data
+   * @exception Exception if classifier can't be built successfully
+   */
+  public void buildClassifier(ColumnStore store) throws Exception {
+
+    initStats();
+    
+    m_KValue = (int) Utils.log2(store.numAttributes()) + 1;
+    int[] rows = store.getRowIndices();
+    
+    m_Random = new Random(m_Seed);
+    m_AttIndicesWindow = new int[store.numAttributes() - 1];
+    infoGains = new double[store.numAttributes()];
     
     this.m_RootNode=new NodeTree();
     
-    makeTree(this.m_RootNode,data,0);
+    try {
+      makeTree(this.m_RootNode,store,rows,0,rows.length,0);
+    } finally {
+      m_Random = null;
+      m_AttIndicesWindow = null;
+    }
+    
+    m_FlatTree = compileTree();
   }
 
   /* Computes class distribution for instance using decision tree.
@@ -398,111 +491,86 @@ public class CredalRandomTree extends CredalClassifier implements OptionHandler,
   }
 
   
-  /**
-   * Splits a dataset according to the values of a nominal attribute.
-   *
-   * @param data the data which is to be split
-   * @param att the attribute to be used for splitting
-   * @return the sets of instances produced by the split
-   */
-   protected Instances[] splitData(Instances data, Attribute att) {
-
-    Instances[] splitData = new Instances[att.numValues()];
-    for (int j = 0; j < att.numValues(); j++) {
-      splitData[j] = new Instances(data, data.numInstances());
-    }
-    Enumeration instEnum = data.enumerateInstances();
-    while (instEnum.hasMoreElements()) {
-      Instance inst = (Instance) instEnum.nextElement();
-      splitData[(int) inst.value(att)].add(inst);
-    }
-    for (int i = 0; i < splitData.length; i++) {
-      splitData[i].compactify();
-    }
-    return splitData;
-  }
   
   
    
    
-  protected void computeClassDistribution(NodeTree node, Instances data){
-      //node.setDistribution(new double[data.numClasses()]);
-      node.setFrequency(new double[data.numClasses()]);
-      Enumeration instEnum = data.enumerateInstances();
-      while (instEnum.hasMoreElements()) {
-        Instance inst = (Instance) instEnum.nextElement();
-        //node.getDistribution()[(int) inst.classValue()]++;
-        node.getFrequency()[(int) inst.classValue()]++;
-      }
-      //node.setSupport(data.numInstances());
-
+  /**
+   * Compute the frequencies for the class values in a node given its instances 
+   * @param node the node
+   * @param store the training data
+   * @param rows the row indices, the instances of the node are those in [from, to)
+   * @param from the first position of the node
+   * @param to the position after the last one of the node
+   */ 
+  protected void computeClassDistribution(NodeTree node, ColumnStore store, int[] rows, int from, int to){
+      node.setFrequency(store.classCounts(rows, from, to));
   }
    
-  public boolean stopCriterion(Attribute m_Attribute, int level, Instances data){
+  /**
+   * It checks whether it is satified the stop criterion for a cetain attribute and level in a node
+   * @param m_Attribute the attribute
+   * @param level the level
+   * @return if the criterion holds. 
+   */
+   
+  public boolean stopCriterion(Attribute m_Attribute, int level){
       return m_StopLevel==-1 || Utils.grOrEq(0,infoGains[m_Attribute.index()]) ||  (m_StopLevel>0 && m_StopLevel==(level));
   }
    
   /**
    * Method for building an IPTree tree.
+   * The instances of the node are a range of the row indices, which is reordered
+   * in place to give the ranges of the successors.
    *
-   * @param data the training data
+   * @param node the node to be built
+   * @param store the training data
+   * @param rows the row indices, the instances of the node are those in [from, to)
+   * @param from the first position of the node
+   * @param to the position after the last one of the node
+   * @param level the level of the node
    * @exception Exception if decision tree can't be built successfully
    */
-  void makeTree(NodeTree node, Instances data, int level) throws Exception {
+  void makeTree(NodeTree node, ColumnStore store, int[] rows, int from, int to, int level) throws Exception {
 
     // Check if no instances have reached this node.
-    if (data.numInstances() == 0) {
+    if (from == to) {
       node.setAttribute(null);
-      //node.setClassAttribute(data.classAttribute());      
-      //node.setClassValue(Instance.missingValue());
-      //node.setDistribution( new double[data.numClasses()]);
-      node.setFrequency( new double[data.numClasses()]);
-      //node.setSupport(0);
+      node.setFrequency( new double[store.numClasses()]);
       return;
     }
 
-    //node.setClassAttribute(data.classAttribute());
-    
-    Attribute m_Attribute= this.getAttributeToRamify(data, level);
+    Attribute m_Attribute= this.getAttributeToRamify(store, rows, from, to, level);
     
     // Make leaf if information gain is zero. 
     // Otherwise create successors.
-    //if (this.getStopLevel()==-1 || Utils.eq(infoGains[m_Attribute.index()], 0) ||  (this.getStopLevel()>0 && this.getStopLevel()==(level))) {
-    if (stopCriterion(m_Attribute, level, data)){
+    if (stopCriterion(m_Attribute, level)){
       
       node.setAttribute(null);
-      //node.setClassAttribute(data.classAttribute());
       
-      this.computeClassDistribution(node,data);      
+      this.computeClassDistribution(node,store,rows,from,to);      
       
-      //node.normalize();
-      //node.setClassValue(node.getMaxDistributionIndex());
     } else {
 
       node.setAttribute(m_Attribute);
       
-      //this.computeClassDistribution(node,data);        
-      
-      Instances[] splitData = splitData(data, m_Attribute);
+      // group the rows of the node by the value of the split attribute
+      int[] bounds = store.partition(m_Attribute.index(), rows, from, to);
           
-      
       for (int j = 0; j < m_Attribute.numValues(); j++) {
         NodeTree newnode=new NodeTree();
         node.setSuccesors(j,newnode);
         
-        if (!m_MisclassifiedAllowed && splitData[j].numInstances()==0){
+        if (!m_MisclassifiedAllowed && bounds[j]==bounds[j+1]){
               if (node.getFrequency()==null)
-                  this.computeClassDistribution(node,data);
+                  this.computeClassDistribution(node,store,rows,from,to);
           
               node.getSuccesors(j).setAttribute(null);
-              //node.getSuccesors(j).setClassAttribute(data.classAttribute());
 
-              this.computeClassDistribution(node.getSuccesors(j),data);      
+              this.computeClassDistribution(node.getSuccesors(j),store,rows,from,to);      
 
-              //node.getSuccesors(j).normalize();
-              //node.getSuccesors(j).setClassValue(node.getMaxDistributionIndex());
         }else{
-            makeTree(node.getSuccesors(j),splitData[j],level+1);
+            makeTree(node.getSuccesors(j),store,rows,bounds[j],bounds[j+1],level+1);
         }
         
       }
@@ -511,52 +579,69 @@ public class CredalRandomTree extends CredalClassifier implements OptionHandler,
 
 
   /**
-   * Computes information gain for an attribute.
+   * Computes the entropy of a class distribution.
    *
-   * @param data the data for which info gain is to be computed
-   * @param att the attribute
-   * @return the information gain for the given attribute and data
+   * @param classCounts the class counts
+   * @return the entropy of the class distribution
    */
-  public double computeInfoGain(Instances data, Attribute att) 
-    throws Exception {
-
-    double infoGain = computeEntropy(data);
-    Instances[] splitData = splitData(data, att);
-    for (int j = 0; j < att.numValues(); j++) {
-          if (splitData[j].numInstances() > 0) {
-            infoGain -= ((double) splitData[j].numInstances() /
-                         (double) data.numInstances()) *
-              computeEntropy(splitData[j]);
-          }
-    }
-    return infoGain;
-  }
+  public double computeEntropy(double[] classCounts) throws Exception {
 
-  /**
-   * Computes the entropy of a dataset.
-   * 
-   * @param data the data for which entropy is to be computed
-   * @return the entropy of the data's class distribution
-   */
-  protected double computeEntropy(Instances data) throws Exception {
-
-    double [] classCounts = new double[data.numClasses()];
-    Enumeration instEnum = data.enumerateInstances();
-    while (instEnum.hasMoreElements()) {
-      Instance inst = (Instance) instEnum.nextElement();
-      classCounts[(int) inst.classValue()]++;
-    }
-    
     if (this.m_SplitMetric==CredalDecisionTree.IMPRECISE_ENTROPY)
         return E_ContingencyTables.entropyImprecise(classCounts,this.getSValue());
     else
         return 0.0;
-        
   }
     
 
  
-    public NodeTree getRootNode(){
+    /**
+   * Returns the compiled form of the tree, compiling it if needed (for example, after
+   * the classifier has been deserialized or the parameter s has been changed).
+   * @return the compiled tree
+   */
+  public FlatTree getFlatTree() {
+    FlatTree tree = m_FlatTree;
+
+    if (tree == null || tree.getSValue() != this.getSValue()) {
+      tree = compileTree();
+      m_FlatTree = tree;
+    }
+    return tree;
+  }
+
+  /**
+   * Compiles the tree and computes the non-dominated class values of each leaf.
+   * @return the compiled tree
+   */
+  protected FlatTree compileTree() {
+    FlatTree tree = new FlatTree(this.m_RootNode);
+    int[][] sets = new int[tree.numLeaves()][];
+
+    for (int leaf = 0; leaf < sets.length; leaf++)
+      sets[leaf] = getNonDominatedIndexSet(computeNonDominatedSet(tree.getFrequencies(), tree.frequencyOffset(leaf), tree.numClasses()));
+
+    tree.setNonDominatedSets(sets, this.getSValue());
+    return tree;
+  }
+
+  /**
+   * Returns the non-dominated class values for an instance, stored in the leaf that it reaches.
+   * @param instance the instance
+   * @return the indices of the non-dominated class values. The array must not be modified.
+   * @throws NoSupportForMissingValuesException if the instance has missing values
+   */
+  public int[] nonDominatedIndexSet(Instance instance) throws NoSupportForMissingValuesException {
+
+    if (instance.hasMissingValue()) {
+      throw new NoSupportForMissingValuesException("IPTree: no missing values, "
+                                                   + "please.");
+    }
+
+    FlatTree tree = this.getFlatTree();
+    return tree.nonDominatedSet(tree.leaf(instance));
+  }
+
+  public NodeTree getRootNode(){
       return this.m_RootNode; 
   }
   
@@ -571,41 +656,57 @@ public class CredalRandomTree extends CredalClassifier implements OptionHandler,
    */
   private void updateCredalStatistics(Instance instance) throws NoSupportForMissingValuesException{
 
-      double[] frequency=this.frequencyForInstance(instance);
+      // the non-dominated set of every leaf is computed when the tree is compiled
+      int[] nonDominatedIndexSet = this.nonDominatedIndexSet(instance);
 
-      boolean[] nonDominatedSet= computeNonDominatedSet(frequency);
+      this.updateStatistics(nonDominatedIndexSet, instance);
 
-      int cont=0;
-      for (int i=0; i<nonDominatedSet.length; i++){
-        if (nonDominatedSet[i])
-            cont++;
-      }
 
-      int[] nonDominatedIndexSet = new int[cont];
+  }
 
-      cont=0;
-      for (int i=0; i<nonDominatedSet.length; i++){
-        if (nonDominatedSet[i])
-            nonDominatedIndexSet[cont++]=i;
-      }
+  /**
+   * Compute the non-dominated states set for an instance, using the compiled tree
+   * @param instance the instance
+   * @return a boolean vector, where the i-th component is equal to true if the i-th class value is non-dominated
+   * @throws NoSupportForMissingValuesException if the instance has missing values
+   */
+  public boolean[] computeNonDominatedStatesSet(Instance instance) throws NoSupportForMissingValuesException {
 
-      this.updateStatistics(nonDominatedIndexSet, instance);
+    int[] non_dominated_index_set = this.nonDominatedIndexSet(instance);
+    boolean[] non_dominated_states = new boolean[instance.numClasses()];
 
+    for (int i = 0; i < non_dominated_index_set.length; i++)
+      non_dominated_states[non_dominated_index_set[i]] = true;
 
+    return non_dominated_states;
   }
 
   public boolean[] computeNonDominatedSet(double[] frequency) {
-    double sum=Utils.sum(frequency);
-    boolean[] nonDominatedSet= new boolean[frequency.length];
+    return computeNonDominatedSet(frequency, 0, frequency.length);
+  }
+
+  /**
+   * Compute the non dominates states set given the frequencies of the class values stored
+   * in a block of an array, as the leaf frequencies of the compiled tree.
+   * @param frequencies the array with the frequencies
+   * @param offset the position of the frequency of the first class value
+   * @param num_classes the number of class values
+   * @return a boolean vector, where the i-th component is equal to true if the i-th class value is non-dominated
+   */
+  public boolean[] computeNonDominatedSet(double[] frequencies, int offset, int num_classes) {
+    double sum=0;
+    for (int i=0; i<num_classes; i++)
+        sum+=frequencies[offset+i];
+    boolean[] nonDominatedSet= new boolean[num_classes];
 
-    for (int k=0; k<frequency.length; k++){
+    for (int k=0; k<num_classes; k++){
         double maxPInf=Double.NEGATIVE_INFINITY;
 
-        for (int i=0; i<frequency.length; i++){
+        for (int i=0; i<num_classes; i++){
             if (i!=k){
                 double pInf=0.0;
                 if (this.m_SplitMetric==IMPRECISE_ENTROPY)
-                    pInf=frequency[i]/sum;
+                    pInf=frequencies[offset+i]/sum;
 
                 if (pInf>maxPInf)
                     maxPInf=pInf;
@@ -614,7 +715,7 @@ public class CredalRandomTree extends CredalClassifier implements OptionHandler,
 
         double pSup=0.0;
         if (this.m_SplitMetric==IMPRECISE_ENTROPY)
-            pSup=(frequency[k]+this.getSValue())/sum;
+            pSup=(frequencies[offset+k]+this.getSValue())/sum;
 
         if (pSup>maxPInf)
             nonDominatedSet[k]=true;
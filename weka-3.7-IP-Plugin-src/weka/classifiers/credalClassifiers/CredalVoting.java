@@ -0,0 +1,206 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package weka.classifiers.credalClassifiers;
+
+import java.util.Arrays;
+import java.util.List;
+
+import weka.classifiers.Classifier;
+import weka.core.Instances;
+import weka.core.OptionHandler;
+import weka.core.Utils;
+import weka.core.converters.ConverterUtils.DataSource;
+import weka.filters.Filter;
+import weka.filters.unsupervised.attribute.Discretize;
+import weka.filters.unsupervised.attribute.ReplaceMissingValues;
+
+/**
+ * Counts how many members of a credal ensemble leave each class value dominated,
+ * for every instance of a batch.
+ *
+ * The members are evaluated in tree-major order: each member classifies the whole
+ * batch before the next one does, so its nodes stay in the cache. With several
+ * threads, the members are split in consecutive chunks by ParallelChunks, each chunk
+ * counts the votes of its members in its own matrix, and the matrices are added up
+ * at the end. The counts are integers, so they do not depend on the number of threads.
+ *
+ * The members are only read, through CredalClassifier.nonDominatedIndexSet.
+ */
+public class CredalVoting {
+
+  /**
+   * The rule of an ensemble that turns the number of members for which each class
+   * value is dominated into the non-dominated class values.
+   */
+  public interface SetRule {
+
+    /**
+     * @param times_dominated the number of members for which each class value is dominated
+     * @return the indices of the non-dominated class values
+     */
+    int[] nonDominatedIndexSet(double[] times_dominated);
+  }
+
+  /**
+   * Counts the votes of a range of members.
+   * @param members the members of the ensemble
+   * @param from the first member of the range
+   * @param to the member after the last one of the range
+   * @param batch the instances
+   * @return for each instance, the number of members of the range for which each class
+   * value is non-dominated
+   * @throws Exception if some member can't classify some instance
+   */
+  protected static int[][] countVotes(Classifier[] members, int from, int to, Instances batch)
+    throws Exception {
+
+    int num_instances = batch.numInstances();
+    int[][] votes = new int[num_instances][batch.numClasses()];
+    CredalClassifier member;
+    int[] set, instance_votes;
+
+    for (int t = from; t < to; t++) {
+      member = (CredalClassifier) members[t];
+
+      for (int i = 0; i < num_instances; i++) {
+        set = member.nonDominatedIndexSet(batch.instance(i));
+        instance_votes = votes[i];
+
+        for (int j = 0; j < set.length; j++)
+          instance_votes[set[j]]++;
+      }
+    }
+
+    return votes;
+  }
+
+  /**
+   * Counts, for every instance of a batch, how many members leave each class value
+   * dominated. For a single instance, the counts are the ones accumulated by the
+   * ensembles member by member.
+   * @param members the members of the ensemble, which must be credal classifiers
+   * @param batch the instances
+   * @param numThreads the number of threads, 1 to evaluate the members sequentially
+   * @return for each instance, the number of members for which each class value is dominated
+   * @throws Exception if some member can't classify some instance
+   */
+  public static double[][] timesDominated(final Classifier[] members, final Instances batch, int numThreads)
+    throws Exception {
+
+    List<int[][]> chunk_votes = ParallelChunks.run(members.length, numThreads,
+      new ParallelChunks.Chunk<int[][]>() {
+        public int[][] run(int from, int to) throws Exception {
+          return countVotes(members, from, to, batch);
+        }
+      });
+    int[][] votes = chunk_votes.get(0);
+    int[][] partial_votes;
+    double[][] times_dominated;
+
+    for (int c = 1; c < chunk_votes.size(); c++) {
+      partial_votes = chunk_votes.get(c);
+      for (int i = 0; i < votes.length; i++) {
+        for (int j = 0; j < votes[i].length; j++)
+          votes[i][j] += partial_votes[i][j];
+      }
+    }
+
+    times_dominated = new double[votes.length][];
+    for (int i = 0; i < votes.length; i++) {
+      times_dominated[i] = new double[votes[i].length];
+      for (int j = 0; j < votes[i].length; j++)
+        times_dominated[i][j] = members.length - votes[i][j];
+    }
+
+    return times_dominated;
+  }
+
+  /**
+   * Returns the non-dominated class values of every instance of a batch, applying
+   * the rule of the ensemble to the counts of timesDominated. The sets are the same
+   * as the ones the ensemble computes instance by instance.
+   * @param members the members of the ensemble, which must be credal classifiers
+   * @param batch the instances
+   * @param numThreads the number of threads, 1 to evaluate the members sequentially
+   * @param rule the rule of the ensemble
+   * @return for each instance, the indices of its non-dominated class values
+   * @throws Exception if some member can't classify some instance
+   */
+  public static int[][] nonDominatedSets(Classifier[] members, Instances batch, int numThreads,
+    SetRule rule) throws Exception {
+
+    double[][] times_dominated = timesDominated(members, batch, numThreads);
+    int[][] sets = new int[times_dominated.length][];
+
+    for (int i = 0; i < sets.length; i++)
+      sets[i] = rule.nonDominatedIndexSet(times_dominated[i]);
+
+    return sets;
+  }
+
+  /**
+   * Main method for testing this class. For each dataset given, whose last attribute
+   * is the class, it builds the ensembles on the dataset, with its missing values
+   * replaced and its numeric attributes discretized, and prints how many instances
+   * get a different set from nonDominatedSets and from nonDominatedIndexSet. The
+   * ensembles grow until their out-of-bag sets are stable, so that they may have
+   * less trees than the -I option.
+   *
+   * @param args the arff files of the datasets
+   */
+  public static void main(String[] args) {
+
+    String options = "-I 200 -s 1 -grow-step 10 -grow-tolerance 0.05";
+    String[] ensembles = {"CredalBagging", "CredalBaggingFlexibility", "CredalRandomForest"};
+
+    try {
+      for (int d = 0; d < args.length; d++) {
+        Instances data = DataSource.read(args[d]);
+        data.setClassIndex(data.numAttributes() - 1);
+
+        ReplaceMissingValues replace = new ReplaceMissingValues();
+        replace.setInputFormat(data);
+        data = Filter.useFilter(data, replace);
+
+        Discretize discretize = new Discretize();
+        discretize.setBins(4);
+        discretize.setInputFormat(data);
+        data = Filter.useFilter(data, discretize);
+
+        for (int e = 0; e < ensembles.length; e++) {
+          CredalClassifier ensemble = (CredalClassifier) Class.forName(
+            "weka.classifiers.credalClassifiers." + ensembles[e]).newInstance();
+          ((OptionHandler) ensemble).setOptions(Utils.splitOptions(options));
+          ensemble.buildClassifier(data);
+
+          int[][] sets = ensemble.nonDominatedSets(data);
+          int differences = 0;
+
+          for (int i = 0; i < sets.length; i++) {
+            if (!Arrays.equals(sets[i], ensemble.nonDominatedIndexSet(data.instance(i))))
+              differences++;
+          }
+          System.out.println(args[d] + ", " + ensembles[e] + " with "
+            + ensemble.getMeasure("measureNumTreesBuilt") + " trees, sets that differ: "
+            + differences + "/" + sets.length);
+        }
+      }
+    } catch (Exception e) {
+      e.printStackTrace();
+    }
+  }
+}
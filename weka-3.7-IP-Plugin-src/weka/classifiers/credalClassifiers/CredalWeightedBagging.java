@@ -7,8 +7,8 @@ package weka.classifiers.credalClassifiers;
 
 import java.util.Enumeration;
 import java.util.Vector;
+import weka.classifiers.Classifier;
 import weka.classifiers.Evaluation;
-import weka.classifiers.meta.Bagging;
 import weka.core.AdditionalMeasureProducer;
 import weka.core.Capabilities;
 import weka.core.Instance;
@@ -24,7 +24,7 @@ import weka.core.Utils;
  *
  * @author Serafin
  */
-public class CredalWeightedBagging extends CredalClassifier implements OptionHandler, AdditionalMeasureProducer, Randomizable{
+public class CredalWeightedBagging extends CredalClassifier implements OptionHandler, AdditionalMeasureProducer, Randomizable, CredalEnsemble{
     
   /** Number of trees in forest. */
   protected int m_numTrees = 100;
@@ -32,8 +32,14 @@ public class CredalWeightedBagging extends CredalClassifier implements OptionHan
   /** The random seed. */
   protected int m_randomSeed = 1;  
 
+  /** Number of trees built at the same time. */
+  protected int m_numExecutionSlots = 1;
+
+  /** Whether the out-of-bag measures are computed while the trees are built. */
+  protected boolean m_calcOutOfBag = false;
+
   /** The bagger. */
-  protected Bagging m_bagger = null;
+  protected CredalBagger m_bagger = null;
   
   /** Weights of the trees */
   public double[] weights;
@@ -151,6 +157,62 @@ public class CredalWeightedBagging extends CredalClassifier implements OptionHan
   public int getSeed() {
     return m_randomSeed;
   }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of trees built, or evaluated on a batch of instances, at the same time "
+           + "(1 to do it sequentially). The results are the same for any number of execution slots.";
+  }
+
+  /**
+   * Set the number of trees built, or evaluated on a batch, at the same time.
+   *
+   * @param numSlots the number of execution slots
+   */
+  public void setNumExecutionSlots(int numSlots) {
+    m_numExecutionSlots = numSlots;
+  }
+
+  /**
+   * Gets the number of trees built, or evaluated on a batch, at the same time.
+   *
+   * @return the number of execution slots
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String calcOutOfBagTipText() {
+    return "Whether the out-of-bag measures are computed while the trees are built. Each training "
+           + "instance is classified by the trees whose bootstrap sample does not contain it.";
+  }
+
+  /**
+   * Set whether the out-of-bag measures are computed.
+   *
+   * @param calcOutOfBag true to compute them
+   */
+  public void setCalcOutOfBag(boolean calcOutOfBag) {
+    m_calcOutOfBag = calcOutOfBag;
+  }
+
+  /**
+   * Gets whether the out-of-bag measures are computed.
+   *
+   * @return true if they are computed
+   */
+  public boolean getCalcOutOfBag() {
+    return m_calcOutOfBag;
+  }
   
   public String thresholdTipText(){
       return "The threshold for dominance";
@@ -182,6 +244,15 @@ public class CredalWeightedBagging extends CredalClassifier implements OptionHan
 	"\tSeed for random number generator.\n"
 	+ "\t(default 1)",
 	"s", 1, "-s"));
+
+    newVector.addElement(new Option(
+	"\tNumber of trees built at the same time.\n"
+	+ "\t(default 1)",
+	"num-slots", 1, "-num-slots <num>"));
+
+    newVector.addElement(new Option(
+	"\tCompute the out-of-bag measures while the trees are built.",
+	"oob", 0, "-oob"));
     
      newVector.addElement(new Option(
 	"\tThreshold for dominance.\n"
@@ -215,6 +286,12 @@ public class CredalWeightedBagging extends CredalClassifier implements OptionHan
     result.add("-s");
     result.add("" + getSeed());
     
+    result.add("-num-slots");
+    result.add("" + getNumExecutionSlots());
+    
+    if (getCalcOutOfBag())
+      result.add("-oob");
+    
     result.add("-t");
     result.add("" + getThreshold());
     
@@ -238,6 +315,13 @@ public class CredalWeightedBagging extends CredalClassifier implements OptionHan
    *  Seed for random number generator.
    *  (default 1)</pre>
    * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of trees built at the same time.
+   *  (default 1)</pre>
+   * 
+   * <pre> -oob
+   *  Compute the out-of-bag measures while the trees are built.</pre>
+   * 
    * <pre> -depth &lt;num&gt;
    *  The maximum depth of the trees, 0 for unlimited.
    *  (default 0)</pre>
@@ -268,6 +352,15 @@ public class CredalWeightedBagging extends CredalClassifier implements OptionHan
       setSeed(1);
     }
     
+    tmpStr = Utils.getOption("num-slots", options);
+    if (tmpStr.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(tmpStr));
+    } else {
+      setNumExecutionSlots(1);
+    }
+    
+    setCalcOutOfBag(Utils.getFlag("oob", options));
+    
      tmpStr = Utils.getOption('t', options);
     if (tmpStr.length() != 0) {
       setThreshold(Integer.parseInt(tmpStr));
@@ -298,7 +391,7 @@ public class CredalWeightedBagging extends CredalClassifier implements OptionHan
         data = new Instances(data);
         data.deleteWithMissingClass();
     
-        m_bagger = new Bagging();
+        m_bagger = new CredalBagger();
         CredalDecisionTree_CostErrors_Weighted rTree = new CredalDecisionTree_CostErrors_Weighted();
 
    // rTree.setKValue(m_KValue);
@@ -307,9 +400,14 @@ public class CredalWeightedBagging extends CredalClassifier implements OptionHan
         m_bagger.setClassifier(rTree);
         m_bagger.setSeed(m_randomSeed);
         m_bagger.setNumIterations(m_numTrees);
-        m_bagger.setCalcOutOfBag(false);
+        m_bagger.setNumExecutionSlots(m_numExecutionSlots);
+        m_bagger.setCalcOutOfBag(m_calcOutOfBag);
         m_bagger.buildClassifier(data);
         
+        if (m_calcOutOfBag) {
+            m_bagger.computeOutOfBagStatistics(data, this);
+        }
+        
   }
     /**
      * Computes the weights of the trees using the DACC in the trains set
@@ -318,6 +416,37 @@ public class CredalWeightedBagging extends CredalClassifier implements OptionHan
     
     
     
+  /**
+   * Returns an enumeration of the additional measure names, including the
+   * out-of-bag measures
+   * @return an enumeration of the measure names
+   */
+  public Enumeration enumerateMeasures() {
+    Vector newVector = new Vector();
+
+    Enumeration enume = super.enumerateMeasures();
+    while(enume.hasMoreElements())
+        newVector.add(enume.nextElement());
+    
+    newVector.addAll(CredalBagger.outOfBagMeasureNames(newVector.elements()));
+
+    return newVector.elements();
+  }
+  
+  /**
+   * Returns the value of the named measure
+   * @param additionalMeasureName the name of the measure to query for its value
+   * @return the value of the named measure
+   * @throws IllegalArgumentException if the named measure is not supported
+   */
+  public double getMeasure(String additionalMeasureName) {
+    if (CredalBagger.isOutOfBagMeasure(additionalMeasureName)) {
+      return m_bagger == null ? Double.NaN : m_bagger.getOutOfBagMeasure(additionalMeasureName);
+    }
+
+    return super.getMeasure(additionalMeasureName);
+  }
+  
       /**
    * Computes class distribution for instance using decision tree.
    *
@@ -379,25 +508,35 @@ public class CredalWeightedBagging extends CredalClassifier implements OptionHan
     
   
   /**
-   * It update the statistics for a given instance. It computes the non-dominated index set for the instance. 
+   * It computes the non-dominated index set for a given instance, without updating the statistics. 
    * It calculates the sum of votes of being dominated an state taking into account the weight of the trees
    * The non-dominated states are those for which the number of times that have been dominated is minimum
    * @param instance the instance
+   * @return the indices of the non-dominated class values
    * @throws NoSupportForMissingValuesException 
    */
 
-    private void updateCredalStatistics(Instance instance) throws NoSupportForMissingValuesException {
+    public int[] nonDominatedIndexSet(Instance instance) throws NoSupportForMissingValuesException {
+        return this.nonDominatedIndexSet(instance, m_bagger.getClassifiers());
+    }
+
+  /**
+   * Computes the indices of the non-dominated class values for an instance, combining only
+   * the predictions of some trees, without updating the statistics.
+   * @param instance the instance
+   * @param members the trees whose predictions are combined
+   * @return the indices of the non-dominated class values
+   * @throws NoSupportForMissingValuesException 
+   */
+    public int[] nonDominatedIndexSet(Instance instance, Classifier[] members) throws NoSupportForMissingValuesException {
         CredalDecisionTree_CostErrors_Weighted tree;
         int num_classes = instance.numClasses();
-        boolean[] non_dominated_states = new boolean[num_classes];
         boolean[] partial_non_dominated_states;
         boolean non_dominated;
-        int[] non_dominated_index_set;
         double[] times_dominated = new double[num_classes];
-        double min_times_dominated, partial_times_dominated;
         
-        for(int i = 0; i < m_numTrees; i++){
-            tree = (CredalDecisionTree_CostErrors_Weighted) m_bagger.getClassifier(i);
+        for(int i = 0; i < members.length; i++){
+            tree = (CredalDecisionTree_CostErrors_Weighted) members[i];
             partial_non_dominated_states = tree.computeNonDominatedStatesSet(instance);
             
             for(int j = 0; j < num_classes; j++){
@@ -408,6 +547,39 @@ public class CredalWeightedBagging extends CredalClassifier implements OptionHan
             }
         }
 
+        return this.nonDominatedIndexSet(times_dominated);
+    }
+
+  /**
+   * Returns the non-dominated class values of every instance of a batch, without
+   * updating the statistics. Each tree classifies the whole batch before the next
+   * one, and with several execution slots the trees are evaluated in parallel chunks.
+   * The sets are the same as the ones of nonDominatedIndexSet.
+   * @param batch the instances
+   * @return for each instance, the indices of its non-dominated class values
+   * @throws Exception if some set can't be computed
+   */
+    public int[][] nonDominatedSets(Instances batch) throws Exception {
+        return CredalVoting.nonDominatedSets(m_bagger.getClassifiers(), batch, m_numExecutionSlots, new CredalVoting.SetRule(){
+            public int[] nonDominatedIndexSet(double[] times_dominated){
+                return CredalWeightedBagging.this.nonDominatedIndexSet(times_dominated);
+            }
+        });
+    }
+
+  /**
+   * It computes the non-dominated index set from the number of trees for which each state is dominated.
+   * A state is non-dominated if the number of times it has been dominated, discounted by the threshold,
+   * is not greater than the minimum
+   * @param times_dominated the number of trees for which each state is dominated
+   * @return the indices of the non-dominated class values
+   */
+    protected int[] nonDominatedIndexSet(double[] times_dominated) {
+        int num_classes = times_dominated.length;
+        boolean[] non_dominated_states = new boolean[num_classes];
+        int[] non_dominated_index_set;
+        double min_times_dominated, partial_times_dominated;
+        
         min_times_dominated = times_dominated[0];
         
         for(int j = 1; j < num_classes; j++){
@@ -425,9 +597,18 @@ public class CredalWeightedBagging extends CredalClassifier implements OptionHan
         
         non_dominated_index_set = computeNonDominatedIndexSet(non_dominated_states);
         
-        this.updateStatistics(non_dominated_index_set, instance);
+        return non_dominated_index_set;
         
     }
+
+  /**
+   * It updates the statistics for a given instance with its non-dominated index set.
+   * @param instance the instance
+   * @throws NoSupportForMissingValuesException 
+   */
+    private void updateCredalStatistics(Instance instance) throws NoSupportForMissingValuesException {
+        this.updateStatistics(this.nonDominatedIndexSet(instance), instance);
+    }
   
    @Override
     public double classifyInstance(Instance instance) 
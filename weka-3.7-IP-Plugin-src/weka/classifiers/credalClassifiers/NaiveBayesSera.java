@@ -5,10 +5,10 @@
  */
 package weka.classifiers.credalClassifiers;
 
-import utils.DiscreteEstimatorSera;
+import utils.ConditionalCountTable;
 import utils.DiscreteEstimatorZaffalon;
+import weka.classifiers.UpdateableClassifier;
 import weka.core.AdditionalMeasureProducer;
-import weka.core.Attribute;
 import weka.core.Capabilities;
 import weka.core.Instance;
 import weka.core.Instances;
@@ -20,10 +20,18 @@ import weka.core.TechnicalInformation;
  *
  * @author Serafin
  */
-public class NaiveBayesSera extends CredalClassifier implements OptionHandler, AdditionalMeasureProducer{
+public class NaiveBayesSera extends CredalClassifier implements OptionHandler, AdditionalMeasureProducer, UpdateableClassifier{
     
-     /** The attribute estimators. */
-  protected DiscreteEstimatorSera [][] distributions;
+     /** The counts of the attribute values given the class values. */
+  protected ConditionalCountTable counts;
+
+  /** The factors of the inferior and superior probabilities of each class value
+   * given each attribute value, in the same positions as their counts. They are not
+   * serialized, but computed again from the counts when they are needed. */
+  protected transient volatile double[] inferior_factors, superior_factors;
+
+  /** Whether the counts have changed since the factors were computed. */
+  private volatile boolean factors_outdated;
 
   /** The class estimator. */
   protected DiscreteEstimatorZaffalon class_distribution;
@@ -55,14 +63,12 @@ public class NaiveBayesSera extends CredalClassifier implements OptionHandler, A
    * displaying in the explorer/experimenter gui
    */
   public String globalInfo() {
-    return "Class for a Naive Bayes classifier using estimator classes. Numeric"
-      +" estimator precision values are chosen based on analysis of the "
-      +" training data. For this reason, the classifier is not an"
-      +" UpdateableClassifier (which in typical usage are initialized with zero"
-      +" training instances) -- if you need the UpdateableClassifier functionality,"
-      +" use the NaiveBayesUpdateable classifier. The NaiveBayesUpdateable"
-      +" classifier will  use a default precision of 0.1 for numeric attributes"
-      +" when buildClassifier is called with zero training instances.\n\n"
+    return "Class for a Naive Bayes classifier using estimator classes. The"
+      +" estimators only keep counts, so the classifier is an"
+      +" UpdateableClassifier: it can be built with zero training instances"
+      +" and then updated one instance at a time, for example while reading"
+      +" an ARFF file incrementally, with a memory that does not depend on"
+      +" the number of instances.\n\n"
       +"For more information on Naive Bayes classifiers, see\n\n"
       + getTechnicalInformation().toString();
   }
@@ -102,11 +108,7 @@ public class NaiveBayesSera extends CredalClassifier implements OptionHandler, A
   
   public void buildClassifier(Instances data) throws Exception{
     int num_classes = data.numClasses();
-    int num_attributes = data.numAttributes() - 1;
-    int class_index = data.classIndex();
     double s_value = this.getSValue();
-    Attribute attribute;
-    int num_values;
     int num_instances = data.numInstances();
     Instance instance;
       
@@ -115,48 +117,79 @@ public class NaiveBayesSera extends CredalClassifier implements OptionHandler, A
     getCapabilities().testWithFail(data);
     
     class_distribution = new DiscreteEstimatorZaffalon(num_classes, s_value);
-    distributions = new DiscreteEstimatorSera[num_attributes][];
-    
-    for(int i = 0; i<=num_attributes; i++){
-        if(i!= class_index){
-            attribute = data.attribute(i);
-            num_values = attribute.numValues();
-            distributions[i] = new DiscreteEstimatorSera[num_values];
-            
-            for(int j = 0; j < num_values; j++)
-                distributions[i][j] = new DiscreteEstimatorSera(num_classes,s_value);
-        }
-    }
+    counts = new ConditionalCountTable(data, s_value);
     
     for(int i = 0; i < num_instances; i++){
         instance = data.instance(i);
         updateClassifier(instance);
     
     }
+    
+    factors_outdated = true;
+    computeFactors();
   }
     
     /**
    * Updates the classifier with the given instance.
    *
+   * Instances whose class value is missing are ignored.
+   *
    * @param instance the new training instance to include in the model 
-   * @exception Exception if the instance could not be incorporated in
-   * the model.
    */
-    private void updateClassifier(Instance instance){
-        int num_attributes = instance.numAttributes();
-        int class_index = instance.classIndex();
-        int class_value = (int)instance.classValue();
-        int attribute_value;
+    public void updateClassifier(Instance instance){
+        int class_value;
         
+        if(instance.classIsMissing())
+            return;
+        
+        class_value = (int)instance.classValue();
         class_distribution.addComponent(class_value);
+        counts.addInstance(instance, 1.0);
+        factors_outdated = true;
+    } 
+    
+    /**
+     * Computes the factors of the inferior and superior probabilities of each class value
+     * given each attribute value from the counts, as the estimators of the attribute values
+     * with the inferior and superior probabilities of the class value as prior.
+     */
+    private synchronized void computeFactors(){
+        int num_classes = counts.getNumClasses();
+        int num_rows = counts.getNumRows();
+        double m_value = counts.getPriorCount();
+        double[] class_inferior_probabilities = new double[num_classes];
+        double[] class_superior_probabilities = new double[num_classes];
+        double[] inferior, superior;
+        double count, sum_of_counts;
+        double numerator_inferior, numerator_superior;
         
-        for(int i = 0; i < num_attributes; i++){
-            if(i!=class_index){
-                attribute_value = (int)instance.value(i);
-                distributions[i][attribute_value].addComponent(class_value);
+        if(!factors_outdated && inferior_factors != null)
+            return;
+        
+        inferior = new double[num_rows*num_classes];
+        superior = new double[num_rows*num_classes];
+        
+        for(int j = 0; j < num_classes; j++){
+            class_inferior_probabilities[j] = class_distribution.getInferiorProbability(j);
+            class_superior_probabilities[j] = class_distribution.getSuperiorProbability(j);
+        }
+        
+        for(int r = 0; r < num_rows; r++){
+            sum_of_counts = counts.getValueSum(r);
+            
+            for(int j = 0; j < num_classes; j++){
+                count = counts.getCount(r, j);
+                numerator_inferior = (count + m_value*class_inferior_probabilities[j])/sum_of_counts;
+                numerator_superior = (count + m_value*class_superior_probabilities[j])/sum_of_counts;
+                inferior[r*num_classes + j] = numerator_inferior/class_superior_probabilities[j];
+                superior[r*num_classes + j] = numerator_superior/class_inferior_probabilities[j];
             }
         }
-    } 
+        
+        superior_factors = superior;
+        inferior_factors = inferior;
+        factors_outdated = false;
+    }
     
      /* Classifies a given test instance using the Naive Bayes.
    *
@@ -236,18 +269,22 @@ public class NaiveBayesSera extends CredalClassifier implements OptionHandler, A
        return non_dominated_states;
    }
    
-   private void updateCredalStatistics(Instance instance) throws NoSupportForMissingValuesException{
+   /**
+    * Computes the indices of the non-dominated class values for an instance,
+    * without updating the statistics.
+    * @param instance the instance
+    * @return the indices of the non-dominated class values
+    * @throws NoSupportForMissingValuesException 
+    */
+   public int[] nonDominatedIndexSet(Instance instance) throws NoSupportForMissingValuesException{
       boolean[] non_dominated_set;
       int num_classes = instance.numClasses();
       double[] inferior_probabilities = new double[num_classes];
       double[] superior_probabilities = new double[num_classes];
-      double class_inferior_probability, class_superior_probability;
-      double inferior_probability, superior_probability;
-      double numerator_inferior, numerator_superior;
-      double partial_inferior_probability, partial_superior_probability;
+      double[] inferior, superior;
       int class_index = instance.classIndex();
       int num_attributes = instance.numAttributes();
-      int attribute_value;
+      int row;
       double max_inferior = 0;
       double max_superior = 0;
       int num_non_dominated_states;
@@ -255,32 +292,35 @@ public class NaiveBayesSera extends CredalClassifier implements OptionHandler, A
       int[] non_dominated_index_set;
       int cont;
       
+        if(factors_outdated || inferior_factors == null)
+            computeFactors();
+        
+        inferior = inferior_factors;
+        superior = superior_factors;
+        
         for(int j = 0; j < num_classes; j++){
-            class_inferior_probability = class_distribution.getInferiorProbability(j);
-            class_superior_probability = class_distribution.getSuperiorProbability(j);
-            inferior_probability = class_superior_probability;
-            superior_probability = class_inferior_probability;
-          
-            for(int i = 0; i < num_attributes; i++){
-                if(i!=class_index){
-                    attribute_value = (int)instance.value(i);
-                    numerator_inferior = distributions[i][attribute_value].getProbability(j, class_inferior_probability);
-                    numerator_superior = distributions[i][attribute_value].getProbability(j, class_superior_probability);
-                    partial_inferior_probability = numerator_inferior/class_superior_probability;
-                    partial_superior_probability = numerator_superior/class_inferior_probability;
-                    inferior_probability*=partial_inferior_probability;
-                    superior_probability*=partial_superior_probability;
+            inferior_probabilities[j] = class_distribution.getSuperiorProbability(j);
+            superior_probabilities[j] = class_distribution.getInferiorProbability(j);
+        }
+        
+        // The factors of each attribute value are contiguous, so the classes are the inner loop
+        for(int i = 0; i < num_attributes; i++){
+            if(i!=class_index){
+                row = counts.getRow(i, (int)instance.value(i))*num_classes;
+                
+                for(int j = 0; j < num_classes; j++){
+                    inferior_probabilities[j]*=inferior[row + j];
+                    superior_probabilities[j]*=superior[row + j];
                 }
             }
+        }
+        
+        for(int j = 0; j < num_classes; j++){
+            if(inferior_probabilities[j] > max_inferior)
+                max_inferior = inferior_probabilities[j];
           
-            if(inferior_probability > max_inferior)
-                max_inferior = inferior_probability;
-          
-            if(superior_probability > max_superior)
-                max_superior = superior_probability;
-          
-            inferior_probabilities[j] = inferior_probability;
-            superior_probabilities[j] = superior_probability;
+            if(superior_probabilities[j] > max_superior)
+                max_superior = superior_probabilities[j];
         }
             
          if ((max_inferior > 0) && (max_inferior < 1e-75)) { // Danger of probability underflow
@@ -318,7 +358,11 @@ public class NaiveBayesSera extends CredalClassifier implements OptionHandler, A
         }
       }
 
-      this.updateStatistics(non_dominated_index_set, instance);
+      return non_dominated_index_set;
+
+   }
 
+   private void updateCredalStatistics(Instance instance) throws NoSupportForMissingValuesException{
+      this.updateStatistics(this.nonDominatedIndexSet(instance), instance);
    }
 }
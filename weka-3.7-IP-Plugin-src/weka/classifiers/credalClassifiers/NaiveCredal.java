@@ -30,8 +30,11 @@ import weka.core.TechnicalInformation.Field;
 import weka.core.TechnicalInformation.Type;
 
 import java.util.Enumeration;
+import java.util.Vector;
 import weka.core.AdditionalMeasureProducer;
 import weka.core.Option;
+import weka.core.Utils;
+import weka.classifiers.credalClassifiers.credalNB.DominanceCache;
 
 
 /**
@@ -59,6 +62,12 @@ public class NaiveCredal
 
   weka.classifiers.credalClassifiers.credalNB.NaiveCredal credalNB=null;
 
+  /** The number of threads used to classify a batch of instances. */
+  protected int m_numExecutionSlots = 1;
+
+  /** The maximum number of results of tests of dominance kept, 0 for none. */
+  protected int m_dominanceCacheSize = 0;
+
   
   /**
    * Returns a string describing this classifier
@@ -112,6 +121,207 @@ public class NaiveCredal
     return result;
   }
 
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String numExecutionSlotsTipText() {
+    return "The number of threads that classify a batch of instances at the same time "
+           + "(1 to do it sequentially). The results are the same for any number of execution slots.";
+  }
+
+  /**
+   * Set the number of threads that classify a batch of instances.
+   *
+   * @param numSlots the number of execution slots
+   */
+  public void setNumExecutionSlots(int numSlots) {
+    m_numExecutionSlots = numSlots;
+  }
+
+  /**
+   * Gets the number of threads that classify a batch of instances.
+   *
+   * @return the number of execution slots
+   */
+  public int getNumExecutionSlots() {
+    return m_numExecutionSlots;
+  }
+
+  /**
+   * Returns the tip text for this property
+   * @return tip text for this property suitable for
+   * displaying in the explorer/experimenter gui
+   */
+  public String dominanceCacheSizeTipText() {
+    return "The maximum number of results of tests of dominance kept, so that a test done again does not "
+           + "search numerically the minimum again (0 to disable the cache). The results are the same for any size.";
+  }
+
+  /**
+   * Set the maximum number of results of tests of dominance kept.
+   *
+   * @param size the size of the cache, 0 to disable it
+   */
+  public void setDominanceCacheSize(int size) {
+    m_dominanceCacheSize = size;
+    if (this.credalNB != null)
+      this.credalNB.setDominanceCacheSize(size);
+  }
+
+  /**
+   * Gets the maximum number of results of tests of dominance kept.
+   *
+   * @return the size of the cache
+   */
+  public int getDominanceCacheSize() {
+    return m_dominanceCacheSize;
+  }
+
+  /**
+   * Returns the proportion of the tests of dominance whose result has been found in the cache.
+   *
+   * @return the hit rate, 0 if no test has been done
+   */
+  public double measureDominanceCacheHitRate() {
+    DominanceCache cache = this.credalNB == null ? null : this.credalNB.getDominanceCache();
+
+    return cache == null ? 0 : cache.getHitRate();
+  }
+
+  /**
+   * Returns an enumeration of the additional measure names
+   * @return an enumeration of the measure names
+   */
+  public Enumeration enumerateMeasures() {
+    Vector newVector = new Vector();
+    newVector.addElement("measureDominanceCacheHitRate");
+
+    Enumeration enume = super.enumerateMeasures();
+    while(enume.hasMoreElements())
+        newVector.add(enume.nextElement());
+
+    return newVector.elements();
+  }
+  
+  /**
+   * Returns the value of the named measure
+   * @param additionalMeasureName the name of the measure to query for its value
+   * @return the value of the named measure
+   * @throws IllegalArgumentException if the named measure is not supported
+   */
+  public double getMeasure(String additionalMeasureName) {
+    if (additionalMeasureName.compareToIgnoreCase("measureDominanceCacheHitRate") == 0) {
+      return measureDominanceCacheHitRate();
+    }
+
+    return super.getMeasure(additionalMeasureName);
+  }
+
+  /**
+   * Returns an enumeration describing the available options.
+   *
+   * @return an enumeration of all the available options
+   */
+  public Enumeration listOptions() {
+    
+    Vector newVector = new Vector();
+
+    newVector.addElement(new Option(
+	"\tNumber of threads that classify a batch of instances.\n"
+	+ "\t(default 1)",
+	"num-slots", 1, "-num-slots <num>"));
+
+    newVector.addElement(new Option(
+	"\tMaximum number of results of tests of dominance kept\n"
+	+ "\tin a cache, 0 to disable it.\n"
+	+ "\t(default 0)",
+	"cache-size", 1, "-cache-size <num>"));
+
+    Enumeration enu = super.listOptions();
+    
+    while (enu.hasMoreElements()) {
+      newVector.addElement(enu.nextElement());
+    }
+
+    return newVector.elements();
+  }
+  
+  /**
+   * Gets the current settings of the classifier.
+   *
+   * @return an array of strings suitable for passing to setOptions()
+   */
+  public String[] getOptions() {
+    Vector        result;
+    String[]      options;
+    int           i;
+    
+    result = new Vector();
+    
+    result.add("-num-slots");
+    result.add("" + getNumExecutionSlots());
+    
+    result.add("-cache-size");
+    result.add("" + getDominanceCacheSize());
+    
+    options = super.getOptions();
+    for (i = 0; i < options.length; i++)
+      result.add(options[i]);
+    
+    return (String[]) result.toArray(new String[result.size()]);
+  }
+  
+  /**
+   * Parses a given list of options. <p/>
+   * 
+   <!-- options-start -->
+   * Valid options are: <p/>
+   * 
+   * <pre> -num-slots &lt;num&gt;
+   *  Number of threads that classify a batch of instances.
+   *  (default 1)</pre>
+   * 
+   * <pre> -cache-size &lt;num&gt;
+   *  Maximum number of results of tests of dominance kept
+   *  in a cache, 0 to disable it.
+   *  (default 0)</pre>
+   * 
+   * <pre> -S svalue
+   *  The number of ''hidden'' instances which controls the strength of the prior (for credal classifiers, higher s implies higher indeterminacy)</pre>
+   * 
+   * <pre> -O folder-path
+   *  Specifies the output folder where the credal predictions (necessary for the Friedman test) are stored.</pre>
+   * 
+   * <pre> -OFlag
+   *  Set this flag to true is you need to make a comparison of the credal predictions using the Friedman test.</pre>
+   * 
+   <!-- options-end -->
+   * 
+   * @param options the list of options as an array of strings
+   * @throws Exception if an option is not supported
+   */
+  public void setOptions(String[] options) throws Exception{
+    String tmpStr;
+    
+    tmpStr = Utils.getOption("num-slots", options);
+    if (tmpStr.length() != 0) {
+      setNumExecutionSlots(Integer.parseInt(tmpStr));
+    } else {
+      setNumExecutionSlots(1);
+    }
+    
+    tmpStr = Utils.getOption("cache-size", options);
+    if (tmpStr.length() != 0) {
+      setDominanceCacheSize(Integer.parseInt(tmpStr));
+    } else {
+      setDominanceCacheSize(0);
+    }
+    
+    super.setOptions(options);
+  }
+
   /**
    * Returns default capabilities of the classifier.
    *
@@ -194,20 +404,22 @@ public class NaiveCredal
     //this.credalNB.setSValue(this.getSValue());
 
     this.credalNB = new weka.classifiers.credalClassifiers.credalNB.NaiveCredal(100, instances.classAttribute().numValues());
+    this.credalNB.setDominanceCacheSize(m_dominanceCacheSize);
 
     this.credalNB.train(TrainingSet, FeatureNames, classNames,numClassForEachFeature, (int) this.getSValue() , SuppliedNonMarInTraining, SuppliedNonMarInTesting, SuppliedNumClassesNonMarTesting);
 
   }
 
   /**
-   * Calculates the class membership probabilities for the given test instance.
+   * Returns the indices of the non-dominated class values for an instance, without
+   * updating the statistics. Missing values are passed to the credal classifier as -9999.
+   * The credal classifier keeps intermediate results in its fields, so the method is
+   * synchronized to be safe when called by several threads.
    *
    * @param instance the instance to be classified
-   * @return predicted class probability distribution
-   * @exception Exception if distribution can't be computed
+   * @return the indices of the non-dominated class values
    */
-  public double[] distributionForInstance(Instance instance) throws Exception {
-    
+  public synchronized int[] nonDominatedIndexSet(Instance instance) {
 
     int[] values=new int[instance.numAttributes()];
     for (int i=0; i<instance.numAttributes(); i++){
@@ -217,7 +429,34 @@ public class NaiveCredal
             values[i]=(int)instance.value(i);
     }
 
-    int[] predictions=this.credalNB.classifyInstance(values);
+    return this.credalNB.classifyInstance(values);
+  }
+
+  /**
+   * Returns the non-dominated class values of every instance of a batch, without
+   * updating the statistics. The batch is converted at once into a single array of
+   * values, and with several execution slots its instances are classified in parallel
+   * chunks. The sets are the same as the ones of nonDominatedIndexSet.
+   *
+   * @param batch the instances
+   * @return for each instance, the indices of its non-dominated class values
+   * @throws Exception if some set can't be computed
+   */
+  public synchronized int[][] nonDominatedSets(Instances batch) throws Exception {
+
+    return this.credalNB.classifyBatch(packInstances(batch), batch.numAttributes(), m_numExecutionSlots);
+  }
+
+  /**
+   * Calculates the class membership probabilities for the given test instance.
+   *
+   * @param instance the instance to be classified
+   * @return predicted class probability distribution
+   * @exception Exception if distribution can't be computed
+   */
+  public double[] distributionForInstance(Instance instance) throws Exception {
+    
+    int[] predictions=this.nonDominatedIndexSet(instance);
 
     this.stats.updateStatistics(predictions, instance);
 
@@ -253,12 +253,13 @@ public class Naive_Bayes_Completa_Admisible extends CredalClassifier implements
    }
    
    /**
-    * Compute Non-Dominate Index set for an instance to update credal statistics 
-    * @param instance, the instance from which update statistics
+    * Computes the indices of the non-dominated class values for an instance,
+    * without updating the statistics.
+    * @param instance the instance
+    * @return the indices of the non-dominated class values
     * @throws NoSupportForMissingValuesException 
     */
-   
-   private void updateCredalStatistics(Instance instance) throws NoSupportForMissingValuesException{
+   public int[] nonDominatedIndexSet(Instance instance) throws NoSupportForMissingValuesException{
       boolean[] non_dominated_set;
       int num_classes = instance.numClasses();
       double[] inferior_probabilities = new double[num_classes];
@@ -337,10 +338,20 @@ public class Naive_Bayes_Completa_Admisible extends CredalClassifier implements
         }
       }
 
-      this.updateStatistics(non_dominated_index_set, instance);
+      return non_dominated_index_set;
 
 
   }
+
+   /**
+    * Compute Non-Dominate Index set for an instance to update credal statistics 
+    * @param instance, the instance from which update statistics
+    * @throws NoSupportForMissingValuesException 
+    */
+   
+   private void updateCredalStatistics(Instance instance) throws NoSupportForMissingValuesException{
+      this.updateStatistics(this.nonDominatedIndexSet(instance), instance);
+   }
   
 
     
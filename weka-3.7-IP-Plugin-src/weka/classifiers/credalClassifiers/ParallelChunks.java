@@ -0,0 +1,127 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package weka.classifiers.credalClassifiers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Splits a range of work items in consecutive chunks and processes the chunks in
+ * parallel.
+ *
+ * The chunks run in a pool shared by all the classifiers, whose threads are kept
+ * for a while after they finish, so a batch doesn't create and tear down its own
+ * threads. The pool grows as needed, hence a chunk may split its own work again
+ * without waiting for a thread held by its caller. Its threads are daemons, so they
+ * don't keep the virtual machine alive.
+ */
+public class ParallelChunks {
+
+  /**
+   * The work of a chunk. Implementations are called concurrently, one call per
+   * chunk, so they must only write the data of their own range.
+   */
+  public interface Chunk<T> {
+
+    /**
+     * @param from the first item of the chunk
+     * @param to the item after the last one of the chunk
+     * @return the result of the chunk
+     * @throws Exception if the chunk can't be processed
+     */
+    T run(int from, int to) throws Exception;
+  }
+
+  /** Pool shared by all the classifiers, created the first time it is needed. */
+  private static ExecutorService s_Pool;
+
+  /**
+   * @return the pool shared by all the classifiers
+   */
+  private static synchronized ExecutorService getPool() {
+    if (s_Pool == null) {
+      s_Pool = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "credal-chunk");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    return s_Pool;
+  }
+
+  /**
+   * Processes the items from 0 to size in consecutive chunks. With a single chunk,
+   * the work is done in the calling thread.
+   * @param size the number of items
+   * @param numChunks the maximum number of chunks, usually the number of threads
+   * @param chunk the work of a chunk
+   * @return the results of the chunks, in the order of their ranges
+   * @throws Exception the error of the first chunk that fails, in the order of
+   * their ranges
+   */
+  public static <T> List<T> run(int size, int numChunks, final Chunk<T> chunk) throws Exception {
+
+    int num_chunks = Math.max(1, Math.min(numChunks, size));
+    List<Future<T>> futures;
+    List<T> results = new ArrayList<T>(num_chunks);
+
+    if (num_chunks == 1) {
+      results.add(chunk.run(0, size));
+      return results;
+    }
+
+    futures = new ArrayList<Future<T>>(num_chunks);
+    try {
+      for (int c = 0; c < num_chunks; c++) {
+        final int from = (int) ((long) size * c / num_chunks);
+        final int to = (int) ((long) size * (c + 1) / num_chunks);
+
+        futures.add(getPool().submit(new Callable<T>() {
+          public T call() throws Exception {
+            return chunk.run(from, to);
+          }
+        }));
+      }
+
+      for (int c = 0; c < num_chunks; c++) {
+        try {
+          results.add(futures.get(c).get());
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof Exception)
+            throw (Exception) e.getCause();
+          if (e.getCause() instanceof Error)
+            throw (Error) e.getCause();
+          throw e;
+        }
+      }
+    } finally {
+      // the chunks still running are not needed once one has failed
+      for (Future<T> future : futures)
+        future.cancel(true);
+    }
+
+    return results;
+  }
+}
@@ -28,7 +28,7 @@ import java.util.*;
  *
  * @author Serafin
  */
-public class WeightedCDT extends CredalClassifier implements OptionHandler, AdditionalMeasureProducer{
+public class WeightedCDT extends CredalClassifier implements OptionHandler, AdditionalMeasureProducer, ColumnStoreClassifier, ColumnStore.ClassEntropy{
     /* Field that contains the tree structure*/
   NodeTree m_RootNode;
   
@@ -205,27 +205,23 @@ public class WeightedCDT extends CredalClassifier implements OptionHandler, Addi
   }
   
   /**
-     * It computes the attribute to ramify in a certain node
-     * @param data the instances in the node
-     * @param level the level of the tree
-     * @return the attribute to remify
-     * @throws Exception 
-     */
+   * It computes the attribute to ramify in a certain node
+   * @param store the training data
+   * @param rows the row indices, the instances of the node are those in [from, to)
+   * @param from the first position of the node
+   * @param to the position after the last one of the node
+   * @param level the level of the tree
+   * @return the attribute to remify
+   * @throws Exception 
+   */
 
-    protected Attribute getAttributeToRamify(Instances data, int level) throws Exception{
+  protected Attribute getAttributeToRamify(ColumnStore store, int[] rows, int from, int to, int level) throws Exception{
     
     // Compute attribute with maximum information gain.
-        infoGains = new double[data.numAttributes()];
-        Enumeration attEnum = data.enumerateAttributes();
-    
-        while (attEnum.hasMoreElements()) {
-            Attribute att = (Attribute) attEnum.nextElement();
-            infoGains[att.index()] = computeInfoGain(data, att);
-        }
+        infoGains = computeInfoGains(store, rows, from, to);
+        infoGains[store.classIndex()]=-Double.MAX_VALUE;
     
-        infoGains[data.classIndex()]=-Double.MAX_VALUE;
-    
-        return data.attribute(Utils.maxIndex(infoGains));
+        return store.attribute(Utils.maxIndex(infoGains));
     }
     
      /* Builds IPTree decision tree classifier.
@@ -235,18 +231,29 @@ public class WeightedCDT extends CredalClassifier implements OptionHandler, Addi
    */
   public void buildClassifier(Instances data) throws Exception {
 
-    initStats();
-    
     // can classifier handle the data?
     getCapabilities().testWithFail(data);
 
-    // remove instances with missing class
-    data = new Instances(data);
-    data.deleteWithMissingClass();
+    // encode the data once, leaving out the instances with missing class
+    buildClassifier(new ColumnStore(data));
+  }
+
+  /**
+   * Builds the tree from encoded training data, which may be a sample of a store
+   * shared by the trees of an ensemble.
+   *
+   * @param store the training data
+   * @exception Exception if classifier can't be built successfully
+   */
+  public void buildClassifier(ColumnStore store) throws Exception {
+
+    initStats();
+    
+    int[] rows = store.getRowIndices();
     
     this.m_RootNode=new NodeTree();
     
-    makeTree(this.m_RootNode,data,0);
+    makeTree(this.m_RootNode,store,rows,0,rows.length,0);
   }
   
   /* Computes class distribution for instance using decision tree.
@@ -363,162 +370,127 @@ public class WeightedCDT extends CredalClassifier implements OptionHandler, Addi
   
 
   
-  /* Splits a dataset according to the values of a nominal attribute.
-   *
-   * @param data the data which is to be split
-   * @param att the attribute to be used for splitting
-   * @return the sets of instances produced by the split
-   */
-   protected Instances[] splitData(Instances data, Attribute att) {
-
-    Instances[] splitData = new Instances[att.numValues()];
-    for (int j = 0; j < att.numValues(); j++) {
-      splitData[j] = new Instances(data, data.numInstances());
-    }
-    Enumeration instEnum = data.enumerateInstances();
-    while (instEnum.hasMoreElements()) {
-      Instance inst = (Instance) instEnum.nextElement();
-      splitData[(int) inst.value(att)].add(inst);
-    }
-    for (int i = 0; i < splitData.length; i++) {
-      splitData[i].compactify();
-    }
-    return splitData;
-  }
    
-    /**
+  /**
    * Compute the frequencies for the class values in a node given its instances 
    * @param node the node
-   * @param data the instances in the node
+   * @param store the training data
+   * @param rows the row indices, the instances of the node are those in [from, to)
+   * @param from the first position of the node
+   * @param to the position after the last one of the node
    */ 
-   
-  protected void computeClassDistribution(NodeTree node, Instances data){
-      //node.setDistribution(new double[data.numClasses()]);
-      node.setFrequency(new double[data.numClasses()]);
-      Enumeration instEnum = data.enumerateInstances();
-      while (instEnum.hasMoreElements()) {
-        Instance inst = (Instance) instEnum.nextElement();
-        //node.getDistribution()[(int) inst.classValue()]++;
-        node.getFrequency()[(int) inst.classValue()]++;
-      }
-      //node.setSupport(data.numInstances());
-
+  protected void computeClassDistribution(NodeTree node, ColumnStore store, int[] rows, int from, int to){
+      node.setFrequency(store.classCounts(rows, from, to));
   }
   
-   /**
-   * It checks whether it is satified the stop criterion for a cetain attribute, level and data in a node
+  /**
+   * It checks whether it is satified the stop criterion for a cetain attribute and level in a node
    * @param m_Attribute the attribute
    * @param level the level
-   * @param data the instances in the node
    * @return if the criterion holds. 
    */
    
-  public boolean stopCriterion(Attribute m_Attribute, int level, Instances data){
+  public boolean stopCriterion(Attribute m_Attribute, int level){
       return m_StopLevel==-1 || Utils.grOrEq(0,infoGains[m_Attribute.index()]) || (m_StopLevel>0 && m_StopLevel==(level));
   }
   
-   /* Method for building an IPTree tree.
+  /**
+   * Method for building an IPTree tree.
+   * The instances of the node are a range of the row indices, which is reordered
+   * in place to give the ranges of the successors.
    *
-   * @param data the training data
+   * @param node the node to be built
+   * @param store the training data
+   * @param rows the row indices, the instances of the node are those in [from, to)
+   * @param from the first position of the node
+   * @param to the position after the last one of the node
+   * @param level the level of the node
    * @exception Exception if decision tree can't be built successfully
    */
-  void makeTree(NodeTree node, Instances data, int level) throws Exception {
+  void makeTree(NodeTree node, ColumnStore store, int[] rows, int from, int to, int level) throws Exception {
 
     // Check if no instances have reached this node.
-    if (data.numInstances() == 0) {
+    if (from == to) {
       node.setAttribute(null);
-      //node.setClassAttribute(data.classAttribute());      
-      //node.setClassValue(Instance.missingValue());
-      //node.setDistribution( new double[data.numClasses()]);
-      node.setFrequency( new double[data.numClasses()]);
-      //node.setSupport(0);
+      node.setFrequency( new double[store.numClasses()]);
       return;
     }
 
-//node.setClassAttribute(data.classAttribute());
-    
-    Attribute m_Attribute= this.getAttributeToRamify(data, level);
+    Attribute m_Attribute= this.getAttributeToRamify(store, rows, from, to, level);
     
     // Make leaf if information gain is zero. 
     // Otherwise create successors.
-    //if (this.getStopLevel()==-1 || Utils.eq(infoGains[m_Attribute.index()], 0) ||  (this.getStopLevel()>0 && this.getStopLevel()==(level))) {
-    if (stopCriterion(m_Attribute, level, data)){
+    if (stopCriterion(m_Attribute, level)){
       
       node.setAttribute(null);
-      //node.setClassAttribute(data.classAttribute());
       
-      this.computeClassDistribution(node,data);      
+      this.computeClassDistribution(node,store,rows,from,to);      
       
-      //node.normalize();
-      //node.setClassValue(node.getMaxDistributionIndex());
     } else {
 
       node.setAttribute(m_Attribute);
       
-      //this.computeClassDistribution(node,data);        
-      
-      Instances[] splitData = splitData(data, m_Attribute);
-          
+      // group the rows of the node by the value of the split attribute
+      int[] bounds = store.partition(m_Attribute.index(), rows, from, to);
           
       for (int j = 0; j < m_Attribute.numValues(); j++) {
         NodeTree newnode=new NodeTree();
         node.setSuccesors(j,newnode);
         
-        if (!m_MisclassifiedAllowed && splitData[j].numInstances()==0){
+        if (!m_MisclassifiedAllowed && bounds[j]==bounds[j+1]){
               if (node.getFrequency()==null)
-                  this.computeClassDistribution(node,data);
+                  this.computeClassDistribution(node,store,rows,from,to);
           
               node.getSuccesors(j).setAttribute(null);
-              //node.getSuccesors(j).setClassAttribute(data.classAttribute());
 
-              this.computeClassDistribution(node.getSuccesors(j),data);      
+              this.computeClassDistribution(node.getSuccesors(j),store,rows,from,to);      
 
-              //node.getSuccesors(j).normalize();
-              //node.getSuccesors(j).setClassValue(node.getMaxDistributionIndex());
         }else{
-            makeTree(node.getSuccesors(j),splitData[j],level+1);
+            makeTree(node.getSuccesors(j),store,rows,bounds[j],bounds[j+1],level+1);
         }
         
       }
     }
   }
   
-  /* Computes information gain for an attribute.
+  /**
+   * Computes the information gain of every attribute for the instances of a node.
+   * The class counts of each attribute value are accumulated in one contingency table
+   * per attribute, so no subset of instances has to be built to score a split.
    *
-   * @param data the data for which info gain is to be computed
-   * @param att the attribute
-   * @return the information gain for the given attribute and data
+   * @param store the training data
+   * @param rows the row indices, the instances of the node are those in [from, to)
+   * @param from the first position of the node
+   * @param to the position after the last one of the node
+   * @return the information gain of each attribute
    */
-  public double computeInfoGain(Instances data, Attribute att) 
-    throws Exception {
+  protected double[] computeInfoGains(ColumnStore store, int[] rows, int from, int to) throws Exception {
 
-    double infoGain = computeEntropy(data);
-    Instances[] splitData = splitData(data, att);
-    for (int j = 0; j < att.numValues(); j++) {
-          if (splitData[j].numInstances() > 0) {
-            infoGain -= ((double) splitData[j].numInstances() /
-                         (double) data.numInstances()) *
-              computeEntropy(splitData[j]);
-          }
+    int num_attributes = store.numAttributes();
+    int class_index = store.classIndex();
+    double[] gains = new double[num_attributes];
+
+    double entropy = computeEntropy(store.classCounts(rows, from, to));
+    final int num_instances = store.numInstances(rows, from, to);
+
+    for (int i = 0; i < num_attributes; i++) {
+      if (i != class_index)
+        gains[i] = ColumnStore.infoGain(entropy, store.contingencyTable(i, rows, from, to), num_instances, this);
     }
-    return infoGain;
+
+    return gains;
   }
+
   
-  /* Computes the entropy of a dataset.
-   * 
-   * @param data the data for which entropy is to be computed
-   * @return the entropy of the data's class distribution
+  /**
+   * Computes the entropy of a class distribution.
+   *
+   * @param classCounts the class counts
+   * @return the entropy of the class distribution
    */
-  protected double computeEntropy(Instances data) throws Exception {
+  public double computeEntropy(double[] classCounts) throws Exception {
 
-    double [] classCounts = new double[data.numClasses()];
-    Enumeration instEnum = data.enumerateInstances();
-    while (instEnum.hasMoreElements()) {
-      Instance inst = (Instance) instEnum.nextElement();
-      classCounts[(int) inst.classValue()]++;
-    }
-    
-    return E_ContingencyTables.entropyImprecise(classCounts,this.getSValue());        
+    return E_ContingencyTables.entropyImprecise(classCounts,this.getSValue());
   }
   
    /**
@@ -623,12 +595,14 @@ public class WeightedCDT extends CredalClassifier implements OptionHandler, Addi
         return non_dominated_index_set;
     }
     
-    /* 
-   * This function computes a utility measure of an IP model for an instance
-    @param instance the instance
-   * 
+  /**
+   * Computes the indices of the non-dominated class values for an instance,
+   * without updating the statistics.
+   * @param instance the instance
+   * @return the indices of the non-dominated class values
+   * @throws NoSupportForMissingValuesException 
    */
-  private void updateCredalStatistics(Instance instance) throws NoSupportForMissingValuesException{
+  public int[] nonDominatedIndexSet(Instance instance) throws NoSupportForMissingValuesException{
 
       boolean[] nonDominatedSet = computeNonDominatedStatesSet(instance);
 
@@ -637,7 +611,16 @@ public class WeightedCDT extends CredalClassifier implements OptionHandler, Addi
 
     
 
-      this.updateStatistics(nonDominatedIndexSet, instance);
+      return nonDominatedIndexSet;
+  }
+
+    /* 
+   * This function computes a utility measure of an IP model for an instance
+    @param instance the instance
+   * 
+   */
+  private void updateCredalStatistics(Instance instance) throws NoSupportForMissingValuesException{
+      this.updateStatistics(this.nonDominatedIndexSet(instance), instance);
   }
   /**
    * It computes the DACC of the original training dataset for estimating the weight of the tree in the ensemble 
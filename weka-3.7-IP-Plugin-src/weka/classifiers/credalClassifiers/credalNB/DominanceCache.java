@@ -0,0 +1,121 @@
+package weka.classifiers.credalClassifiers.credalNB;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**Bounded cache of the results of the CIR tests of dominance, so that a test already done does not run the
+ * numerical search of the minimum again. A result is stored under an array of integers which determines it,
+ * for instance the two classes and the values of the instance for a classifier whose counts do not change.
+ * When the cache is full, the least recently used result is evicted. The lookups and the hits are counted to
+ * report the hit rate. The methods are synchronized, so the cache can be shared by several threads.
+ */
+public class DominanceCache {
+
+	/**Key of a result, compared by the contents of its array.
+	 */
+	private static class Key {
+
+		private final int[] values;
+
+		private final int hash;
+
+		Key(int[] values){
+			this.values=values;
+			hash=Arrays.hashCode(values);
+		}
+
+		public int hashCode(){
+			return hash;
+		}
+
+		public boolean equals(Object other){
+			return (other instanceof Key) && Arrays.equals(values, ((Key)other).values);
+		}
+	}
+
+
+	/**Builds an empty cache which keeps at most maxSize results.
+	 */
+	public DominanceCache(final int maxSize){
+		this.maxSize=maxSize;
+		results=new LinkedHashMap<Key, Double>(16, 0.75f, true){
+			protected boolean removeEldestEntry(Map.Entry<Key, Double> eldest){
+				return size()>maxSize;
+			}
+		};
+	}
+
+	/**Returns the result stored under the given key, or null if there is none. The key is not kept,
+	 * so it can be a buffer filled again for the next lookup.
+	 */
+	public synchronized Double get(int[] key){
+		Double result=results.get(new Key(key));
+
+		lookups++;
+		if (result!=null)
+			hits++;
+		return result;
+	}
+
+	/**Stores a result under a copy of the given key.
+	 */
+	public synchronized void put(int[] key, double result){
+		results.put(new Key(key.clone()), result);
+	}
+
+	/**Removes all the results, for instance when the counts which determine them change. The hit rate
+	 * is not reset.
+	 */
+	public synchronized void clear(){
+		results.clear();
+	}
+
+	/**
+	 * @return the maximum number of results kept
+	 */
+	public int getMaxSize(){
+		return maxSize;
+	}
+
+	/**
+	 * @return the number of results kept
+	 */
+	public synchronized int size(){
+		return results.size();
+	}
+
+	/**
+	 * @return the number of lookups
+	 */
+	public synchronized long getLookups(){
+		return lookups;
+	}
+
+	/**
+	 * @return the number of lookups which found a result
+	 */
+	public synchronized long getHits(){
+		return hits;
+	}
+
+	/**
+	 * @return the proportion of lookups which found a result, 0 if there has been none
+	 */
+	public synchronized double getHitRate(){
+		return lookups==0 ? 0 : (double)hits/lookups;
+	}
+
+
+	/**Maximum number of results kept*/
+	private final int maxSize;
+
+	/**Results, from the least to the most recently used*/
+	private final LinkedHashMap<Key, Double> results;
+
+	/**Number of lookups*/
+	private long lookups;
+
+	/**Number of lookups which found a result*/
+	private long hits;
+}
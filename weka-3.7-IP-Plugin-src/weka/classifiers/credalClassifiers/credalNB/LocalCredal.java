@@ -28,6 +28,7 @@ public class LocalCredal extends LocalNaive {
 		discountedAcc=new double[numExp];
 		adaptive=true;
 		maxTrials=50;
+		dominanceCacheSize=0;
 	}
 
 	/**
@@ -85,6 +86,34 @@ public class LocalCredal extends LocalNaive {
 		idxComparator = new IndexComparator();
 		currentExp++;
 		instanceIdx=-1;
+		//the training set has changed, so do the results of the tests
+		dominanceCache=null;
+	}
+
+
+	/**
+	 * Sets the maximum number of results of tests of dominance kept by the cache; 0 disables the cache.
+	 */
+	public void setDominanceCacheSize(int size){
+		dominanceCacheSize=size;
+		dominanceCache=null;
+	}
+
+	/**
+	 * Returns the maximum number of results of tests of dominance kept by the cache.
+	 */
+	public int getDominanceCacheSize(){
+		return dominanceCacheSize;
+	}
+
+	/**
+	 * Returns the cache of the results of the tests of dominance, creating it if necessary (for instance after
+	 * deserialization), or null if it is disabled.
+	 */
+	public DominanceCache getDominanceCache(){
+		if (dominanceCache==null && dominanceCacheSize>0)
+			dominanceCache=new DominanceCache(dominanceCacheSize);
+		return dominanceCache;
 	}
 	
 
@@ -175,6 +204,23 @@ public class LocalCredal extends LocalNaive {
 
 	}
 
+	/**Classifies a batch of instances, stored one after another in a single array where every instance takes stride
+	 * elements (missing values are -9999), and returns the predicted classes of each instance. 
+	 * Every instance is copied into the same buffer before being classified, so the batch is not modified.
+	 * TO BE USED FROM WEKA ONLY
+	 */
+	public int[][] classifyBatch(int[] instances, int stride){
+		int numInstances=instances.length/stride;
+		int[][] batchPredictions=new int[numInstances][];
+		int[] instance=new int[stride];
+
+		for (int i=0; i<numInstances; i++){
+			System.arraycopy(instances, i*stride, instance, 0, stride);
+			batchPredictions[i]=classifyInstance(instance);
+		}
+		return batchPredictions;
+	}
+
 
 
 
@@ -402,6 +448,37 @@ public class LocalCredal extends LocalNaive {
 	 private double checkCredalDominanceCIR(int c1, int c2, int[] instance){
 		 fillArrays(c1,c2, instance);
 
+		 //the counts of the local training set change with the instance and the bandwidth, so they are the key of the cache
+		 DominanceCache cache=getDominanceCache();
+		 int[] key=null;
+		 Double cached;
+
+		 if (cache!=null){
+			 key=new int[3+4*gammaArr.size()];
+			 key[0]=alpha;
+			 key[1]=beta;
+			 key[2]=missingFeats;
+			 for (int ii=0; ii<gammaArr.size(); ii++){
+				 key[3+4*ii]=gammaArr.get(ii);
+				 key[4+4*ii]=deltaArr.get(ii);
+				 key[5+4*ii]=gammaTildeArr.get(ii);
+				 key[6+4*ii]=deltaTildeArr.get(ii);
+			 }
+			 cached=cache.get(key);
+			 if (cached!=null)
+				 return cached;
+		 }
+
+		 double infHx=computeCredalDominanceCIR();
+		 if (cache!=null)
+			 cache.put(key, infHx);
+		 return infHx;
+	 }
+
+	 /**
+	  * Computes the CIR test of dominance for the counts filled by fillArrays
+	  */
+	 private double computeCredalDominanceCIR(){
 		 double infHx=-999;
 		 //init necessary to compile the code
 		 double derivLnH0=0;
@@ -719,6 +796,12 @@ public class LocalCredal extends LocalNaive {
 	 /**Number of features missing in current instance*/
 	 private int missingFeats;
 
+	 /**Maximum number of results kept by dominanceCache, 0 if there is no cache*/
+	 private int dominanceCacheSize;
+
+	 /**Results of the tests of dominance, built when first used*/
+	 private transient DominanceCache dominanceCache;
+
 
 
 
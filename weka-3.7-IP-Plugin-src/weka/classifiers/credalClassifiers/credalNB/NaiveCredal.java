@@ -30,12 +30,15 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 
+import weka.classifiers.credalClassifiers.ParallelChunks;
+
 /**Implementation  of the Naive Credal Classifier 2 (NCC2).<p>
  */
 
-public class NaiveCredal extends NaiveClassifier{
+public class NaiveCredal extends NaiveClassifier implements Cloneable{
 
 
 	/**Initializes arrays referring to performance indicators such as determinacy[], 
@@ -54,6 +57,7 @@ public class NaiveCredal extends NaiveClassifier{
 		epsilon=0.01;
 		//epsModel="contamination";
 		epsModel="simple";
+		dominanceCacheSize=0;
 	}
 
 	public void train (ArrayList<int[]> trainingSet, ArrayList<String> featureNames, ArrayList<String>classNames,
@@ -72,6 +76,77 @@ public class NaiveCredal extends NaiveClassifier{
 			epsilonArr[i]=epsilon;
 		}
 		m=1-epsilon*(numClasses-2)/numClasses;
+		buildCountTables();
+	}
+
+
+	/**
+	 * Copies the counts used by the tests of dominance into integer tables indexed by class, so that a test 
+	 * only reads them instead of asking the features for them (getClassCountAsMar sums a whole row on every call).
+	 * The frequencies have been computed without any prior additional count, so the casts do not involve any information loss.
+	 * Allocates also the arrays filled by each test.
+	 */
+	private void buildCountTables(){
+		int c,i,v;
+
+		isNonMarTraining=new boolean[featureSet.length];
+		for (Integer idx : nonMarTrainingIdx)
+			isNonMarTraining[idx]=true;
+		isNonMarTesting=new boolean[featureSet.length];
+		for (Integer idx : nonMarTestingIdx)
+			isNonMarTesting[idx]=true;
+
+		classCounts=new int[numClasses];
+		condCounts=new int[numClasses][featureSet.length][];
+		missingCounts=new int[numClasses][featureSet.length];
+		marCounts=new int[numClasses][featureSet.length];
+
+		for (c=0; c<numClasses; c++){
+			classCounts[c]=(int)super.getOutputClasses()[c].getFrequency();
+			for (i=0; i<featureSet.length; i++){
+				condCounts[c][i]=new int[numValues[i]];
+				for (v=0; v<numValues[i]; v++)
+					condCounts[c][i][v]=(int)super.featureSet[i].getConditionalFrequencies(c,v);
+				missingCounts[c][i]=super.featureSet[i].getMissing(c);
+				marCounts[c][i]=(int)super.featureSet[i].getClassCountAsMar(c);
+			}
+		}
+
+		alphaArr=new int[featureSet.length];
+		betaArr=new int[featureSet.length];
+		gammaArr=new int[featureSet.length];
+		deltaArr=new int[featureSet.length];
+		gammaTildeArr=new int[featureSet.length];
+		deltaTildeArr=new int[featureSet.length];
+
+		//the counts have changed, so do the results of the tests
+		dominanceCache=null;
+	}
+
+
+	/**
+	 * Sets the maximum number of results of tests of dominance kept by the cache; 0 disables the cache.
+	 */
+	public void setDominanceCacheSize(int size){
+		dominanceCacheSize=size;
+		dominanceCache=null;
+	}
+
+	/**
+	 * Returns the maximum number of results of tests of dominance kept by the cache.
+	 */
+	public int getDominanceCacheSize(){
+		return dominanceCacheSize;
+	}
+
+	/**
+	 * Returns the cache of the results of the tests of dominance, creating it if necessary (for instance after
+	 * deserialization), or null if it is disabled.
+	 */
+	public DominanceCache getDominanceCache(){
+		if (dominanceCache==null && dominanceCacheSize>0)
+			dominanceCache=new DominanceCache(dominanceCacheSize);
+		return dominanceCache;
 	}
 
 
@@ -99,6 +174,75 @@ public class NaiveCredal extends NaiveClassifier{
 		computePerfIndicators();
 	}  
 
+	/**
+	 * Classifies a batch of instances, stored one after another in a single array where every instance takes stride
+	 * elements (missing values are -9999), and returns the predicted classes of each instance. Unlike classifyInstances,
+	 * it does not update the performance indicators. Every instance is copied into a buffer before being classified, so 
+	 * the batch is not modified. With several threads, the instances are split in consecutive chunks, each one classified
+	 * by a copy of the classifier which shares the tables of counts but has its own buffers; the predictions do not depend
+	 * on the number of threads.
+	 */
+	public int[][] classifyBatch(final int[] instances, final int stride, int numThreads) throws Exception
+	{
+		int numInstances=instances.length/stride;
+		final int numChunks=Math.max(1, Math.min(numThreads, numInstances));
+		final int[][] batchPredictions=new int[numInstances][];
+
+		//created before copying the classifier, so that the copies share it
+		getDominanceCache();
+
+		ParallelChunks.run(numInstances, numChunks, new ParallelChunks.Chunk<Object>() {
+			public Object run(int from, int to) {
+				NaiveCredal chunkClassifier=numChunks==1 ? NaiveCredal.this : copyWithOwnBuffers();
+
+				chunkClassifier.classifyRows(instances, stride, from, to, batchPredictions);
+				return null;
+			}
+		});
+
+		return batchPredictions;
+	}
+
+	/**
+	 * Classifies the instances of a batch from position from (included) to position to (excluded), storing 
+	 * their predicted classes into batchPredictions. A single buffer is used for all of them.
+	 */
+	private void classifyRows(int[] instances, int stride, int from, int to, int[][] batchPredictions)
+	{
+		int[] instance=new int[stride];
+
+		for (int i=from; i<to; i++){
+			System.arraycopy(instances, i*stride, instance, 0, stride);
+			batchPredictions[i]=classifyInstance(instance);
+		}
+	}
+
+	/**
+	 * Returns a shallow copy of the classifier, which shares the tables of counts built by train but has its own arrays 
+	 * for the tests of dominance, so that it can classify instances while this classifier does it in another thread.
+	 */
+	private NaiveCredal copyWithOwnBuffers()
+	{
+		NaiveCredal copy;
+
+		try{
+			copy=(NaiveCredal)super.clone();
+		}
+		catch (CloneNotSupportedException e){
+			throw new InternalError(e.toString());
+		}
+
+		copy.alphaArr=new int[alphaArr.length];
+		copy.betaArr=new int[betaArr.length];
+		copy.gammaArr=new int[gammaArr.length];
+		copy.deltaArr=new int[deltaArr.length];
+		copy.gammaTildeArr=new int[gammaTildeArr.length];
+		copy.deltaTildeArr=new int[deltaTildeArr.length];
+		copy.cacheKey=null;
+		copy.partitionPoints=null;
+		return copy;
+	}
+
 	/**
 	 * After having classified a single instance, stores temporary information about
 	 * whether it was accurate, determinate etc.
@@ -169,6 +313,8 @@ public class NaiveCredal extends NaiveClassifier{
 	/** Classifies a single instance, returning the list of predicted classes. Note that if all features are NonMAR, the modern IDM with
 	 * epsilon bounds is used; but if there are nonMAR features, the old IDM with sharp 0 bounds is used. Modifying the code to implement
 	 * the modern IDM even with nonMAR features should be however not a big deal.  
+	 * The undominated classes are kept in a bitset. As dominance is transitive, a class which has been found dominated is neither 
+	 * tested against the other classes nor tested as dominated any longer: whatever it dominates is dominated by the class dominating it.
 	 */
 	public int[] classifyInstance (int[] CurrentInstance) {
 		int i,j;
@@ -182,47 +328,32 @@ public class NaiveCredal extends NaiveClassifier{
 				continue;
 				//missing variable is Mar on testing
 			}
-			if (nonMarTestingIdx.indexOf(i)<0){
+			if (!isNonMarTesting[i]){
 				continue;
 			}
 			MissingNonMarIdx.add(i);
 		}
 
-		ArrayList<Integer> UndominatedClasses = new ArrayList<Integer>(numClasses);
-
-		for (i=0; i<numClasses; i++)
-			UndominatedClasses.add(i);
-
-		for (i=0; i<numClasses; i++){
-			//if class i is already dominated, no need to check it
-			if (! UndominatedClasses.contains(i)){
-				continue;
-			}
+		BitSet UndominatedClasses = new BitSet(numClasses);
+		UndominatedClasses.set(0, numClasses);
 
+		//if class i is already dominated, no need to check it
+		for (i=UndominatedClasses.nextSetBit(0); i>=0; i=UndominatedClasses.nextSetBit(i+1)){
 
-			for (j=0; j<numClasses; j++)
+			for (j=UndominatedClasses.nextSetBit(0); j>=0; j=UndominatedClasses.nextSetBit(j+1))
 			{
 				if (i==j) {
 					continue;
 				}
 
-				if (!UndominatedClasses.contains(j)){
-					continue;
-				}
-
 				double Test;
 
 				if  (MissingNonMarIdx.isEmpty())
 				{
-					if (epsilon==0){
-						Test=credalDominanceEps0(i, j, CurrentInstance,0,s);
-					}
-					else{
-						Test=credalDominance(i, j, CurrentInstance,s*epsilon,s*(1-epsilon));
-					}
+					Test=cachedDominance(i, j, CurrentInstance);
 
 					if (Test > 1)
-						UndominatedClasses.remove(UndominatedClasses.indexOf(j));
+						UndominatedClasses.clear(j);
 				}//END ==if  (MissingNonMarIdx.isEmpty())
 
 
@@ -253,7 +384,7 @@ public class NaiveCredal extends NaiveClassifier{
 							{
 								Test=credalDominanceEps0(i, j, CurrentInstance,0,s);
 								if (Test>1) {
-									UndominatedClasses.remove(UndominatedClasses.indexOf(j));
+									UndominatedClasses.clear(j);
 								}
 								break;
 							}
@@ -280,7 +411,7 @@ public class NaiveCredal extends NaiveClassifier{
 							Test=credalDominanceEps0(i, j, CurrentInstance,partitionPoints.get(kk).getCrossingX(),s);
 							//if we're here, all the previous tests have been bigger than 1
 							if (Test>1) 
-								UndominatedClasses.remove(UndominatedClasses.indexOf(j));
+								UndominatedClasses.clear(j);
 						}
 
 					}//==for (int kk=0; kk<PartitionPoints.size(); kk++)
@@ -322,7 +453,45 @@ public class NaiveCredal extends NaiveClassifier{
 
 
 
-		return ArrayUtils.arrList2Array(UndominatedClasses); 
+		int[] undominated=new int[UndominatedClasses.cardinality()];
+		j=0;
+		for (i=UndominatedClasses.nextSetBit(0); i>=0; i=UndominatedClasses.nextSetBit(i+1))
+			undominated[j++]=i;
+		return undominated; 
+	}
+
+
+	/**
+	 * Computes the test of dominance between class c1 and c2 for an instance without missing NonMar features,
+	 * unless the cache already has its result. Given the counts, the result only depends on the two classes and on
+	 * the values of the instance, which are therefore the key of the cache.
+	 */
+	private double cachedDominance(int c1, int c2, int[] currentInstance){
+		DominanceCache cache=getDominanceCache();
+		Double cached;
+		double Test;
+
+		if (cache!=null){
+			if (cacheKey==null)
+				cacheKey=new int[numFeats+2];
+			cacheKey[0]=c1;
+			cacheKey[1]=c2;
+			System.arraycopy(currentInstance, 0, cacheKey, 2, numFeats);
+			cached=cache.get(cacheKey);
+			if (cached!=null)
+				return cached;
+		}
+
+		if (epsilon==0){
+			Test=credalDominanceEps0(c1, c2, currentInstance,0,s);
+		}
+		else{
+			Test=credalDominance(c1, c2, currentInstance,s*epsilon,s*(1-epsilon));
+		}
+
+		if (cache!=null)
+			cache.put(cacheKey, Test);
+		return Test;
 	}
 
 
@@ -575,55 +744,8 @@ public class NaiveCredal extends NaiveClassifier{
 	 */
 	private double credalDominanceEps0(int c1, int c2, int[] currentInstance, double xmin, double xmax){
 
-		alphaArr=new ArrayList<Integer>(numFeats);
-		betaArr=new ArrayList<Integer>(numFeats);		
-		deltaTildeArr=new ArrayList<Integer>(numFeats);
-		gammaTildeArr=new ArrayList<Integer>(numFeats);
-		deltaArr=new ArrayList<Integer>(numFeats);
-		gammaArr=new ArrayList<Integer>(numFeats);
-
 		int i;
-		ArrayList<Integer> MissingMarIdx=new ArrayList<Integer>(numFeats-nonMarTestingIdx.size());
-
-		//remember that frequencies of the super class have been computed without any prior additional count, so these casts
-		//do not involve any information loss
-		alpha=(int)super.getOutputClasses()[c1].getFrequency();
-		beta=(int)super.getOutputClasses()[c2].getFrequency();
-
-
-		//get the conditional counts 
-		for (i=0; i<numFeats; i++)
-		{	
-			//missing variables are marginalized
-			if (currentInstance[i]==-9999)
-			{
-				MissingMarIdx.add(i);
-				continue;
-			}
-
-			//NonMar features
-			if (nonMarTrainingIdx.indexOf(i)>=0)
-			{
-				//empirical frequencies of superclass have been built without adding any prior, so they ARE integer and the following casts do not
-				//involve any information loss
-				alphaArr.add((int)super.featureSet[i].getConditionalFrequencies(c1,currentInstance[i]));
-				betaArr.add((int)super.featureSet[i].getConditionalFrequencies(c2,currentInstance[i]) + super.featureSet[i].getMissing(c2));
-			}
-
-			//MAR features
-			else 
-			{
-				gammaArr.add((int)super.featureSet[i].getConditionalFrequencies(c1,currentInstance[i]));
-				deltaArr.add((int)super.featureSet[i].getConditionalFrequencies(c2,currentInstance[i]));
-				gammaTildeArr.add((int)super.featureSet[i].getClassCountAsMar(c1));				
-				deltaTildeArr.add((int)super.featureSet[i].getClassCountAsMar(c2));
-			}
-		}
-
-
-		//note that NonMar features are always non missing at this stage, because occurring missingness are managed
-		//via replacement of all possible values.
-		k=alphaArr.size();
+		int numMissingMar=collectCounts(c1, c2, currentInstance);
 
 
 
@@ -636,25 +758,25 @@ public class NaiveCredal extends NaiveClassifier{
 
 
 		//if there is j such that n(aM j , cM ) = 0 or l such that n(ˆM l , cM ) = 0, inf h(t(cM )) = 0;
-		if (  (alphaArr.indexOf(0)>=0) | (gammaArr.indexOf(0)>=0) ) {
+		if (  containsZero(alphaArr, k) | containsZero(gammaArr, numMar) ) {
 			return InfHx=0;
 		}
 
 
 		//if k = 0 and r = 0, inf h(t(cM )) = h(xmax);
-		if ( (k==0) & (MissingMarIdx.size()==gammaArr.size()) ) {
+		if ( (k==0) & (numMissingMar==numMar) ) {
 			return InfHx=h_x(xmax);
 		}
 
 		//from here on, the function can be assumed to be convex
 
 
-		if ( (beta==0) | (betaArr.indexOf(0)>=0) ) 
+		if ( (beta==0) | containsZero(betaArr, k) ) 
 			DerivLnH0=Double.NEGATIVE_INFINITY;
 
-		for (i=0; i<deltaArr.size(); i++)
+		for (i=0; i<numMar; i++)
 		{
-			if ((deltaArr.get(i)==0) & (deltaTildeArr.get(i)>0))
+			if ((deltaArr[i]==0) & (deltaTildeArr[i]>0))
 			{
 				DerivLnH0=Double.NEGATIVE_INFINITY;
 				break;
@@ -692,36 +814,31 @@ public class NaiveCredal extends NaiveClassifier{
 
 		//==MAR COMPUTATION
 		//computation done on logarithms to avoid overflows
-		for (i=0; i<deltaTildeArr.size(); i++)
+		for (i=0; i<numMar; i++)
 		{
-			tmp += Math.log( (deltaTildeArr.get(i) + x)/(gammaTildeArr.get(i)+s*m-x));
+			tmp += Math.log( (deltaTildeArr[i] + x)/(gammaTildeArr[i]+s*m-x));
 			//simple epsilon
-			tmp += Math.log((gammaArr.get(i)+epsilonArr[i]/numValues[i]*(s*m-x))/(deltaArr.get(i)+x*(epsilonArr[i]/numValues[i]+1-epsilonArr[i])));
+			tmp += Math.log((gammaArr[i]+epsilonArr[i]/numValues[i]*(s*m-x))/(deltaArr[i]+x*(epsilonArr[i]/numValues[i]+1-epsilonArr[i])));
 		}
 		return Math.exp(tmp);
 	}
 
 
 	/**
-	 * Computes the CIR test of dominance between class c1 and c2 (if the returned value is >1, c1 dominates c2)
+	 * Fills alpha, beta, k and the arrays of counts used by the CIR test of dominance between class c1 and c2 for the given instance,
+	 * reading them from the tables built at training time. Returns the number of missing features, which are marginalized.
 	 */
-	private double credalDominance(int c1, int c2, int[] currentInstance, double xmin, double xmax){
-
-		alphaArr=new ArrayList<Integer>(numFeats);
-		betaArr=new ArrayList<Integer>(numFeats);		
-		deltaTildeArr=new ArrayList<Integer>(numFeats);
-		gammaTildeArr=new ArrayList<Integer>(numFeats);
-		deltaArr=new ArrayList<Integer>(numFeats);
-		gammaArr=new ArrayList<Integer>(numFeats);
+	private int collectCounts(int c1, int c2, int[] currentInstance){
 
 		int i;
-		ArrayList<Integer> MissingMarIdx=new ArrayList<Integer>(numFeats-nonMarTestingIdx.size());
-
-		//remember that frequencies of the super class have been computed without any prior additional count, so these casts
-		//do not involve any information loss
-		alpha=(int)super.getOutputClasses()[c1].getFrequency();
-		beta=(int)super.getOutputClasses()[c2].getFrequency();
+		int numMissingMar=0;
+		int[][] condCounts1=condCounts[c1];
+		int[][] condCounts2=condCounts[c2];
 
+		alpha=classCounts[c1];
+		beta=classCounts[c2];
+		k=0;
+		numMar=0;
 
 		//get the conditional counts 
 		for (i=0; i<numFeats; i++)
@@ -729,33 +846,53 @@ public class NaiveCredal extends NaiveClassifier{
 			//missing variables are marginalized
 			if (currentInstance[i]==-9999)
 			{
-				MissingMarIdx.add(i);
+				numMissingMar++;
 				continue;
 			}
 
 			//NonMar features
-			if (nonMarTrainingIdx.indexOf(i)>=0)
+			if (isNonMarTraining[i])
 			{
-				//empirical frequencies of superclass have been built without adding any prior, so they ARE integer and the following casts do not
-				//involve any information loss
-				alphaArr.add((int)super.featureSet[i].getConditionalFrequencies(c1,currentInstance[i]));
-				betaArr.add((int)super.featureSet[i].getConditionalFrequencies(c2,currentInstance[i]) + super.featureSet[i].getMissing(c2));
+				alphaArr[k]=condCounts1[i][currentInstance[i]];
+				betaArr[k]=condCounts2[i][currentInstance[i]] + missingCounts[c2][i];
+				k++;
 			}
 
 			//MAR features
 			else 
 			{
-				gammaArr.add((int)super.featureSet[i].getConditionalFrequencies(c1,currentInstance[i]));
-				deltaArr.add((int)super.featureSet[i].getConditionalFrequencies(c2,currentInstance[i]));
-				gammaTildeArr.add((int)super.featureSet[i].getClassCountAsMar(c1));				
-				deltaTildeArr.add((int)super.featureSet[i].getClassCountAsMar(c2));
+				gammaArr[numMar]=condCounts1[i][currentInstance[i]];
+				deltaArr[numMar]=condCounts2[i][currentInstance[i]];
+				gammaTildeArr[numMar]=marCounts[c1][i];				
+				deltaTildeArr[numMar]=marCounts[c2][i];
+				numMar++;
 			}
 		}
 
-
 		//note that NonMar features are always non missing at this stage, because occurring missingness are managed
 		//via replacement of all possible values.
-		k=alphaArr.size();
+		return numMissingMar;
+	}
+
+	/**
+	 * Returns true if one of the first n elements of the array is 0
+	 */
+	private static boolean containsZero(int[] arr, int n){
+		for (int i=0; i<n; i++){
+			if (arr[i]==0)
+				return true;
+		}
+		return false;
+	}
+
+
+	/**
+	 * Computes the CIR test of dominance between class c1 and c2 (if the returned value is >1, c1 dominates c2)
+	 */
+	private double credalDominance(int c1, int c2, int[] currentInstance, double xmin, double xmax){
+
+		int i;
+		int numMissingMar=collectCounts(c1, c2, currentInstance);
 
 
 
@@ -794,7 +931,7 @@ public class NaiveCredal extends NaiveClassifier{
 
 
 		//if k = 0 and r = 0, inf h(t(cM )) = h(xmax);
-		if ( (k==0) & (MissingMarIdx.size()==gammaArr.size()) ) {
+		if ( (k==0) & (numMissingMar==numMar) ) {
 			return InfHx=h_x(xmax);
 		}
 
@@ -805,9 +942,9 @@ public class NaiveCredal extends NaiveClassifier{
 		//			DerivLnH0=Double.NEGATIVE_INFINITY;
 
 
-		//		for (i=0; i<deltaArr.size(); i++)
+		//		for (i=0; i<numMar; i++)
 		//		{
-		//			if ((deltaArr.get(i)==0) & (deltaTildeArr.get(i)>0))
+		//			if ((deltaArr[i]==0) & (deltaTildeArr[i]>0))
 		//			{
 		//				DerivLnH0=Double.NEGATIVE_INFINITY;
 		//				break;
@@ -924,8 +1061,8 @@ public class NaiveCredal extends NaiveClassifier{
 		double MarProduct=0, NonMarProduct=0;
 
 		//==NON MAR COMPUTATION
-		for (i=0; i<alphaArr.size(); i++) {
-			NonMarProduct += Math.log(alphaArr.get(i)/(betaArr.get(i)+x));
+		for (i=0; i<k; i++) {
+			NonMarProduct += Math.log(alphaArr[i]/(betaArr[i]+x));
 		}
 		//exponential to return to the true computation
 		NonMarProduct=Math.exp(NonMarProduct);
@@ -933,22 +1070,22 @@ public class NaiveCredal extends NaiveClassifier{
 
 		//==MAR COMPUTATION
 		//computation done on logarithms to avoid overflows
-		for (i=0; i<deltaTildeArr.size(); i++)
+		for (i=0; i<numMar; i++)
 		{
 
-			MarProduct += Math.log( (deltaTildeArr.get(i) + x)/(gammaTildeArr.get(i)+s-x));
+			MarProduct += Math.log( (deltaTildeArr[i] + x)/(gammaTildeArr[i]+s-x));
 			//epsilon contamination
-			//			MarProduct += Math.log( (deltaTildeArr.get(i) + x)/(gammaTildeArr.get(i)+(2*s*epsilon/numClasses+s*(1-epsilon))-x)); 
+			//			MarProduct += Math.log( (deltaTildeArr[i] + x)/(gammaTildeArr[i]+(2*s*epsilon/numClasses+s*(1-epsilon))-x)); 
 
 			//no epsilon
-			//MarProduct += Math.log( (gammaArr.get(i))/(deltaArr.get(i)+x));
+			//MarProduct += Math.log( (gammaArr[i])/(deltaArr[i]+x));
 
 			//simple epsilon
-			MarProduct += Math.log((gammaArr.get(i)+s*epsilon)/(deltaArr.get(i)+x));
+			MarProduct += Math.log((gammaArr[i]+s*epsilon)/(deltaArr[i]+x));
 
 			//epsilon-contamination
 			//instead we add the epsilon managament to the conditional frequencies conditional on c1
-			//			MarProduct += Math.log( (gammaArr.get(i)+epsilonArr[i]*x/(numValues[i]))/(deltaArr.get(i)+x*(1-epsilonArr[i])+s*epsilonArr[i]*x/(numValues[i])));		
+			//			MarProduct += Math.log( (gammaArr[i]+epsilonArr[i]*x/(numValues[i]))/(deltaArr[i]+x*(1-epsilonArr[i])+s*epsilonArr[i]*x/(numValues[i])));		
 		}
 		//exponential to return to the true computation
 		MarProduct=Math.exp(MarProduct);
@@ -967,13 +1104,13 @@ public class NaiveCredal extends NaiveClassifier{
 		if (x==0)
 		{
 
-			if ( (beta==0) | (betaArr.indexOf(0)>=0) ) {
+			if ( (beta==0) | containsZero(betaArr, k) ) {
 				return Double.NEGATIVE_INFINITY;
 			}
 
-			for (int i=0; i<deltaArr.size(); i++)
+			for (int i=0; i<numMar; i++)
 			{
-				if ((deltaArr.get(i)==0) & (deltaTildeArr.get(i)>0)) {
+				if ((deltaArr[i]==0) & (deltaTildeArr[i]>0)) {
 					return Double.NEGATIVE_INFINITY;
 				}
 			}
@@ -986,19 +1123,19 @@ public class NaiveCredal extends NaiveClassifier{
 		int i;
 		//modified version with eps
 		for (i=0; i<k; i++) {
-			value -= 1/(betaArr.get(i)+x);
+			value -= 1/(betaArr[i]+x);
 		}
 
-		for (i=0; i<deltaTildeArr.size(); i++) {
-			value += 1/(deltaTildeArr.get(i)+x);
+		for (i=0; i<numMar; i++) {
+			value += 1/(deltaTildeArr[i]+x);
 		}
 
-		for (i=0; i<deltaArr.size(); i++) {
-			value -= 1/(deltaArr.get(i)+x*(1-epsilonArr[i])+s*epsilonArr[i]/(numClasses*numValues[i]));
+		for (i=0; i<numMar; i++) {
+			value -= 1/(deltaArr[i]+x*(1-epsilonArr[i])+s*epsilonArr[i]/(numClasses*numValues[i]));
 		}
 
-		for (i=0; i<gammaTildeArr.size(); i++) {
-			value += 1/(gammaTildeArr.get(i)+(2*s*epsilon/numClasses+s*(1-epsilon))-x);
+		for (i=0; i<numMar; i++) {
+			value += 1/(gammaTildeArr[i]+(2*s*epsilon/numClasses+s*(1-epsilon))-x);
 		}
 
 		return value;
@@ -1017,18 +1154,18 @@ public class NaiveCredal extends NaiveClassifier{
 		value +=(k-1)/Math.pow((alpha+(2*s*epsilon/numClasses+s*(1-epsilon))-x),2);
 
 		for (i=0; i<k; i++) {
-			value += 1/Math.pow(betaArr.get(i)+x,2);
+			value += 1/Math.pow(betaArr[i]+x,2);
 		}
 
-		for (i=0; i<deltaTildeArr.size(); i++) {
-			value -= 1/Math.pow(deltaTildeArr.get(i)+x,2);
+		for (i=0; i<numMar; i++) {
+			value -= 1/Math.pow(deltaTildeArr[i]+x,2);
 		}
 
-		for (i=0; i<deltaArr.size(); i++)
-			value += 1/Math.pow(deltaArr.get(i)+x*(1-epsilonArr[i])+s*epsilonArr[i]/(numClasses*numValues[i]),2);
+		for (i=0; i<numMar; i++)
+			value += 1/Math.pow(deltaArr[i]+x*(1-epsilonArr[i])+s*epsilonArr[i]/(numClasses*numValues[i]),2);
 
-		for (i=0; i<gammaTildeArr.size(); i++) {
-			value += 1/Math.pow(gammaTildeArr.get(i)+(2*s*epsilon/numClasses+s*(1-epsilon))-x,2);
+		for (i=0; i<numMar; i++) {
+			value += 1/Math.pow(gammaTildeArr[i]+(2*s*epsilon/numClasses+s*(1-epsilon))-x,2);
 		}
 
 		return value;
@@ -1116,30 +1253,64 @@ public class NaiveCredal extends NaiveClassifier{
 	/**overall occurrences of class c2*/ 
 	private int beta;
 
-	/**alphaArr is defined for NonMar features only; it contains the count conditional on c1, after having dropped missing data*/
-	private ArrayList<Integer> alphaArr;
+	/**alphaArr is defined for NonMar features only; it contains the count conditional on c1, after having dropped missing data.
+	Its first k elements are used*/
+	private int[] alphaArr;
 
-	/**BetaArr is defined for NonMar features only; it contains  counts conditional  on c2, with added the missing records for the given feature*/
-	private ArrayList<Integer> betaArr;
+	/**BetaArr is defined for NonMar features only; it contains  counts conditional  on c2, with added the missing records for the given feature.
+	Its first k elements are used*/
+	private int[] betaArr;
 
-	/**gamma array is defined for Mar features only; it contains conditional count with respect to class c1 after having dropped missing data*/
-	private ArrayList<Integer> gammaArr;
+	/**gamma array is defined for Mar features only; it contains conditional count with respect to class c1 after having dropped missing data.
+	Its first numMar elements are used*/
+	private int[] gammaArr;
 
-	/**delta array is defined for Mar features only; it contains conditional count with respect to class c2 after having dropped missing data*/
-	private ArrayList<Integer> deltaArr;
+	/**delta array is defined for Mar features only; it contains conditional count with respect to class c2 after having dropped missing data.
+	Its first numMar elements are used*/
+	private int[] deltaArr;
 
 	/**Sum of occurrences of class c1, considering only those instances of the learning set where
-	the NonMar feature is non missing. A different value for every feature.*/
-	private ArrayList<Integer> gammaTildeArr;
+	the NonMar feature is non missing. A different value for every feature. Its first numMar elements are used*/
+	private int[] gammaTildeArr;
 
 	/**Sum of occurrences of class c2, considering only those instances of the learning set where
-	the NonMar feature is non missing. A different value for every feature.*/
-	private ArrayList<Integer> deltaTildeArr;
+	the NonMar feature is non missing. A different value for every feature. Its first numMar elements are used*/
+	private int[] deltaTildeArr;
 
 
 	/**Number of NonMar features in training*/
 	private int k;
 
+	/**Number of non missing Mar features of the instance being classified*/
+	private int numMar;
+
+	/**Occurrences of each class*/
+	private int[] classCounts;
+
+	/**Counts of each class, feature and value of the feature, after having dropped missing data*/
+	private int[][][] condCounts;
+
+	/**How many times each feature is missing, for every class*/
+	private int[][] missingCounts;
+
+	/**Occurrences of each class, considering only those instances where the feature is non missing*/
+	private int[][] marCounts;
+
+	/**Whether each feature is NonMar in training*/
+	private boolean[] isNonMarTraining;
+
+	/**Whether each feature is NonMar in testing*/
+	private boolean[] isNonMarTesting;
+
+	/**Maximum number of results kept by dominanceCache, 0 if there is no cache*/
+	private int dominanceCacheSize;
+
+	/**Results of the tests of dominance for instances without missing NonMar features, built when first used*/
+	private transient DominanceCache dominanceCache;
+
+	/**Buffer filled with the key of the cache for each test*/
+	private transient int[] cacheKey;
+
 
 	/**Indexes of nonMarFeature in training 
 	 */
@@ -0,0 +1,455 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package weka.classifiers.trees;
+
+import java.io.Serializable;
+
+import weka.core.*;
+
+/**
+ * Read-only copy of a training set with nominal attributes, where the values are
+ * coded as integers and stored by columns.
+ *
+ * The tree builders keep one store for the whole tree. The instances that reach a
+ * node are described by a range [from, to) of an array of row indices, which is
+ * partitioned in place, as in quicksort, when the node is split. Therefore, no
+ * copy of the data is made at any level of the tree.
+ *
+ * Instances with missing class value are not included in the store.
+ *
+ * A store can also describe a sample of another one, such as a bootstrap sample,
+ * by the number of times each row is in the sample. It shares the columns of the
+ * original store, so the samples of an ensemble take no copy of the data either.
+ *
+ * Each column takes the narrowest type that holds the codes of its attribute: a
+ * byte per row for up to 256 values, a short for up to 65536 values, and an int
+ * otherwise. The class values are kept in their own array.
+ */
+public class ColumnStore implements Serializable {
+
+  /** for serialization */
+  static final long serialVersionUID = -3290346165843707455L;
+
+  /** Header of the encoded data. */
+  private Instances m_Header;
+
+  /** Values of each attribute with at most 256 values, indexed by row, or null for the other attributes. */
+  private byte[][] m_ByteColumns;
+
+  /** Values of each attribute with at most 65536 values and more than 256, or null for the other attributes. */
+  private short[][] m_ShortColumns;
+
+  /** Values of each attribute with more than 65536 values, or null for the other attributes. */
+  private int[][] m_IntColumns;
+
+  /** Class value of each row. */
+  private int[] m_ClassValues;
+
+  /** Number of rows in the store. */
+  private int m_NumRows;
+
+  /** Number of times each row is in the sample, or null if every row is there once. */
+  private int[] m_Multiplicities;
+
+  /**
+   * Encodes the given data. Instances with missing class value are skipped.
+   * @param data the data, whose attributes must be nominal and have no missing values
+   */
+  public ColumnStore(Instances data) {
+    int num_attributes = data.numAttributes();
+    int class_index = data.classIndex();
+    int num_instances = data.numInstances();
+    Instance instance;
+    int num_values, value, row;
+
+    m_Header = new Instances(data, 0);
+
+    m_NumRows = 0;
+    for (int i = 0; i < num_instances; i++) {
+      if (!data.instance(i).classIsMissing())
+        m_NumRows++;
+    }
+
+    m_ByteColumns = new byte[num_attributes][];
+    m_ShortColumns = new short[num_attributes][];
+    m_IntColumns = new int[num_attributes][];
+    for (int j = 0; j < num_attributes; j++) {
+      if (j == class_index)
+        continue;
+
+      num_values = data.attribute(j).numValues();
+      if (num_values <= 1 << 8)
+        m_ByteColumns[j] = new byte[m_NumRows];
+      else if (num_values <= 1 << 16)
+        m_ShortColumns[j] = new short[m_NumRows];
+      else
+        m_IntColumns[j] = new int[m_NumRows];
+    }
+    m_ClassValues = new int[m_NumRows];
+
+    row = 0;
+    for (int i = 0; i < num_instances; i++) {
+      instance = data.instance(i);
+
+      if (instance.classIsMissing())
+        continue;
+
+      for (int j = 0; j < num_attributes; j++) {
+        if (j == class_index)
+          continue;
+
+        value = (int) instance.value(j);
+        if (m_ByteColumns[j] != null)
+          m_ByteColumns[j][row] = (byte) value;
+        else if (m_ShortColumns[j] != null)
+          m_ShortColumns[j][row] = (short) value;
+        else
+          m_IntColumns[j][row] = value;
+      }
+      m_ClassValues[row] = (int) instance.classValue();
+      row++;
+    }
+  }
+
+  /**
+   * Creates a sample of a store, which shares its encoded data.
+   * @param store the store
+   * @param multiplicities the number of times each row of the store is in the sample
+   */
+  public ColumnStore(ColumnStore store, int[] multiplicities) {
+    if (multiplicities.length != store.m_NumRows)
+      throw new IllegalArgumentException("multiplicities.length != numRows.");
+
+    m_Header = store.m_Header;
+    m_ByteColumns = store.m_ByteColumns;
+    m_ShortColumns = store.m_ShortColumns;
+    m_IntColumns = store.m_IntColumns;
+    m_ClassValues = store.m_ClassValues;
+    m_NumRows = store.m_NumRows;
+    m_Multiplicities = multiplicities;
+  }
+
+  /**
+   * @return the header of the encoded data
+   */
+  public Instances getHeader() {
+    return m_Header;
+  }
+
+  /**
+   * @return the number of rows in the store, including those that are not in the sample
+   */
+  public int numRows() {
+    return m_NumRows;
+  }
+
+  /**
+   * @return the number of attributes, including the class
+   */
+  public int numAttributes() {
+    return m_Header.numAttributes();
+  }
+
+  /**
+   * @return the number of class values
+   */
+  public int numClasses() {
+    return m_Header.numClasses();
+  }
+
+  /**
+   * @return the index of the class attribute
+   */
+  public int classIndex() {
+    return m_Header.classIndex();
+  }
+
+  /**
+   * @param index the index of the attribute
+   * @return the attribute with the given index
+   */
+  public Attribute attribute(int index) {
+    return m_Header.attribute(index);
+  }
+
+  /**
+   * @param row the row
+   * @param index the index of the attribute
+   * @return the coded value of the attribute in the given row
+   */
+  public int value(int row, int index) {
+    if (m_ByteColumns[index] != null)
+      return m_ByteColumns[index][row] & 0xFF;
+    if (m_ShortColumns[index] != null)
+      return m_ShortColumns[index][row] & 0xFFFF;
+    return m_IntColumns[index][row];
+  }
+
+  /**
+   * Decodes the values of an attribute for the rows in a range.
+   * @param index the index of the attribute
+   * @param rows the row indices
+   * @param from the first position of the range
+   * @param to the position after the last one of the range
+   * @return the values, where the value of rows[i] is at position i - from
+   */
+  public int[] values(int index, int[] rows, int from, int to) {
+    int[] values = new int[to - from];
+    byte[] bytes = m_ByteColumns[index];
+    short[] shorts = m_ShortColumns[index];
+    int[] ints = m_IntColumns[index];
+
+    if (bytes != null) {
+      for (int i = from; i < to; i++)
+        values[i - from] = bytes[rows[i]] & 0xFF;
+    } else if (shorts != null) {
+      for (int i = from; i < to; i++)
+        values[i - from] = shorts[rows[i]] & 0xFFFF;
+    } else {
+      for (int i = from; i < to; i++)
+        values[i - from] = ints[rows[i]];
+    }
+
+    return values;
+  }
+
+  /**
+   * @param row the row
+   * @return the class value of the given row
+   */
+  public int classValue(int row) {
+    return m_ClassValues[row];
+  }
+
+  /**
+   * @param row the row
+   * @return the number of times the given row is in the sample
+   */
+  public int multiplicity(int row) {
+    return m_Multiplicities == null ? 1 : m_Multiplicities[row];
+  }
+
+  /**
+   * Returns a new array with the indices of all the rows in the sample, which can be
+   * used as the range of the root node.
+   * @return the rows in increasing order, that is, 0, 1, ..., numRows()-1 if every
+   * row is in the sample once
+   */
+  public int[] getRowIndices() {
+    int[] rows;
+    int num_rows;
+
+    if (m_Multiplicities == null) {
+      rows = new int[m_NumRows];
+      for (int i = 0; i < m_NumRows; i++)
+        rows[i] = i;
+      return rows;
+    }
+
+    num_rows = 0;
+    for (int i = 0; i < m_NumRows; i++) {
+      if (m_Multiplicities[i] > 0)
+        num_rows++;
+    }
+
+    rows = new int[num_rows];
+    num_rows = 0;
+    for (int i = 0; i < m_NumRows; i++) {
+      if (m_Multiplicities[i] > 0)
+        rows[num_rows++] = i;
+    }
+    return rows;
+  }
+
+  /**
+   * Counts the instances of the rows in a range, each row as many times as it is
+   * in the sample.
+   * @param rows the row indices
+   * @param from the first position of the range
+   * @param to the position after the last one of the range
+   * @return the number of instances
+   */
+  public int numInstances(int[] rows, int from, int to) {
+    int[] multiplicities = m_Multiplicities;
+    int num_instances;
+
+    if (multiplicities == null)
+      return to - from;
+
+    num_instances = 0;
+    for (int i = from; i < to; i++)
+      num_instances += multiplicities[rows[i]];
+
+    return num_instances;
+  }
+
+  /**
+   * Counts the class values of the rows in a range, each row as many times as it
+   * is in the sample.
+   * @param rows the row indices
+   * @param from the first position of the range
+   * @param to the position after the last one of the range
+   * @return the frequency of each class value
+   */
+  public double[] classCounts(int[] rows, int from, int to) {
+    double[] counts = new double[numClasses()];
+    int[] classes = m_ClassValues;
+    int[] multiplicities = m_Multiplicities;
+
+    if (multiplicities == null) {
+      for (int i = from; i < to; i++)
+        counts[classes[rows[i]]]++;
+    } else {
+      for (int i = from; i < to; i++)
+        counts[classes[rows[i]]] += multiplicities[rows[i]];
+    }
+
+    return counts;
+  }
+
+  /**
+   * Builds the contingency table of an attribute and the class for the rows in a range,
+   * counting each row as many times as it is in the sample.
+   * @param index the index of the attribute
+   * @param rows the row indices
+   * @param from the first position of the range
+   * @param to the position after the last one of the range
+   * @return the matrix of counts, indexed by attribute value and class value
+   */
+  public double[][] contingencyTable(int index, int[] rows, int from, int to) {
+    double[][] counts = new double[attribute(index).numValues()][numClasses()];
+    byte[] bytes = m_ByteColumns[index];
+    int[] classes = m_ClassValues;
+    int[] multiplicities = m_Multiplicities;
+    int[] values;
+    int row;
+
+    // the attributes with few values, which are most of them, are read directly
+    if (bytes != null) {
+      if (multiplicities == null) {
+        for (int i = from; i < to; i++) {
+          row = rows[i];
+          counts[bytes[row] & 0xFF][classes[row]]++;
+        }
+      } else {
+        for (int i = from; i < to; i++) {
+          row = rows[i];
+          counts[bytes[row] & 0xFF][classes[row]] += multiplicities[row];
+        }
+      }
+      return counts;
+    }
+
+    values = values(index, rows, from, to);
+    if (multiplicities == null) {
+      for (int i = from; i < to; i++)
+        counts[values[i - from]][classes[rows[i]]]++;
+    } else {
+      for (int i = from; i < to; i++) {
+        row = rows[i];
+        counts[values[i - from]][classes[row]] += multiplicities[row];
+      }
+    }
+
+    return counts;
+  }
+
+  /**
+   * Measure of the uncertainty of a class distribution, which scores the splits of a tree.
+   */
+  public interface ClassEntropy {
+
+    /**
+     * @param classCounts the frequency of each class value
+     * @return the entropy of the class distribution
+     * @throws Exception if the entropy can't be computed
+     */
+    double computeEntropy(double[] classCounts) throws Exception;
+  }
+
+  /**
+   * Computes the information gain of an attribute from its contingency table.
+   * @param entropy the entropy of the class distribution of the node
+   * @param counts the class counts for each value of the attribute
+   * @param numInstances the number of instances of the node
+   * @param measure the entropy of the class distribution of each value
+   * @return the information gain of the attribute
+   * @throws Exception if some entropy can't be computed
+   */
+  public static double infoGain(double entropy, double[][] counts, int numInstances,
+                                ClassEntropy measure) throws Exception {
+    double info_gain = entropy;
+    double num_instances_value;
+
+    for (int j = 0; j < counts.length; j++) {
+      num_instances_value = Utils.sum(counts[j]);
+
+      if (num_instances_value > 0)
+        info_gain -= (num_instances_value / (double) numInstances) * measure.computeEntropy(counts[j]);
+    }
+    return info_gain;
+  }
+
+  /**
+   * Reorders the rows in a range so that they are grouped by the value of an attribute,
+   * in increasing order of the values. The rows are moved in place.
+   * @param index the index of the attribute
+   * @param rows the row indices
+   * @param from the first position of the range
+   * @param to the position after the last one of the range
+   * @return an array b with numValues+1 positions, where the rows with the j-th value
+   * are in the range [b[j], b[j+1])
+   */
+  public int[] partition(int index, int[] rows, int from, int to) {
+    int num_values = attribute(index).numValues();
+    int[] values = values(index, rows, from, to);
+    int[] bounds = new int[num_values + 1];
+    int[] next = new int[num_values];
+    int row, value, swap;
+
+    for (int i = 0; i < values.length; i++)
+      bounds[values[i] + 1]++;
+
+    bounds[0] = from;
+    for (int j = 0; j < num_values; j++) {
+      bounds[j + 1] += bounds[j];
+      next[j] = bounds[j];
+    }
+
+    // Each row is swapped directly into the block of its value, along with its value
+    for (int j = 0; j < num_values; j++) {
+      while (next[j] < bounds[j + 1]) {
+        row = rows[next[j]];
+        value = values[next[j] - from];
+
+        if (value == j) {
+          next[j]++;
+        } else {
+          swap = rows[next[value]];
+          rows[next[value]] = row;
+          rows[next[j]] = swap;
+          values[next[j] - from] = values[next[value] - from];
+          values[next[value] - from] = value;
+          next[value]++;
+        }
+      }
+    }
+
+    return bounds;
+  }
+
+}
@@ -0,0 +1,35 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package weka.classifiers.trees;
+
+/**
+ * Classifier that can be built from data already encoded in a ColumnStore.
+ *
+ * An ensemble encodes its training data once and builds each member from a sample
+ * of that store, given by the number of times each row is in the sample, instead
+ * of a copy of the instances of the sample.
+ */
+public interface ColumnStoreClassifier {
+
+  /**
+   * Builds the classifier from encoded training data. The store is only read, so it
+   * can be shared by several classifiers built at the same time.
+   * @param store the training data, whose capabilities have already been tested
+   * @throws Exception if the classifier can't be built
+   */
+  void buildClassifier(ColumnStore store) throws Exception;
+}
@@ -0,0 +1,236 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package weka.classifiers.trees;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import weka.core.*;
+
+/**
+ * Compiled form of a tree of NodeTree objects for classifying instances.
+ *
+ * The nodes are numbered in breadth-first order, so the successors of a node have
+ * consecutive numbers, and the tree is stored in three arrays:
+ * <ul>
+ * <li> the index of the split attribute of each node, -1 for the leaves, </li>
+ * <li> for an inner node, the number of its first successor; for a leaf, its number
+ * among the leaves, </li>
+ * <li> the class frequencies of all the leaves, one block of numClasses values per leaf. </li>
+ * </ul>
+ * Finding the leaf of an instance only reads these arrays and allocates nothing.
+ * The tree can also keep the non-dominated class values of every leaf, so that
+ * classifying an instance is a lookup.
+ * The compiled tree is read-only, so it can be used by several threads at once.
+ */
+public class FlatTree implements Serializable {
+
+  /** for serialization */
+  static final long serialVersionUID = 5113987390214846629L;
+
+  /** Index of the split attribute of each node, -1 for the leaves. */
+  private int[] m_Attributes;
+
+  /** First successor of each inner node, or number of the leaf. */
+  private int[] m_Children;
+
+  /** Class frequencies of the leaves, numClasses values per leaf. */
+  private double[] m_Frequencies;
+
+  /** Number of class values. */
+  private int m_NumClasses;
+
+  /** Number of leaves. */
+  private int m_NumLeaves;
+
+  /** Non-dominated class values of each leaf, null if they have not been set. */
+  private int[][] m_NonDominatedSets;
+
+  /** Parameter s of the IDM used to compute the non-dominated sets. */
+  private double m_SValue;
+
+  /**
+   * Compiles a tree.
+   * @param root the root of the tree, whose leaves have their class frequencies set
+   */
+  public FlatTree(NodeTree root) {
+    ArrayList<NodeTree> nodes = new ArrayList<NodeTree>();
+    NodeTree node;
+    Attribute attribute;
+    int num_nodes, leaf, next;
+
+    // breadth-first order: the successors of every node are added together
+    nodes.add(root);
+    m_NumLeaves = 0;
+    for (int i = 0; i < nodes.size(); i++) {
+      node = nodes.get(i);
+      attribute = node.getAttribute();
+
+      if (attribute == null) {
+        m_NumClasses = node.getFrequency().length;
+        m_NumLeaves++;
+      } else {
+        for (int j = 0; j < attribute.numValues(); j++)
+          nodes.add(node.getSuccesors(j));
+      }
+    }
+
+    num_nodes = nodes.size();
+    m_Attributes = new int[num_nodes];
+    m_Children = new int[num_nodes];
+    m_Frequencies = new double[m_NumLeaves * m_NumClasses];
+
+    leaf = 0;
+    next = 1;
+    for (int i = 0; i < num_nodes; i++) {
+      node = nodes.get(i);
+      attribute = node.getAttribute();
+
+      if (attribute == null) {
+        m_Attributes[i] = -1;
+        m_Children[i] = leaf;
+        System.arraycopy(node.getFrequency(), 0, m_Frequencies, leaf * m_NumClasses, m_NumClasses);
+        leaf++;
+      } else {
+        m_Attributes[i] = attribute.index();
+        m_Children[i] = next;
+        next += attribute.numValues();
+      }
+    }
+  }
+
+  /**
+   * Finds the leaf reached by an instance without missing values.
+   * @param instance the instance
+   * @return the number of the leaf
+   */
+  public int leaf(Instance instance) {
+    int node = 0;
+    int attribute = m_Attributes[0];
+
+    while (attribute >= 0) {
+      node = m_Children[node] + (int) instance.value(attribute);
+      attribute = m_Attributes[node];
+    }
+
+    return m_Children[node];
+  }
+
+  /**
+   * Finds the leaf reached by the values of an instance without missing values.
+   * @param values the values of the instance, indexed by attribute
+   * @return the number of the leaf
+   */
+  public int leaf(double[] values) {
+    int node = 0;
+    int attribute = m_Attributes[0];
+
+    while (attribute >= 0) {
+      node = m_Children[node] + (int) values[attribute];
+      attribute = m_Attributes[node];
+    }
+
+    return m_Children[node];
+  }
+
+  /**
+   * @param leaf the number of a leaf
+   * @return the position of the first class frequency of the leaf in getFrequencies()
+   */
+  public int frequencyOffset(int leaf) {
+    return leaf * m_NumClasses;
+  }
+
+  /**
+   * Returns the class frequencies of all the leaves. The array must not be modified.
+   * @return the frequencies, numClasses values per leaf
+   */
+  public double[] getFrequencies() {
+    return m_Frequencies;
+  }
+
+  /**
+   * Sets the non-dominated class values of every leaf. Since the frequencies of a leaf do not
+   * change, the tree computes them once. Leaves with the same set share the same array.
+   * @param sets the non-dominated class values of each leaf, in increasing order
+   * @param sValue the parameter s of the IDM used to compute the sets
+   */
+  public void setNonDominatedSets(int[][] sets, double sValue) {
+    HashMap<String, int[]> distinct = new HashMap<String, int[]>();
+    String key;
+    int[] set;
+
+    m_NonDominatedSets = new int[sets.length][];
+    for (int i = 0; i < sets.length; i++) {
+      key = Arrays.toString(sets[i]);
+      set = distinct.get(key);
+
+      if (set == null) {
+        set = sets[i];
+        distinct.put(key, set);
+      }
+      m_NonDominatedSets[i] = set;
+    }
+    m_SValue = sValue;
+  }
+
+  /**
+   * Returns the non-dominated class values of a leaf. The array must not be modified.
+   * @param leaf the number of the leaf
+   * @return the indices of the non-dominated class values, in increasing order
+   */
+  public int[] nonDominatedSet(int leaf) {
+    return m_NonDominatedSets[leaf];
+  }
+
+  /**
+   * @return true if the non-dominated sets of the leaves have been set
+   */
+  public boolean hasNonDominatedSets() {
+    return m_NonDominatedSets != null;
+  }
+
+  /**
+   * @return the parameter s of the IDM used to compute the non-dominated sets
+   */
+  public double getSValue() {
+    return m_SValue;
+  }
+
+  /**
+   * @return the number of class values
+   */
+  public int numClasses() {
+    return m_NumClasses;
+  }
+
+  /**
+   * @return the number of leaves
+   */
+  public int numLeaves() {
+    return m_NumLeaves;
+  }
+
+  /**
+   * @return the number of nodes
+   */
+  public int numNodes() {
+    return m_Attributes.length;
+  }
+}
@@ -90,6 +90,11 @@ public class NodeTree implements Serializable{
             return this.m_Distribution;
         
     }
+    
+    /** Returns the distribution given to setDistribution, or null if there is none. */
+    double[] getStoredDistribution(){
+        return this.m_Distribution;
+    }
      
     public void setFrequency(double[] value){
         this.m_Frequency=value;
@@ -0,0 +1,31 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package weka.classifiers.trees;
+
+/**
+ * Classifier whose model is a tree of NodeTree objects.
+ *
+ * An ensemble of such classifiers can compact the trees of all its members
+ * together with a NodeTreeCompactor once they are built.
+ */
+public interface NodeTreeClassifier {
+
+  /**
+   * @return the root of the tree, or null if the classifier has not been built
+   */
+  NodeTree getRootNode();
+}
@@ -0,0 +1,248 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package weka.classifiers.trees;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * Shares the identical parts of trees of NodeTree objects, so that they are stored once.
+ *
+ * The trees are visited bottom-up. The arrays of a node, such as its class frequencies,
+ * are replaced by the first array seen with the same contents, and then the node itself
+ * is replaced by the first node seen with the same split attribute, arrays and
+ * successors. Since the successors have already been replaced, two subtrees with the
+ * same structure end up as the same object. The same compactor can be used for several
+ * trees, such as the members of an ensemble, which then share their subtrees.
+ *
+ * The compacted trees are graphs where a node can have several parents, but every path
+ * from a root is the same as before, so the classification of any instance does not
+ * change. Java serialization writes a shared node once. The nodes must not be modified
+ * after the compaction, which is the case for the trees of this package once built.
+ */
+public class NodeTreeCompactor {
+
+  /**
+   * Key of a node whose arrays and successors have already been replaced, so that
+   * they can be compared by reference.
+   */
+  private static class NodeKey {
+
+    /** The node. */
+    private final NodeTree m_Node;
+
+    /** The hash code of the node. */
+    private final int m_Hash;
+
+    /**
+     * @param node the node
+     */
+    NodeKey(NodeTree node) {
+      int hash = System.identityHashCode(node.getAttribute());
+      NodeTree successor;
+
+      hash = 31 * hash + System.identityHashCode(node.getFrequency());
+      hash = 31 * hash + System.identityHashCode(node.getStoredDistribution());
+      hash = 31 * hash + System.identityHashCode(node.attSelected);
+      hash = 31 * hash + Double.valueOf(node.getRealSupport()).hashCode();
+      if (node.getAttribute() != null) {
+        for (int i = 0; i < node.getAttribute().numValues(); i++) {
+          successor = node.getSuccesors(i);
+          hash = 31 * hash + System.identityHashCode(successor);
+        }
+      }
+
+      m_Node = node;
+      m_Hash = hash;
+    }
+
+    public int hashCode() {
+      return m_Hash;
+    }
+
+    public boolean equals(Object object) {
+      NodeTree node = m_Node;
+      NodeTree other;
+
+      if (!(object instanceof NodeKey))
+        return false;
+
+      other = ((NodeKey) object).m_Node;
+      if (node.getAttribute() != other.getAttribute()
+          || node.getFrequency() != other.getFrequency()
+          || node.getStoredDistribution() != other.getStoredDistribution()
+          || node.attSelected != other.attSelected
+          || Double.compare(node.getRealSupport(), other.getRealSupport()) != 0)
+        return false;
+
+      if (node.getAttribute() != null) {
+        for (int i = 0; i < node.getAttribute().numValues(); i++) {
+          if (node.getSuccesors(i) != other.getSuccesors(i))
+            return false;
+        }
+      }
+
+      return true;
+    }
+  }
+
+  /**
+   * Key of an array, compared by its contents.
+   */
+  private static class ArrayKey {
+
+    /** The array, either a double[] or a boolean[]. */
+    private final Object m_Array;
+
+    /**
+     * @param array the array, either a double[] or a boolean[]
+     */
+    ArrayKey(Object array) {
+      m_Array = array;
+    }
+
+    public int hashCode() {
+      if (m_Array instanceof double[])
+        return Arrays.hashCode((double[]) m_Array);
+      return Arrays.hashCode((boolean[]) m_Array);
+    }
+
+    public boolean equals(Object object) {
+      Object other;
+
+      if (!(object instanceof ArrayKey))
+        return false;
+
+      other = ((ArrayKey) object).m_Array;
+      if (m_Array instanceof double[])
+        return other instanceof double[] && Arrays.equals((double[]) m_Array, (double[]) other);
+      return other instanceof boolean[] && Arrays.equals((boolean[]) m_Array, (boolean[]) other);
+    }
+  }
+
+  /** The distinct nodes seen, by their key. */
+  private HashMap<NodeKey, NodeTree> m_Nodes = new HashMap<NodeKey, NodeTree>();
+
+  /** The distinct arrays seen, by their contents. */
+  private HashMap<ArrayKey, Object> m_Arrays = new HashMap<ArrayKey, Object>();
+
+  /** The node that replaces each node already visited. */
+  private IdentityHashMap<NodeTree, NodeTree> m_Replacements = new IdentityHashMap<NodeTree, NodeTree>();
+
+  /** Number of nodes visited. */
+  private int m_NumNodesVisited;
+
+  /**
+   * Returns the first array seen with the same contents as an array.
+   * @param array the array, either a double[] or a boolean[], or null
+   * @return the array to use instead of the given one
+   */
+  private Object share(Object array) {
+    ArrayKey key;
+    Object shared;
+
+    if (array == null)
+      return null;
+
+    key = new ArrayKey(array);
+    shared = m_Arrays.get(key);
+    if (shared == null) {
+      m_Arrays.put(key, array);
+      shared = array;
+    }
+
+    return shared;
+  }
+
+  /**
+   * Replaces the successors and the arrays of a node by the shared ones.
+   * @param node the node
+   */
+  private void replaceParts(NodeTree node) {
+    m_NumNodesVisited++;
+    if (node.getAttribute() != null) {
+      for (int i = 0; i < node.getAttribute().numValues(); i++)
+        node.setSuccesors(i, replace(node.getSuccesors(i)));
+    }
+    node.setFrequency((double[]) share(node.getFrequency()));
+    node.setDistribution((double[]) share(node.getStoredDistribution()));
+    node.attSelected = (boolean[]) share(node.attSelected);
+  }
+
+  /**
+   * Compacts a subtree.
+   * @param node the root of the subtree, or null
+   * @return the node to use instead of the given one
+   */
+  private NodeTree replace(NodeTree node) {
+    NodeTree replacement;
+    NodeKey key;
+
+    if (node == null)
+      return null;
+
+    replacement = m_Replacements.get(node);
+    if (replacement != null)
+      return replacement;
+
+    replaceParts(node);
+
+    key = new NodeKey(node);
+    replacement = m_Nodes.get(key);
+    if (replacement == null) {
+      m_Nodes.put(key, node);
+      replacement = node;
+    }
+
+    m_Replacements.put(node, replacement);
+    return replacement;
+  }
+
+  /**
+   * Compacts a tree in place, sharing its subtrees with those of the trees already
+   * compacted. The root itself is kept, so the tree does not need to be set again.
+   * @param root the root of the tree, or null
+   */
+  public void compact(NodeTree root) {
+    if (root == null || m_Replacements.containsKey(root))
+      return;
+
+    replaceParts(root);
+    m_Replacements.put(root, root);
+  }
+
+  /**
+   * @return the number of distinct nodes visited, counting a node once however many
+   * parents it had
+   */
+  public int numNodesVisited() {
+    return m_NumNodesVisited;
+  }
+
+  /**
+   * @return the number of distinct nodes kept, roots included
+   */
+  public int numNodesKept() {
+    IdentityHashMap<NodeTree, Boolean> kept = new IdentityHashMap<NodeTree, Boolean>();
+
+    for (NodeTree node : m_Replacements.values())
+      kept.put(node, Boolean.TRUE);
+
+    return kept.size();
+  }
+}
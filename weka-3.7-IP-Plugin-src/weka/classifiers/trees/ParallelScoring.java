@@ -0,0 +1,128 @@
+/*
+ *    This program is free software; you can redistribute it and/or modify
+ *    it under the terms of the GNU General Public License as published by
+ *    the Free Software Foundation; either version 2 of the License, or
+ *    (at your option) any later version.
+ *
+ *    This program is distributed in the hope that it will be useful,
+ *    but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *    GNU General Public License for more details.
+ *
+ *    You should have received a copy of the GNU General Public License
+ *    along with this program; if not, write to the Free Software
+ *    Foundation, Inc., 675 Mass Ave, Cambridge, MA 02139, USA.
+ */
+
+package weka.classifiers.trees;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates the candidate attributes of a node of a tree in parallel.
+ *
+ * Each attribute is scored by a separate task and its score is written in the
+ * position of the attribute, so the array of scores is the same as the one computed
+ * sequentially. The split attribute is then chosen from that array as before
+ * (for example with Utils.maxIndex, which breaks ties by the lowest index), hence
+ * the tree does not depend on the order in which the tasks finish.
+ *
+ * The tasks run in a pool shared by all the trees. If the caller is already a task
+ * of a fork-join pool (a tree built with several threads), they run in that pool.
+ */
+public class ParallelScoring {
+
+  /**
+   * Score of a single attribute. Implementations are called concurrently, so they
+   * must only read the data of the node.
+   */
+  public interface AttributeScore {
+
+    /**
+     * @param index the index of the attribute
+     * @return the score of the attribute
+     * @throws Exception if the score can't be computed
+     */
+    double score(int index) throws Exception;
+  }
+
+  /** Pool shared by all the trees, created the first time it is needed. */
+  private static ForkJoinPool s_Pool;
+
+  /**
+   * @return the pool shared by all the trees
+   */
+  private static synchronized ForkJoinPool getPool() {
+    if (s_Pool == null)
+      s_Pool = new ForkJoinPool();
+    return s_Pool;
+  }
+
+  /**
+   * Computes the score of some attributes in parallel.
+   * @param indices the indices of the attributes to be scored
+   * @param scores the array where the score of the attribute i is stored in position i
+   * @param score the score of an attribute
+   * @throws Exception if the score of some attribute can't be computed
+   */
+  public static void scoreAttributes(int[] indices, final double[] scores,
+                                     final AttributeScore score) throws Exception {
+
+    final List<RecursiveAction> tasks = new ArrayList<RecursiveAction>(indices.length);
+
+    for (int i = 0; i < indices.length; i++) {
+      final int index = indices[i];
+
+      tasks.add(new RecursiveAction() {
+        protected void compute() {
+          try {
+            scores[index] = score.score(index);
+          } catch (Exception e) {
+            throw new RuntimeException(e);
+          }
+        }
+      });
+    }
+
+    try {
+      if (ForkJoinTask.inForkJoinPool()) {
+        ForkJoinTask.invokeAll(tasks);
+      } else {
+        getPool().invoke(new RecursiveAction() {
+          protected void compute() {
+            invokeAll(tasks);
+          }
+        });
+      }
+    } catch (RuntimeException e) {
+      Throwable cause = e;
+      while (cause instanceof RuntimeException && cause.getCause() != null)
+        cause = cause.getCause();
+      if (cause instanceof Exception)
+        throw (Exception) cause;
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the indices of all the attributes but the class.
+   * @param num_attributes the number of attributes, including the class
+   * @param class_index the index of the class attribute
+   * @return the indices of the attributes in increasing order
+   */
+  public static int[] candidateAttributes(int num_attributes, int class_index) {
+    int[] indices = new int[num_attributes - 1];
+    int j = 0;
+
+    for (int i = 0; i < num_attributes; i++) {
+      if (i != class_index)
+        indices[j++] = i;
+    }
+
+    return indices;
+  }
+}
@@ -1,6 +1,7 @@
 package weka.core;
 
 //import com.sun.org.apache.bcel.internal.verifier.statics.DOUBLE_Upper;
+import java.util.Arrays;
 import java.util.Vector;
 
 /**
@@ -17,6 +18,141 @@ public class E_ContingencyTables extends ContingencyTables{
     /** The natural logarithm of 2 */
   private static double log2 = Math.log(2);
 
+  /**
+   * Work space of each thread for the methods that don't receive one: the distribution
+   * of maximum entropy in the first array and the work space of maxEntropyIDM in the second.
+   */
+  private static final ThreadLocal<double[][]> s_Work = new ThreadLocal<double[][]>();
+
+  /** Maximum number of counts of the vectors whose imprecise entropy is cached. */
+  static final int MAX_CACHED_COUNTS = 6;
+
+  /** Cache of the imprecise entropy of small vectors of integer counts. */
+  private static final EntropyCache s_EntropyCache = new EntropyCache(1 << 14);
+
+  /** Whether entropyImprecise uses the cache. */
+  private static volatile boolean s_EntropyCacheEnabled = true;
+
+  /**
+   * Number of lookups of each thread that found the entropy in the cache, in the first
+   * position, and that didn't, in the second. They are counted per thread so that the
+   * threads building trees at the same time don't write to the same counters.
+   */
+  private static final ThreadLocal<long[]> s_EntropyCacheCounts = new ThreadLocal<long[]>() {
+    protected long[] initialValue() {
+      return new long[2];
+    }
+  };
+
+  /**
+   * Bounded cache of the imprecise entropy of vectors of integer counts. The entropy
+   * doesn't depend on the order of the counts, so the key of a vector is made of its
+   * sorted counts, packed in a long, and of the parameter s.
+   *
+   * The cache is set-associative: a key can only be stored in the WAYS entries of the set
+   * given by its hash, and the entry to be replaced in a set is chosen with the clock
+   * algorithm. The entries are immutable, so the cache is read without locks. If two
+   * threads store an entry in the same set at the same time, one of them may be lost,
+   * which only costs computing that entropy again. A hit only writes the reference bit
+   * of its entry if it is not set yet, so the hits on the entries already used don't
+   * write to memory shared by the threads.
+   */
+  private static class EntropyCache {
+
+    /** An entry of the cache. */
+    private static class Entry {
+
+      final long m_Key;
+      final double m_SValue;
+      final double m_Entropy;
+
+      Entry(long key, double svalue, double entropy) {
+        m_Key = key;
+        m_SValue = svalue;
+        m_Entropy = entropy;
+      }
+    }
+
+    /** Number of entries of each set. */
+    static final int WAYS = 4;
+
+    /** The entries, WAYS consecutive positions per set. */
+    private final Entry[] m_Entries;
+
+    /** Whether each entry has been used since the clock hand last passed over it. */
+    private final boolean[] m_Referenced;
+
+    /** Position of the clock hand of each set. */
+    private final int[] m_Hands;
+
+    /** Mask giving the set of a hash. */
+    private final int m_SetMask;
+
+    /**
+     * @param capacity the number of entries, a power of 2
+     */
+    EntropyCache(int capacity) {
+      m_Entries = new Entry[capacity];
+      m_Referenced = new boolean[capacity];
+      m_Hands = new int[capacity / WAYS];
+      m_SetMask = capacity / WAYS - 1;
+    }
+
+    /**
+     * @return the first position of the set of a key
+     */
+    private int set(long key, double svalue) {
+      long hash = (key ^ Double.doubleToLongBits(svalue)) * 0x9E3779B97F4A7C15L;
+      return ((int) (hash >>> 32) & m_SetMask) * WAYS;
+    }
+
+    /**
+     * Looks for the entropy of a key.
+     * @return the entry of the key, or null if it is not in the cache
+     */
+    Entry get(long key, double svalue) {
+      int first = set(key, svalue);
+      Entry entry;
+
+      for (int i = first; i < first + WAYS; i++) {
+        entry = m_Entries[i];
+        if (entry != null && entry.m_Key == key && entry.m_SValue == svalue) {
+          if (!m_Referenced[i])
+            m_Referenced[i] = true;
+          return entry;
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Stores the entropy of a key, replacing the first entry of its set that
+     * hasn't been used since the clock hand last passed over it.
+     */
+    void put(long key, double svalue, double entropy) {
+      int first = set(key, svalue);
+      int hand = m_Hands[first / WAYS];
+      int i = first + hand;
+
+      while (m_Entries[i] != null && m_Referenced[i]) {
+        m_Referenced[i] = false;
+        hand = (hand + 1) % WAYS;
+        i = first + hand;
+      }
+      m_Entries[i] = new Entry(key, svalue, entropy);
+      m_Referenced[i] = false;
+      m_Hands[first / WAYS] = (hand + 1) % WAYS;
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    synchronized void clear() {
+      Arrays.fill(m_Entries, null);
+      Arrays.fill(m_Referenced, false);
+    }
+  }
+
   /**
    * Help method for computing entropy.
    */
@@ -30,8 +166,165 @@ public class E_ContingencyTables extends ContingencyTables{
     }
   }
   
+  /**
+   * Returns the thread's work space for n values.
+   */
+  private static double[][] getWork(int n){
+
+    double[][] work = s_Work.get();
+
+    if (work == null || work[0].length < n) {
+      work = new double[][] {new double[n], new double[4 * n]};
+      s_Work.set(work);
+    }
+    return work;
+  }
+
+  /**
+   * Computes the distribution of maximum entropy of the credal set given by the
+   * imprecise Dirichlet model for some counts.
+   *
+   * If all the counts are integers, the mass s is shared among the minimal counts, each
+   * of them receiving at most one unit, and the result holds the modified counts.
+   * Otherwise, the result holds the probabilities of the distribution of maximum entropy
+   * with lower probabilities n_i/(N+s) and upper probabilities (n_i+s)/(N+s), which is
+   * found by water-filling: the values are raised to a common level, each one within its
+   * bounds, until they sum to 1. As in the former recursive method, the lower probabilities
+   * are returned when they already sum to 1 within 0.001. The former method raised the
+   * values in steps, took values closer than MINDIFF as equal, and stopped as soon as the
+   * values summed to 1 within 0.001, so the probabilities computed here may differ from
+   * its normalized values by up to 0.001. The results for integer counts are the same.
+   *
+   * The method allocates nothing, so it can be called for every split of a tree.
+   *
+   * @param counts the counts
+   * @param n the number of counts, which are in the positions [0, n)
+   * @param svalue the parameter s of the IDM
+   * @param result the array where the n values are stored. It can be counts itself
+   * @param work work space of at least 4n positions, only used if some count is not an integer
+   */
+  public static void maxEntropyIDM(double[] counts, int n, double svalue, double[] result, double[] work){
+
+    boolean nonintegers=false;
+    for (int i=0;i<n;i++){
+      if (((int)(counts[i]))!=counts[i]){
+        nonintegers=true;
+        break;
+      }
+    }
+
+    if (nonintegers){
+      double total=0;
+      for (int i=0;i<n;i++)
+        total+=counts[i];
+
+      // lower probabilities in [0, n), upper probabilities in [n, 2n)
+      for (int i=0;i<n;i++){
+        work[i]=counts[i]/(total+svalue);
+        work[n+i]=(counts[i]+svalue)/(total+svalue);
+      }
+
+      maxEntropy(work, n, result);
+      return;
+    }
+
+    double min=counts[0];
+    int cont=0;
+    double masa;
+    for (int i=0;i<n;i++){
+      if (min>counts[i]) min=counts[i];
+    }
+    for (int i=0;i<n;i++){
+      if (min==counts[i]) cont++;
+    }
+    if (svalue<=cont)
+      masa=svalue;
+    else
+      masa=cont;
+    for (int i=0;i<n;i++){
+      if (min==counts[i])
+        result[i]=counts[i]+(masa/cont);
+      else
+        result[i]=counts[i];
+    }
+  }
+
+  /**
+   * Computes the distribution of maximum entropy whose probabilities are within some
+   * lower and upper bounds. Every value is raised from its lower bound to a common level,
+   * and kept at its upper bound if the level is higher, so the level is found by walking
+   * through the sorted bounds, which are the points where the sum of the values changes
+   * its slope.
+   *
+   * @param work the lower bounds in [0, n), the upper bounds in [n, 2n), and work
+   * space in [2n, 4n)
+   * @param n the number of values
+   * @param result the array where the distribution is stored
+   */
+  private static void maxEntropy(double[] work, int n, double[] result){
+
+    double sum=0;
+    for (int i=0;i<n;i++)
+      sum+=work[i];
+
+    if (Math.abs(1-sum)<0.001){
+      System.arraycopy(work,0,result,0,n);
+      return;
+    }
+
+    int lower=2*n, upper=3*n, end=4*n;
+    System.arraycopy(work,0,work,lower,2*n);
+    Arrays.sort(work,lower,upper);
+    Arrays.sort(work,upper,end);
+
+    // sum of the values is base+raised*level between two consecutive bounds, where base
+    // is the sum of the lower bounds not reached yet and of the upper bounds passed
+    double base=sum, level=work[lower], next;
+    int raised=0;
+
+    while (lower<3*n || upper<end){
+      boolean entering=lower<3*n && work[lower]<=work[upper];
+      next=entering ? work[lower] : work[upper];
+
+      if (base+raised*next>=1){
+        level=raised>0 ? (1-base)/raised : next;
+        break;
+      }
+
+      if (entering){
+        base-=work[lower++];
+        raised++;
+      } else {
+        base+=work[upper++];
+        raised--;
+      }
+      level=next;
+    }
+
+    for (int i=0;i<n;i++)
+      result[i]=Math.min(Math.max(level,work[i]),work[n+i]);
+  }
+
+  /**
+   * Computes the distribution of maximum entropy of the IDM for some counts.
+   *
+   * @param array the counts
+   * @param n the number of counts
+   * @param svalue the parameter s of the IDM
+   * @return a new array with the distribution, as computed by maxEntropyIDM
+   */
   public static double[] reps(double[] array,int n, double svalue){
 
+    double[] result=new double[n];
+    maxEntropyIDM(array, n, svalue, result, new double[4*n]);
+    return result;
+  }
+
+  /**
+   * Former recursive implementation of reps, kept to check maxEntropyIDM in main.
+   */
+  private static double[] recursiveReps(double[] array,int n, double svalue){
+
         boolean nonintegers=false;
         for (int i=0;i<n;i++){
             if (((int)(array[i]))!=array[i]){
@@ -79,7 +372,7 @@ public class E_ContingencyTables extends ContingencyTables{
         }
         masa=masa-cont;
         if (masa>0.0001)
-            return reps(l,n,masa);
+            return recursiveReps(l,n,masa);
         else
             return l;
 
@@ -116,13 +409,114 @@ public class E_ContingencyTables extends ContingencyTables{
    */
   public static double entropyImprecise(double[] array, double svalue) {
 
+    int n = array.length;
+    double[][] work = getWork(n);
+    double[] sorted = work[0];
+    boolean cached = s_EntropyCacheEnabled && n > 0 && n <= MAX_CACHED_COUNTS;
+    int bits = cached ? 60 / n : 0;
+    double limit = 1L << bits;
+    double value;
+    int j;
+
+    // the entropy is always computed from the sorted counts, with or without the cache,
+    // so its value doesn't depend on the order of the counts nor on the cache
+    if (n > MAX_CACHED_COUNTS) {
+      System.arraycopy(array, 0, sorted, 0, n);
+      Arrays.sort(sorted, 0, n);
+    } else {
+      // sort the counts by insertion, checking that they are small integers
+      for (int i = 0; i < n; i++) {
+        value = array[i];
+        if (cached && (!(value >= 0 && value < limit) || (int) value != value))
+          cached = false;
+
+        for (j = i; j > 0 && sorted[j - 1] > value; j--)
+          sorted[j] = sorted[j - 1];
+        sorted[j] = value;
+      }
+    }
+
+    if (!cached)
+      return entropyImprecise(sorted, n, svalue, sorted, work[1]);
+
+    long key = n;
+    for (int i = 0; i < n; i++)
+      key = (key << bits) | (long) sorted[i];
+
+    long[] counts = s_EntropyCacheCounts.get();
+    EntropyCache.Entry entry = s_EntropyCache.get(key, svalue);
+    if (entry != null) {
+      counts[0]++;
+      return entry.m_Entropy;
+    }
+    counts[1]++;
+
+    double entropy = entropyImprecise(sorted, n, svalue, sorted, work[1]);
+    s_EntropyCache.put(key, svalue, entropy);
+    return entropy;
+  }
+
+  /**
+   * Sets whether entropyImprecise(double[], double) keeps the entropy of the vectors of
+   * at most MAX_CACHED_COUNTS integer counts in a cache.
+   * @param enabled true to use the cache
+   */
+  public static void setEntropyCacheEnabled(boolean enabled) {
+    s_EntropyCacheEnabled = enabled;
+  }
+
+  /**
+   * @return true if entropyImprecise(double[], double) uses the cache
+   */
+  public static boolean getEntropyCacheEnabled() {
+    return s_EntropyCacheEnabled;
+  }
+
+  /**
+   * @return the number of times the calling thread found the imprecise entropy in the cache
+   */
+  public static long getEntropyCacheHits() {
+    return s_EntropyCacheCounts.get()[0];
+  }
+
+  /**
+   * @return the number of times the calling thread looked for the imprecise entropy in the
+   * cache and didn't find it
+   */
+  public static long getEntropyCacheMisses() {
+    return s_EntropyCacheCounts.get()[1];
+  }
+
+  /**
+   * Empties the cache of imprecise entropies and resets the counters of the calling thread.
+   */
+  public static void clearEntropyCache() {
+    long[] counts = s_EntropyCacheCounts.get();
+
+    s_EntropyCache.clear();
+    counts[0] = 0;
+    counts[1] = 0;
+  }
+
+  /**
+   * Computes the imprecise entropy of some counts with the given work space.
+   *
+   * @param array the counts
+   * @param n the number of counts
+   * @param svalue the parameter s of the IDM
+   * @param result work space of at least n positions
+   * @param work work space of at least 4n positions
+   * @return the entropy
+   */
+  public static double entropyImprecise(double[] array, int n, double svalue, double[] result, double[] work) {
+
     double returnValue = 0, sum = 0;
-    double[] arraynew=reps(array,array.length, svalue);
+    maxEntropyIDM(array, n, svalue, result, work);
     
-    for (int i = 0; i < arraynew.length; i++) {
-      if (arraynew[i]>0)
-        returnValue -= arraynew[i]*Utils.log2(arraynew[i]);
-      sum += arraynew[i];
+    for (int i = 0; i < n; i++) {
+      if (result[i]>0)
+        returnValue -= result[i]*Utils.log2(result[i]);
+      sum += result[i];
     }
 
     if (Utils.eq(sum, 0)) {
@@ -145,10 +539,13 @@ public class E_ContingencyTables extends ContingencyTables{
   public static double entropyNPI(double[] array) {
 
     double returnValue = 0;
-    double[] arraynew=NPITransformation(array);
-    
+    int n = array.length;
+    double[][] work = getWork(n);
+    double[] arraynew = work[0];
+
+    maxEntropyNPI(array, n, arraynew, work[1]);
    
-    for (int i = 0; i < arraynew.length; i++) {
+    for (int i = 0; i < n; i++) {
       if (arraynew[i]>0)
         returnValue -= arraynew[i]*Utils.log2(arraynew[i]);
     }
@@ -165,7 +562,121 @@ public class E_ContingencyTables extends ContingencyTables{
      */
   }
  
+ /**
+  * Computes the distribution of maximum entropy of the NPI-M for some counts.
+  *
+  * @param array the counts
+  * @return a new array with the distribution, as computed by maxEntropyNPI
+  */
  public static double[] NPITransformation(double[] array){
+
+      double[] result=new double[array.length];
+      maxEntropyNPI(array, array.length, result, getWork(array.length)[1]);
+      return result;
+  }
+
+ /**
+  * Computes the distribution of maximum entropy of the credal set given by the
+  * NPI-M for some counts, whose lower probabilities are max(0, (n_i-1)/N) and upper
+  * probabilities min(1, (n_i+1)/N).
+  *
+  * It takes the same steps as the former recursive method, so the results are the same:
+  * while the probabilities don't sum to 1 within 0.001, the minimal ones (those closer
+  * than MINDIFF to the minimum) are raised towards the next value, without exceeding
+  * their upper probabilities. The indices that can still be raised are kept in the
+  * work space instead of a Vector, and the method allocates nothing.
+  *
+  * @param counts the counts
+  * @param n the number of counts, which are in the positions [0, n)
+  * @param result the array where the n probabilities are stored. It can be counts itself
+  * @param work work space of at least 3n positions
+  */
+ public static void maxEntropyNPI(double[] counts, int n, double[] result, double[] work){
+
+      int lower=0, upper=n, indexes=2*n;
+      int num_indexes=n;
+      double sum=0;
+      for (int i=0; i<n; i++)
+          sum+=counts[i];
+
+      // lower probabilities in [0, n), upper probabilities in [n, 2n), indices that
+      // can be raised in [2n, 2n+num_indexes)
+      for (int i=0; i<n; i++){
+          work[lower+i]=Math.max(0,(counts[i]-1)/sum);
+          work[upper+i]=Math.min(1,(counts[i]+1)/sum);
+          work[indexes+i]=i;
+      }
+
+      while (true){
+          sum=0;
+          for (int i=0; i<n; i++)
+              sum+=work[lower+i];
+
+          if (Math.abs(1-sum)<0.001)
+              break;
+
+          // remove the indices whose value reached the upper probability. As in the former
+          // method, the index after a removed one is not checked in this pass
+          boolean changed=false;
+          for (int i=0; i<num_indexes; i++){
+              int index=(int)work[indexes+i];
+              if (Math.abs(work[lower+index]-work[upper+index])<MINDIFF){
+                  System.arraycopy(work,indexes+i+1,work,indexes+i,num_indexes-i-1);
+                  num_indexes--;
+                  changed=true;
+              }
+          }
+
+          // the former method failed and returned null when no index was left
+          if (num_indexes==0)
+              break;
+
+          // minimum value, number of values equal to it and next greater value
+          int men=-1;
+          double val=Double.MAX_VALUE;
+          for (int i=0; i<num_indexes; i++){
+              int index=(int)work[indexes+i];
+              if (work[lower+index]<val){
+                  val=work[lower+index];
+                  men=index;
+              }
+          }
+
+          int sig=men, nme=0;
+          double next=Double.MAX_VALUE;
+          for (int i=0; i<num_indexes; i++){
+              int index=(int)work[indexes+i];
+              if (Math.abs(work[lower+index]-val)<MINDIFF){
+                  nme++;
+              }else if (work[lower+index]<next){
+                  next=work[lower+index];
+                  sig=index;
+              }
+          }
+
+          for (int i=0; i<n; i++){
+              if (Math.abs(work[lower+i]-val)<MINDIFF){
+                  double old=work[lower+i];
+                  if (sig!=men)
+                      work[lower+i]=old+Math.min(Math.min(work[upper+i]-old,(work[lower+sig]-val)),(1.0-sum)/(double)nme);
+                  else
+                      work[lower+i]=old+Math.min(Math.min(work[upper+i]-old,(1.0-sum)/(double)nme),1);
+                  changed|=work[lower+i]!=old;
+              }
+          }
+
+          // the former method recursed forever when nothing changed
+          if (!changed)
+              break;
+      }
+
+      System.arraycopy(work,lower,result,0,n);
+  }
+
+ /**
+  * Former recursive implementation of NPITransformation, kept to check maxEntropyNPI in main.
+  */
+ private static double[] recursiveNPITransformation(double[] array){
       
       double[] pl=new double[array.length];
       double[] pu=new double[array.length];
@@ -187,6 +698,7 @@ public class E_ContingencyTables extends ContingencyTables{
           return null;
       }
   }
+
       
 private static double[] MaxEntropy(double pl[], double pu[], Vector<Integer> indexes){
     
@@ -315,18 +827,20 @@ private static int Siguiente(double p[],int indexmenor, Vector<Integer> indexes)
    */
   public static double impreciseentropyOverColumns(double[][] matrix, double svalue){
     
-    double returnValue = 0, sumForColumn, total = 0;
-    double[] I_matrix=new double[matrix[0].length];
+    int num_columns = matrix[0].length;
+    double[][] work = getWork(num_columns);
+    double[] I_matrix = work[0];
     
     
-    for (int j = 0; j < matrix[0].length; j++){
+    for (int j = 0; j < num_columns; j++){
       I_matrix[j] = 0;
       for (int i = 0; i < matrix.length; i++) {
 	I_matrix[j] += matrix[i][j];
       }
     }
 
-    return entropyImprecise(I_matrix,svalue);
+    // the column sums are replaced by the distribution of maximum entropy
+    return entropyImprecise(I_matrix, num_columns, svalue, I_matrix, work[1]);
     
   }
 /**
@@ -339,20 +853,20 @@ private static int Siguiente(double p[],int indexmenor, Vector<Integer> indexes)
   public static double impreciseentropyConditionedOnRows(double[][] matrix,double svalue) {
     
     double returnValue = 0, total = 0;
-    double[][] I_matrix=new double[matrix.length][matrix[0].length];
-    
-    for (int i=0; i<matrix.length; i++)
-       I_matrix[i]=reps(matrix[i],matrix[0].length,svalue);
+    int num_columns = matrix[0].length;
+    double[][] work = getWork(num_columns);
+    double[] I_row = work[0];
    
     for (int i = 0; i < matrix.length; i++) {
       double sumForRow = 0;
       double sumExactForRow = 0;
       double entropyForRow = 0;
 
+      maxEntropyIDM(matrix[i], num_columns, svalue, I_row, work[1]);
 
-      for (int j = 0; j < matrix[0].length; j++) {
-            entropyForRow = entropyForRow + lnFunc(I_matrix[i][j]);
-            sumForRow += I_matrix[i][j];
+      for (int j = 0; j < num_columns; j++) {
+            entropyForRow = entropyForRow + lnFunc(I_row[j]);
+            sumForRow += I_row[j];
 
             sumExactForRow+=matrix[i][j];
             total+=matrix[i][j];
@@ -378,17 +892,28 @@ private static int Siguiente(double p[],int indexmenor, Vector<Integer> indexes)
    */
   public static double NPIEntropyOverColumns(double[][] matrix){
     
-    double[] I_matrix=new double[matrix[0].length];
+    double returnValue = 0;
+    int num_columns = matrix[0].length;
+    double[][] work = getWork(num_columns);
+    double[] I_matrix = work[0];
     
     
-    for (int j = 0; j < matrix[0].length; j++){
+    for (int j = 0; j < num_columns; j++){
       I_matrix[j] = 0;
       for (int i = 0; i < matrix.length; i++) {
 	I_matrix[j] += matrix[i][j];
       }
     }
 
-    return entropyNPI(I_matrix);
+    // the column sums are replaced by the distribution of maximum entropy
+    maxEntropyNPI(I_matrix, num_columns, I_matrix, work[1]);
+
+    for (int j = 0; j < num_columns; j++) {
+      if (I_matrix[j]>0)
+        returnValue -= I_matrix[j]*Utils.log2(I_matrix[j]);
+    }
+
+    return returnValue;
   }
 /**
    * Computes conditional entropy of the columns given
@@ -400,20 +925,20 @@ private static int Siguiente(double p[],int indexmenor, Vector<Integer> indexes)
   public static double NPIEntropyConditionedOnRows(double[][] matrix) {
     
     double returnValue = 0, total = 0;
-    double[][] I_matrix=new double[matrix.length][matrix[0].length];
-    
-    for (int i=0; i<matrix.length; i++)
-       I_matrix[i]=NPITransformation(matrix[i]);
+    int num_columns = matrix[0].length;
+    double[][] work = getWork(num_columns);
+    double[] I_row = work[0];
    
     for (int i = 0; i < matrix.length; i++) {
       double sumForRow = 0;
       double sumExactForRow = 0;
       double entropyForRow = 0;
 
+      maxEntropyNPI(matrix[i], num_columns, I_row, work[1]);
 
-      for (int j = 0; j < matrix[0].length; j++) {
-            entropyForRow = entropyForRow + lnFunc(I_matrix[i][j]);
-            sumForRow += I_matrix[i][j];
+      for (int j = 0; j < num_columns; j++) {
+            entropyForRow = entropyForRow + lnFunc(I_row[j]);
+            sumForRow += I_row[j];
 
             sumExactForRow+=matrix[i][j];
             total+=matrix[i][j];
@@ -515,6 +1040,98 @@ private static int Siguiente(double p[],int indexmenor, Vector<Integer> indexes)
       //System.out.println(E_ContingencyTables.entropyImprecise(x, 1));
 
       System.out.println(E_ContingencyTables.entropyImprecise(c, svalue)+E_ContingencyTables.entropyImprecise(x, svalue)-E_ContingencyTables.entropyImprecise(cx, svalue));
+
+      // compare maxEntropyIDM with the former recursive method on random counts
+      java.util.Random random = new java.util.Random(1);
+      double maxDiff = 0, maxDiffIntegers = 0;
+
+      for (int t = 0; t < 100000; t++) {
+          int n = 2 + random.nextInt(10);
+          boolean integers = t % 2 == 0;
+          double s = integers ? 1 + random.nextInt(3) : 0.5 + 2 * random.nextDouble();
+          double[] counts = new double[n];
+
+          for (int i = 0; i < n; i++) {
+              if (integers)
+                  counts[i] = random.nextInt(4) == 0 ? 0 : random.nextInt(50);
+              else
+                  counts[i] = random.nextInt(4) == 0 ? 0 : 20 * random.nextDouble();
+          }
+
+          double[] former = recursiveReps(counts, n, s);
+          double[] current = reps(counts, n, s);
+          double formerSum = Utils.sum(former), currentSum = Utils.sum(current);
+
+          for (int i = 0; i < n; i++) {
+              double diff = Math.abs(former[i] / formerSum - current[i] / currentSum);
+              if (integers)
+                  maxDiffIntegers = Math.max(maxDiffIntegers, diff);
+              else
+                  maxDiff = Math.max(maxDiff, diff);
+          }
+      }
+      System.out.println("maxEntropyIDM, max. difference with integer counts: " + maxDiffIntegers);
+      System.out.println("maxEntropyIDM, max. difference with non-integer counts: " + maxDiff);
+
+      // compare maxEntropyNPI with the former recursive method on random counts
+      maxDiff = 0;
+      double maxEntropyDiff = 0;
+      int failures = 0;
+
+      for (int t = 0; t < 100000; t++) {
+          int n = 2 + random.nextInt(10);
+          double[] counts = new double[n];
+
+          for (int i = 0; i < n; i++)
+              counts[i] = random.nextInt(4) == 0 ? 0 : random.nextInt(t % 3 == 0 ? 3 : 50);
+
+          double[] former = recursiveNPITransformation(counts);
+          double[] current = NPITransformation(counts);
+
+          if (former == null) {
+              failures++;
+              continue;
+          }
+
+          double formerEntropy = 0, currentEntropy = 0;
+          for (int i = 0; i < n; i++) {
+              maxDiff = Math.max(maxDiff, Math.abs(former[i] - current[i]));
+              if (former[i] > 0)
+                  formerEntropy -= former[i] * Utils.log2(former[i]);
+              if (current[i] > 0)
+                  currentEntropy -= current[i] * Utils.log2(current[i]);
+          }
+          maxEntropyDiff = Math.max(maxEntropyDiff, Math.abs(formerEntropy - currentEntropy));
+      }
+      System.out.println("maxEntropyNPI, max. difference: " + maxDiff + ", max. difference of entropy: " + maxEntropyDiff
+              + ", counts where the former method failed: " + failures);
+
+      // the imprecise entropy must not depend on the cache nor on the order of the counts
+      boolean enabled = getEntropyCacheEnabled();
+      int differences = 0;
+
+      for (int t = 0; t < 100000; t++) {
+          int n = 2 + random.nextInt(10);
+          double s = 1 + random.nextInt(2);
+          double[] counts = new double[n];
+          double[] reversed = new double[n];
+
+          for (int i = 0; i < n; i++)
+              counts[i] = random.nextInt(4) == 0 ? 0 : (t % 2 == 0 ? random.nextInt(50) : 20 * random.nextDouble());
+          for (int i = 0; i < n; i++)
+              reversed[i] = counts[n - 1 - i];
+
+          setEntropyCacheEnabled(true);
+          double withCache = entropyImprecise(counts, s);
+          double withCacheReversed = entropyImprecise(reversed, s);
+          setEntropyCacheEnabled(false);
+          double withoutCache = entropyImprecise(reversed, s);
+
+          if (withCache != withCacheReversed || withCache != withoutCache)
+              differences++;
+      }
+      setEntropyCacheEnabled(enabled);
+      System.out.println("entropyImprecise, vectors whose entropy depends on the cache or the order: " + differences);
   }
 
 }